@@ -0,0 +1,33 @@
+package manifold.github.traffic.benchmark;
+
+import manifold.github.traffic.AnsiColor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnsiColorBenchmark {
+    private String _coloredLine;
+    private String _plainLine;
+
+    @Setup
+    public void setup() {
+        _coloredLine = SyntheticData.coloredBlock(1, 40).trim();
+        _plainLine = AnsiColor.stripColors(_coloredLine);
+    }
+
+    @Benchmark
+    public String stripColored() {
+        return AnsiColor.stripColors(_coloredLine);
+    }
+
+    @Benchmark
+    public String stripPlain() {
+        return AnsiColor.stripColors(_plainLine);
+    }
+}
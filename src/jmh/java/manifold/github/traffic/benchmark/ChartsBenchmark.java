@@ -0,0 +1,39 @@
+package manifold.github.traffic.benchmark;
+
+import github.api.PopularPaths;
+import manifold.github.traffic.Charts;
+import manifold.github.traffic.DailySeries;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChartsBenchmark {
+    private Charts _charts;
+    private DailySeries _views;
+    private PopularPaths _popularPaths;
+
+    @Setup
+    public void setup() {
+        _charts = new Charts(14);
+        _views = DailySeries.parse(SyntheticData.dailyCountsJson("views", 15), "views", LocalDate.now(ZoneOffset.UTC));
+        _popularPaths = PopularPaths.load().fromJson(SyntheticData.popularPathsJson("joeuser", "joeswidget", 10));
+    }
+
+    @Benchmark
+    public String countsChart() {
+        return _charts.makeCountsChart("Views", _views, _charts::viewsPerUser);
+    }
+
+    @Benchmark
+    public String pathsChart() {
+        return _charts.makePathsChart("Top views", 38, _popularPaths, item -> item.getPath());
+    }
+}
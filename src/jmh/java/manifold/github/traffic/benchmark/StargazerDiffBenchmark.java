@@ -0,0 +1,32 @@
+package manifold.github.traffic.benchmark;
+
+import manifold.github.traffic.StargazerDiff;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class StargazerDiffBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int logins;
+
+    private String _prior;
+    private LinkedHashSet<String> _current;
+
+    @Setup
+    public void setup() {
+        _prior = SyntheticData.priorStargazers(logins);
+        _current = SyntheticData.currentStargazers(logins);
+    }
+
+    @Benchmark
+    public StargazerDiff diff() {
+        return StargazerDiff.compute(_prior, _current);
+    }
+}
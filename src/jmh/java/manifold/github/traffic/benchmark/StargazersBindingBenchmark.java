@@ -0,0 +1,48 @@
+package manifold.github.traffic.benchmark;
+
+import github.api.Stargazers;
+import manifold.ext.rt.api.auto;
+import manifold.github.traffic.JsonProjection;
+import manifold.rt.api.Bindings;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a full stargazers page (100 users) and reads each login, into full Manifold JSON bindings and with the
+ * {@link JsonProjection} {@code Traffic#fetchStargazers()} uses per page. Run with {@code -prof gc} to compare
+ * allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StargazersBindingBenchmark {
+    private static final JsonProjection LOGINS = JsonProjection.of("login");
+
+    private String _page;
+
+    @Setup
+    public void setup() {
+        _page = SyntheticData.stargazersPageJson(7, 100);
+    }
+
+    @Benchmark
+    public void bindPage(Blackhole blackhole) {
+        Stargazers onePage = Stargazers.load().fromJson(_page);
+        for (auto item : onePage.asOption0()) {
+            blackhole.consume(item.getLogin());
+        }
+    }
+
+    @Benchmark
+    public void projectPage(Blackhole blackhole) {
+        for (Object item : (List<?>) LOGINS.parse(_page)) {
+            blackhole.consume(((Bindings) item).get("login"));
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package manifold.github.traffic.benchmark;
+
+import manifold.github.traffic.Tile;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic inputs shaped like GitHub API responses.
+ */
+final class SyntheticData {
+    private SyntheticData() {
+    }
+
+    /**
+     * @return A views or clones response body with one item per day ending today, {@code field} is "views" or "clones"
+     */
+    static String dailyCountsJson(String field, int days) {
+        Random random = new Random(days);
+        LocalDate start = LocalDate.now(ZoneOffset.UTC).minusDays(days - 1);
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"count\":0,\"uniques\":0,\"").append(field).append("\":[");
+        for (int i = 0; i < days; i++) {
+            int uniques = 50 + random.nextInt(500);
+            int count = uniques + random.nextInt(2000);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"timestamp\":\"").append(start.plusDays(i)).append("T00:00:00Z\",")
+                    .append("\"count\":").append(count).append(",\"uniques\":").append(uniques).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * @return A popular paths response body with {@code size} items
+     */
+    static String popularPathsJson(String user, String repo, int size) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            int uniques = 1000 / (i + 1);
+            sb.append("{\"path\":\"/").append(user).append('/').append(repo).append("/blob/master/docs/page-").append(i)
+                    .append(".md\",\"title\":\"Page ").append(i).append("\",\"count\":").append(uniques * 3)
+                    .append(",\"uniques\":").append(uniques).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return A stargazers page body with {@code size} simple users
+     */
+    static String stargazersPageJson(int page, int size) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            int id = page * size + i;
+            String login = login(id);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"login\":\"").append(login).append("\",\"id\":").append(id)
+                    .append(",\"node_id\":\"MDQ6VXNlcj").append(id).append("\"")
+                    .append(",\"avatar_url\":\"https://avatars.githubusercontent.com/u/").append(id).append("?v=4\"")
+                    .append(",\"gravatar_id\":\"\"")
+                    .append(",\"url\":\"https://api.github.com/users/").append(login).append('"')
+                    .append(",\"html_url\":\"https://github.com/").append(login).append('"')
+                    .append(",\"followers_url\":\"https://api.github.com/users/").append(login).append("/followers\"")
+                    .append(",\"following_url\":\"https://api.github.com/users/").append(login).append("/following{/other_user}\"")
+                    .append(",\"gists_url\":\"https://api.github.com/users/").append(login).append("/gists{/gist_id}\"")
+                    .append(",\"starred_url\":\"https://api.github.com/users/").append(login).append("/starred{/owner}{/repo}\"")
+                    .append(",\"subscriptions_url\":\"https://api.github.com/users/").append(login).append("/subscriptions\"")
+                    .append(",\"organizations_url\":\"https://api.github.com/users/").append(login).append("/orgs\"")
+                    .append(",\"repos_url\":\"https://api.github.com/users/").append(login).append("/repos\"")
+                    .append(",\"events_url\":\"https://api.github.com/users/").append(login).append("/events{/privacy}\"")
+                    .append(",\"received_events_url\":\"https://api.github.com/users/").append(login).append("/received_events\"")
+                    .append(",\"type\":\"User\",\"site_admin\":false}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return Prior stargazer list content, one login per line
+     */
+    static String priorStargazers(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(login(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The prior list with every 100th login unstarred and a 1% tail of new logins
+     */
+    static LinkedHashSet<String> currentStargazers(int size) {
+        LinkedHashSet<String> gazers = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 100 != 0) {
+                gazers.add(login(i));
+            }
+        }
+        for (int i = size; i < size + size / 100; i++) {
+            gazers.add(login(i));
+        }
+        return gazers;
+    }
+
+    static String login(int id) {
+        return "user-" + Integer.toString(id, 36);
+    }
+
+    /**
+     * @return Text block of {@code lines} lines, colored like chart rows
+     */
+    static String coloredBlock(int lines, int width) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("\u001B[38;5;242m(0").append(i % 10).append(" Jan)M\u001B[0m ")
+                    .append("\u001B[38;5;33m").append("▓".repeat(width / 2)).append("░".repeat(width / 2))
+                    .append("\u001B[0m").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return Nested tiles {@code depth} levels deep, alternating row and column layouts
+     */
+    static Tile deepTile(int depth) {
+        Tile root = new Tile(Tile.Layout.Column, new Tile.Margin(0, 0, 0, 0));
+        Tile parent = root;
+        for (int i = 0; i < depth; i++) {
+            Tile child = new Tile(i % 2 == 0 ? Tile.Layout.Row : Tile.Layout.Column, new Tile.Margin(0, 0, 0, 1));
+            child.append(coloredBlock(3, 10));
+            parent.append(child);
+            parent = child;
+        }
+        return root;
+    }
+
+    /**
+     * @return A row of {@code width} sibling tiles, each holding a chart-sized block
+     */
+    static Tile wideTile(int width) {
+        Tile root = new Tile(Tile.Layout.Row, new Tile.Margin(0, 0, 0, 0));
+        for (int i = 0; i < width; i++) {
+            root.append(new Tile(coloredBlock(14, 20), new Tile.Margin(0, 0, 0, 2)));
+        }
+        return root;
+    }
+}
@@ -0,0 +1,49 @@
+package manifold.github.traffic.benchmark;
+
+import manifold.github.traffic.Tile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TileBenchmark {
+    @State(Scope.Benchmark)
+    public static class Deep {
+        @Param({"8", "32"})
+        public int depth;
+
+        Tile tile;
+
+        @Setup
+        public void setup() {
+            tile = SyntheticData.deepTile(depth);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Wide {
+        @Param({"4", "64"})
+        public int width;
+
+        Tile tile;
+
+        @Setup
+        public void setup() {
+            tile = SyntheticData.wideTile(width);
+        }
+    }
+
+    @Benchmark
+    public String renderDeep(Deep deep) {
+        return deep.tile.render();
+    }
+
+    @Benchmark
+    public String renderWide(Wide wide) {
+        return wide.tile.render();
+    }
+}
@@ -1,6 +1,10 @@
 package manifold.github.traffic;
 
+import java.io.File;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -19,6 +23,12 @@ public enum Arg {
                         "Argument: '${getName()}' requires a valid github user name, but was: $value");
             }
         }
+
+        @Override
+        public boolean isPresent(Map<Arg, String> args) {
+            // each listed repo, or each webhook event, names its user
+            return super.isPresent(args) || args.containsKey(repos) || args.containsKey(webhook) || args.containsKey(org);
+        }
     },
     /**
      * Github repository name
@@ -31,14 +41,38 @@ public enum Arg {
                         "Argument: '${getName()}' requires a valid github repository name, but was: $value");
             }
         }
+
+        @Override
+        public boolean isPresent(Map<Arg, String> args) {
+            return super.isPresent(args) || args.containsKey(repos) || args.containsKey(webhook) || args.containsKey(org);
+        }
     },
     /**
-     * Github authorization token
+     * Github authorization token, required unless tokens are supplied with -tokens or GITHUB_TOKENS
      */
-    token("-token", true, false, null, "Github authorization token") {
+    token("-token", true, false, null, "Github authorization token, or use -tokens or the GITHUB_TOKENS environment variable") {
         @Override
         public void validate(String value) {
         }
+
+        @Override
+        public boolean isPresent(Map<Arg, String> args) {
+            // a token pool replaces -token, the webhook receiver makes no requests
+            return super.isPresent(args) || args.containsKey(tokens) || System.getenv(TokenPool.TOKENS_ENV) != null ||
+                    args.containsKey(webhook);
+        }
+    },
+    /**
+     * (Optional) File with a pool of Github authorization tokens
+     */
+    tokens("-tokens", false, false, null, "File listing Github authorization tokens, one per line. Requests go to the token with the most remaining rate limit.") {
+        @Override
+        public void validate(String value) {
+            if (!new File(value).isFile()) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires a file of tokens, but was: $value");
+            }
+        }
     },
     /**
      * (Optional) Number of days to display, default is 14
@@ -52,6 +86,164 @@ public enum Arg {
                         "Argument: '${getName()}' must be >=1 and <= 14, but was $value");
             }
         }
+    },
+    /**
+     * (Optional) Reconstruct star history from stargazer timestamps
+     */
+    backfill("-backfill", false, true, null, "Reconstruct the star history from stargazer timestamps. Resumes if interrupted.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) Fetch report sections concurrently and show each one as it arrives
+     */
+    progressive("-progressive", false, true, null, "Fetch the report sections concurrently and show each one as soon as it arrives.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) Chart commit activity, code frequency and top contributors
+     */
+    stats("-stats", false, true, null, "Add weekly commit activity, code frequency and top contributor charts.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) Chart release asset downloads
+     */
+    releases("-releases", false, true, null, "Add charts of release asset downloads, in total and since the last run.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) Seconds the run may take
+     */
+    deadline("-deadline", false, false, null, "Seconds the run may take. Sections not done by then are skipped, and the stargazer scan resumes where it stopped on the next run.") {
+        @Override
+        public void validate(String value) {
+            if (Long.parseLong(value) <= 0) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' must be > 0, but was $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Print a timing and allocation breakdown after the report
+     */
+    profile("-profile", false, true, null, "Print a timing and allocation breakdown after the report.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) GitHub REST API base URL, default is https://api.github.com
+     */
+    api("-api", false, false, "https://api.github.com", "GitHub REST API base URL. Default is https://api.github.com") {
+        @Override
+        public void validate(String value) {
+            if (!value.startsWith("http://") && !value.startsWith("https://")) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires an http or https URL, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Directory for persisted state, default is ~/github-traffic
+     */
+    dir("-dir", false, false, System.getProperty("user.home") + File.separator + "github-traffic",
+            "Directory for persisted state such as star history. Default is ~/github-traffic") {
+        @Override
+        public void validate(String value) {
+            if (value == null || value.isEmpty()) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires a directory, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) How state is stored under -dir, default is files
+     */
+    store("-store", false, false, StateStore.FILES, "How state is stored in -dir: files, a directory of files per repo, or paged, a single file for all repos. Default is files.") {
+        @Override
+        public void validate(String value) {
+            if (!StateStore.FILES.equals(value) && !StateStore.PAGED.equals(value)) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires ${StateStore.FILES} or ${StateStore.PAGED}, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) File listing repos to report on as a shard worker, replaces -user and -repo
+     */
+    repos("-repos", false, false, null, "File listing repos as user/repo, one per line. Runs as a worker sharing the repos with other workers using the same -dir.") {
+        @Override
+        public void validate(String value) {
+            if (!new File(value).isFile()) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires a file of repos, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Report on all repos of an org or user together, replaces -user and -repo
+     */
+    org("-org", false, false, null, "Report on all repos of a GitHub org or user together: summed views and clones, top paths and referrers, and star gains.") {
+        @Override
+        public void validate(String value) {
+            if (value == null || value.isEmpty()) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires a github org or user name, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Merge the worker reports of a run instead of working
+     */
+    merge("-merge", false, true, null, "With -repos, merge the reports the workers made for the run.") {
+        @Override
+        public void validate(String value) {
+        }
+    },
+    /**
+     * (Optional) Label of a sharded run, default is today's UTC date
+     */
+    run("-run", false, false, LocalDate.now(ZoneOffset.UTC).toString(), "With -repos, label of the run. A repo is reported once per run. Default is today's UTC date.") {
+        @Override
+        public void validate(String value) {
+            if (value == null || !value.matches("[A-Za-z0-9._-]+")) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires letters, digits, '.', '_' or '-', but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Run the star webhook receiver on a port instead of a report
+     */
+    webhook("-webhook", false, false, null, "Receive star webhook events on this port instead of reporting. The secret is read from GITHUB_WEBHOOK_SECRET.") {
+        @Override
+        public void validate(String value) {
+            int port = Integer.parseInt(value);
+            if (port < 0 || port > 65535) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' requires a port number, but was: $value");
+            }
+        }
+    },
+    /**
+     * (Optional) Days between full stargazer scans of repos receiving webhook events, default is 7
+     */
+    reconcile("-reconcile", false, false, "7", "Days between full stargazer scans of repos receiving webhook events. Default is 7.") {
+        @Override
+        public void validate(String value) {
+            if (Integer.parseInt(value) < 0) {
+                throw new RuntimeException(
+                        "Argument: '${getName()}' must be >= 0, but was $value");
+            }
+        }
     };
 
     private final String _name;
@@ -88,6 +280,13 @@ public enum Arg {
         return _isFlag;
     }
 
+    /**
+     * @return True if the processed arguments satisfy this argument
+     */
+    public boolean isPresent(Map<Arg, String> args) {
+        return args.containsKey(this);
+    }
+
     public static Set<Arg> allRequired() {
         return values().stream().filter(Arg::isRequired).collect(Collectors.toCollection(LinkedHashSet::new));
     }
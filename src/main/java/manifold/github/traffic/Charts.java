@@ -0,0 +1,253 @@
+package manifold.github.traffic;
+
+import manifold.ext.rt.api.Structural;
+
+import java.text.DecimalFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static manifold.github.traffic.AnsiColor.*;
+
+/**
+ * Text bar charts for daily counts (views, clones), for top-N lists (paths, referrers), and for weekly repository
+ * statistics (commits, code frequency, contributors).
+ */
+@SuppressWarnings({"StringConcatenationInsideStringBufferAppend", "MalformedFormatString", "unchecked"})
+public class Charts {
+    private static final String HEAVY_BLOCK = "▓";
+    private static final String LIGHT_BLOCK = "░";
+
+    private static final int MAX_BAR_LEN = 40;
+    private static final int MAX_UNIQUE_URL_BAR = 5;
+    private static final int MAX_COUNT_URL_BAR = 10;
+    private static final int MAX_WEEKS = 12;
+    private static final int MAX_STATS_BAR = 20;
+    private static final int MAX_LOGIN = 16;
+
+    private final int _days;
+
+    /**
+     * @param days Number of days to chart, 1..14
+     */
+    public Charts(int days) {
+        _days = days;
+    }
+
+    /**
+     * @param series Charted over the last {@code days} days, up to today
+     */
+    public String makeCountsChart(String title, DailySeries series, BiFunction<Integer, Integer, String> ratio) {
+        DailySeries window = series.window(Traffic.today(), _days);
+        int totalUniques = window.totalUniques();
+        int digits = String.valueOf(totalUniques).length();
+        int width = digits + 1;
+        double factor = (double) MAX_BAR_LEN / window.maxCount();
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title$DKGREY unique & total$RESET").append('\n');
+        appendCounts(sb, window, factor, width, ratio);
+        if (_days > 1) {
+            sb.append(makeTotalsBar(totalUniques, window.totalCount(), factor, width, ratio)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public <P> String makePathsChart(String title, int maxUrl, List<P> items, Function<P, String> urlProcessor) {
+        int maxUniques = 0;
+        int maxCount = 0;
+        //noinspection unchecked
+        List<CountedItem> countedItems = (List<CountedItem>)items;
+        for (CountedItem item : countedItems) {
+            maxUniques = Math.max(maxUniques, item.getUniques());
+            maxCount = Math.max(maxCount, item.getCount());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title\n");
+        for (CountedItem item : countedItems) {
+            //noinspection unchecked
+            String url = urlProcessor.apply((P)item);
+            makePathUrlBar(sb, url, GREY, maxUniques, maxCount, maxUrl, item.getUniques(), item.getCount());
+        }
+        return sb.toString();
+    }
+
+    private void makePathUrlBar(StringBuilder sb, String url, @SuppressWarnings("SameParameterValue") String color,
+                                int maxUniques, int maxCount, int maxUrl, int uniques, int count) {
+        url = clipUrl(url, maxUrl);
+        int uniquesWidth = String.valueOf(maxUniques).length();
+        double factorUniques = (double) MAX_UNIQUE_URL_BAR / maxUniques;
+        double factorCount = (double) MAX_COUNT_URL_BAR / maxCount;
+
+        int uniquesBarWidth = (int) (Math.ceil(factorUniques * uniques));
+        sb.append(String.format("%${uniquesWidth}d", uniques))
+                .append(color + HEAVY_BLOCK.repeat(uniquesBarWidth)).append(LIGHT_BLOCK.repeat(MAX_UNIQUE_URL_BAR + 1 - uniquesBarWidth))
+                .append(url).append(LIGHT_BLOCK.repeat(maxUrl - url.length() + (int) (Math.ceil(factorCount * count))) + RESET)
+                .append(count).append('\n');
+    }
+
+    private String makeTotalsBar(int totalUniques, int totalCount, double factor, int width, BiFunction<Integer, Integer, String> ratio) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("${DKGREY}Total:   $RESET");
+        sb.append(String.format("%${width}d", totalUniques));
+        if (totalCount == 0) {
+            return sb.toString();
+        }
+        int uniquesWidth = (int) Math.ceil((double) totalUniques * factor / _days);
+        int totalCountWidth = (int) Math.ceil((double) totalCount * factor / _days) - uniquesWidth;
+        //noinspection StringConcatenationInsideStringBufferAppend
+        sb.append(PURPLE + HEAVY_BLOCK.repeat(uniquesWidth) + LIGHT_BLOCK.repeat(totalCountWidth) + RESET + totalCount +
+                  " " + DKGREY + ratio.apply(totalUniques, totalCount) + RESET );
+        return sb.toString();
+    }
+
+    /**
+     * Appends a bar per day, newest first. Days without traffic show as a zero.
+     */
+    private void appendCounts(StringBuilder sb, DailySeries days, double factor, int width, BiFunction<Integer, Integer, String> showRatio) {
+        DateTimeFormatter dayMonthFormat = DateTimeFormatter.ofPattern("dd MMM");
+        DateTimeFormatter dayOfWeekFormat = DateTimeFormatter.ofPattern("EEEEE");
+        LocalDate now = Traffic.today();
+        for (int i = days.size() - 1; i >= 0; i--) {
+            LocalDate day = days.day(i);
+            int count = days.count(i);
+            int uniques = days.uniques(i);
+            if (count == 0) {
+                sb.append(DKGREY + '(' + dayMonthFormat.format(day) + ')' + dayOfWeekFormat.format(day) +
+                        String.format("%${width}d", 0) + "$RESET\n");
+                continue;
+            }
+            String color = day.isEqual(now) ? GREEN : BLUE;
+            int uniquesWidth = (int) Math.ceil((double) uniques * factor);
+            int countWidth = (int) Math.ceil((double) count * factor) - uniquesWidth;
+            sb.append(DKGREY + '(' + dayMonthFormat.format(day) + ')' + dayOfWeekFormat.format(day) + RESET +
+                    String.format("%${width}d", uniques) +
+                    color + HEAVY_BLOCK.repeat(uniquesWidth) + LIGHT_BLOCK.repeat(countWidth) + RESET +
+                    count + " " + DKGREY + showRatio.apply(uniques, count) + RESET + "\n");
+        }
+    }
+
+    /**
+     * @param weeks Week start times in epoch seconds, oldest first
+     * @param commits Commits per week
+     */
+    public String makeCommitsChart(String title, long[] weeks, int[] commits) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title$DKGREY weekly$RESET\n");
+        int from = Math.max(0, weeks.length - MAX_WEEKS);
+        int max = 1;
+        for (int i = from; i < weeks.length; i++) {
+            max = Math.max(max, commits[i]);
+        }
+        int width = String.valueOf(max).length() + 1;
+        for (int i = weeks.length - 1; i >= from; i--) {
+            int barWidth = (int) Math.ceil((double) commits[i] * MAX_STATS_BAR / max);
+            sb.append(weekLabel(weeks[i])).append(String.format("%${width}d", commits[i]))
+                    .append(BLUE + HEAVY_BLOCK.repeat(barWidth) + RESET).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param weeks Week start times in epoch seconds, oldest first
+     * @param additions Lines added per week
+     * @param deletions Lines deleted per week, as positive numbers
+     */
+    public String makeCodeFrequencyChart(String title, long[] weeks, int[] additions, int[] deletions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title$DKGREY lines added & deleted$RESET\n");
+        int from = Math.max(0, weeks.length - MAX_WEEKS);
+        long max = 1;
+        for (int i = from; i < weeks.length; i++) {
+            max = Math.max(max, (long) additions[i] + deletions[i]);
+        }
+        for (int i = weeks.length - 1; i >= from; i--) {
+            int addedWidth = (int) Math.ceil((double) additions[i] * MAX_STATS_BAR / max);
+            int deletedWidth = (int) Math.ceil((double) deletions[i] * MAX_STATS_BAR / max);
+            sb.append(weekLabel(weeks[i])).append(' ')
+                    .append(GREEN + HEAVY_BLOCK.repeat(addedWidth) + RED + HEAVY_BLOCK.repeat(deletedWidth) + RESET)
+                    .append(GREEN + "+" + additions[i] + RESET + " " + RED + "-" + deletions[i] + RESET).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param logins Contributors, most commits first
+     * @param commits Commits per contributor
+     */
+    public String makeContributorsChart(String title, List<String> logins, int[] commits) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title$DKGREY by commits$RESET\n");
+        int max = commits.length == 0 ? 1 : Math.max(1, commits[0]);
+        for (int i = 0; i < logins.size(); i++) {
+            String login = logins.get(i);
+            if (login.length() > MAX_LOGIN) {
+                login = login.substring(0, MAX_LOGIN - 1) + "…";
+            }
+            int barWidth = (int) Math.ceil((double) commits[i] * MAX_STATS_BAR / max);
+            sb.append(String.format("%-${MAX_LOGIN}s ", login))
+                    .append(GREY + HEAVY_BLOCK.repeat(barWidth) + RESET).append(commits[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @param title Title line, including any subtitle
+     * @param tags Release tags, in the order listed
+     * @param downloads Downloads per release
+     */
+    public String makeDownloadsChart(String title, List<String> tags, int[] downloads, String color) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("$title\n");
+        if (tags.isEmpty()) {
+            return sb.append("${DKGREY}none$RESET\n").toString();
+        }
+        int max = 1;
+        for (int count : downloads) {
+            max = Math.max(max, count);
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            String tag = tags.get(i);
+            if (tag.length() > MAX_LOGIN) {
+                tag = tag.substring(0, MAX_LOGIN - 1) + "…";
+            }
+            int barWidth = (int) Math.ceil((double) downloads[i] * MAX_STATS_BAR / max);
+            sb.append(String.format("%-${MAX_LOGIN}s ", tag))
+                    .append(color + HEAVY_BLOCK.repeat(barWidth) + RESET).append(downloads[i]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String weekLabel(long epochSecond) {
+        LocalDate week = Instant.ofEpochSecond(epochSecond).atOffset(ZoneOffset.UTC).toLocalDate();
+        return DKGREY + '(' + DateTimeFormatter.ofPattern("dd MMM").format(week) + ')' + RESET;
+    }
+
+    public String viewsPerUser(int uniques, int total) {
+        DecimalFormat value = new DecimalFormat("##.#");
+        return value.format((double) total / uniques);
+    }
+
+    String clipUrl(String url, int maxUrl) {
+        if (url.length() > maxUrl) {
+            url = url.substring(url.length() - maxUrl);
+            int sep = url.indexOf('/');
+            if (sep > 0) {
+                url = url.substring(sep + 1);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * An item of a top-N list, e.g. a {@code PopularPaths} item, chartable with {@link #makePathsChart}.
+     */
+    @Structural
+    public interface CountedItem {
+        int getUniques();
+        int getCount();
+    }
+}
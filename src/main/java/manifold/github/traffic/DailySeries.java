@@ -0,0 +1,187 @@
+package manifold.github.traffic;
+
+import manifold.rt.api.Bindings;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Views or clones per day over consecutive days, in primitive columns: entry {@code i} is the day {@code i} days after
+ * the first day, and days without traffic are zero. Immutable, safe to share between threads.
+ * <p/>
+ * A traffic response is decoded once, straight into the columns, see {@link #parse}. Charting and summing then read
+ * ints, instead of calling structural getters on JSON bindings and parsing a date-time string on every read.
+ */
+public final class DailySeries {
+    /**
+     * Days of GitHub's traffic window, the last 14 days and today
+     */
+    public static final int DAYS = 15;
+
+    private static final Map<String, JsonProjection> PROJECTIONS = new ConcurrentHashMap<>();
+
+    private final long _firstDay;
+    private final int[] _counts;
+    private final int[] _uniques;
+
+    private DailySeries(long firstDay, int[] counts, int[] uniques) {
+        _firstDay = firstDay;
+        _counts = counts;
+        _uniques = uniques;
+    }
+
+    /**
+     * @param counts Counts per day from {@code firstDay}, not copied
+     * @param uniques Uniques per day from {@code firstDay}, not copied
+     */
+    public static DailySeries of(LocalDate firstDay, int[] counts, int[] uniques) {
+        if (counts.length != uniques.length) {
+            throw new IllegalArgumentException("counts and uniques differ in length: ${counts.length} vs ${uniques.length}");
+        }
+        return new DailySeries(firstDay.toEpochDay(), counts, uniques);
+    }
+
+    /**
+     * @return Zeros for the {@code days} days up to and including {@code lastDay}
+     */
+    public static DailySeries empty(LocalDate lastDay, int days) {
+        return new DailySeries(lastDay.toEpochDay() - days + 1, new int[days], new int[days]);
+    }
+
+    /**
+     * Decodes a {@code /traffic/views} or {@code /traffic/clones} response into the {@link #DAYS}-day window ending
+     * {@code lastDay}. Days missing from the response are zero, days outside the window are dropped.
+     *
+     * @param field The response's array of days, {@code views} or {@code clones}
+     */
+    public static DailySeries parse(String json, String field, LocalDate lastDay) {
+        JsonProjection projection = PROJECTIONS.computeIfAbsent(field,
+                name -> JsonProjection.of(name + ".timestamp", name + ".count", name + ".uniques"));
+        DailySeries series = empty(lastDay, DAYS);
+        List<?> days = (List<?>) ((Bindings) projection.parse(json)).get(field);
+        if (days == null) {
+            return series;
+        }
+        for (Object item : days) {
+            Bindings day = (Bindings) item;
+            long i = epochDay((String) day.get("timestamp")) - series._firstDay;
+            if (i >= 0 && i < DAYS) {
+                series._counts[(int) i] += ((Number) day.get("count")).intValue();
+                series._uniques[(int) i] += ((Number) day.get("uniques")).intValue();
+            }
+        }
+        return series;
+    }
+
+    /**
+     * @param timestamp ISO 8601, e.g. {@code 2024-03-01T00:00:00Z}, only the date is read
+     */
+    static long epochDay(String timestamp) {
+        int year = digits(timestamp, 0, 4);
+        int month = digits(timestamp, 5, 7);
+        int day = digits(timestamp, 8, 10);
+        return LocalDate.of(year, month, day).toEpochDay();
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Not a date: $s");
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    public int size() {
+        return _counts.length;
+    }
+
+    public LocalDate firstDay() {
+        return LocalDate.ofEpochDay(_firstDay);
+    }
+
+    public LocalDate lastDay() {
+        return LocalDate.ofEpochDay(_firstDay + _counts.length - 1);
+    }
+
+    public LocalDate day(int i) {
+        return LocalDate.ofEpochDay(_firstDay + i);
+    }
+
+    public int count(int i) {
+        return _counts[i];
+    }
+
+    public int uniques(int i) {
+        return _uniques[i];
+    }
+
+    public int totalCount() {
+        int total = 0;
+        for (int count : _counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    public int totalUniques() {
+        int total = 0;
+        for (int uniques : _uniques) {
+            total += uniques;
+        }
+        return total;
+    }
+
+    public int maxCount() {
+        int max = 0;
+        for (int count : _counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    /**
+     * @return The {@code days} days up to and including {@code lastDay}, days outside this series are zero. This
+     * series if it already spans exactly those days.
+     */
+    public DailySeries window(LocalDate lastDay, int days) {
+        long firstDay = lastDay.toEpochDay() - days + 1;
+        if (firstDay == _firstDay && days == _counts.length) {
+            return this;
+        }
+        DailySeries window = new DailySeries(firstDay, new int[days], new int[days]);
+        window.add(this);
+        return window;
+    }
+
+    /**
+     * @return The day-by-day sum over the days of both series
+     */
+    public DailySeries plus(DailySeries other) {
+        long firstDay = Math.min(_firstDay, other._firstDay);
+        long lastDay = Math.max(_firstDay + _counts.length, other._firstDay + other._counts.length) - 1;
+        int days = (int) (lastDay - firstDay + 1);
+        DailySeries sum = new DailySeries(firstDay, new int[days], new int[days]);
+        sum.add(this);
+        sum.add(other);
+        return sum;
+    }
+
+    /**
+     * Adds the days of {@code other} that fall within this series, only for series under construction.
+     */
+    private void add(DailySeries other) {
+        int from = (int) Math.max(0, _firstDay - other._firstDay);
+        int to = (int) Math.min(other._counts.length, _firstDay + _counts.length - other._firstDay);
+        int offset = (int) (other._firstDay - _firstDay);
+        for (int i = from; i < to; i++) {
+            _counts[i + offset] += other._counts[i];
+            _uniques[i + offset] += other._uniques[i];
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package manifold.github.traffic;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * The time a run must be done by, {@code -deadline}. {@link GitHubApi} checks it before each request, bounds its
+ * timeouts, retries and rate limit waits by it, and throws {@link ExceededException} once it has passed. Report
+ * sections cut short show as skipped, and what was fetched so far is kept where a later run can pick it up.
+ */
+public final class Deadline {
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long _nanos;
+    private final boolean _bounded;
+
+    private Deadline(long nanos, boolean bounded) {
+        _nanos = nanos;
+        _bounded = bounded;
+    }
+
+    public static Deadline after(Duration budget) {
+        return new Deadline(System.nanoTime() + budget.toNanos(), true);
+    }
+
+    /**
+     * @return The deadline {@code -deadline} seconds from now, or {@link #NONE}
+     */
+    static Deadline of(Map<Arg, String> processedArgs) {
+        String seconds = processedArgs.get(Arg.deadline);
+        return seconds == null ? NONE : after(Duration.ofSeconds(Long.parseLong(seconds)));
+    }
+
+    public boolean isBounded() {
+        return _bounded;
+    }
+
+    /**
+     * @return Milliseconds left, 0 once passed, {@link Long#MAX_VALUE} if unbounded
+     */
+    public long remainingMillis() {
+        if (!_bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, (_nanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean isExpired() {
+        return _bounded && _nanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param what What can't be done in time, for the exception message
+     */
+    public void check(String what) {
+        if (isExpired()) {
+            throw new ExceededException("Deadline reached before: $what");
+        }
+    }
+
+    /**
+     * Thrown by work started or still running past the deadline.
+     */
+    public static class ExceededException extends RuntimeException {
+        public ExceededException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package manifold.github.traffic;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * {@link StateStore} of a file per key under a directory, {@code -store files}. A repo's state is in
+ * {@code <dir>/<user>/<repo>/}.
+ * <p/>
+ * A commit writes each new value to a temp file next to its file and forces it, then records the renames and deletes
+ * to make in a journal, {@code <dir>/commit-*.journal}, and forces that. The journal's last line decides the commit,
+ * the renames follow and the journal is removed. The fsyncs of a commit are grouped, one per file and one per
+ * directory however many repos it spans. A commit cut short after its journal is completed by the next store opened
+ * on the directory, one cut short before is dropped. The journal is locked while its commit runs, so a live commit
+ * of another process is left alone.
+ */
+final class FileStateStore implements StateStore {
+    private static final String JOURNAL_PREFIX = "commit-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String PUT = "put\t";
+    private static final String DELETE = "delete\t";
+    private static final String COMMITTED = "committed";
+    // a journal without its last line may still be written by a process that has not locked it yet
+    private static final long STALE_JOURNAL_MILLIS = 60_000;
+
+    private final File _dir;
+
+    FileStateStore(File dir) throws IOException {
+        _dir = dir;
+        recover();
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        File file = file(key);
+        return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        commit(Collections.singletonMap(key, value));
+    }
+
+    @Override
+    public void append(String key, byte[] data) throws IOException {
+        File file = file(key);
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(data);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        commit(Collections.singletonMap(key, null));
+    }
+
+    @Override
+    public void commit(Map<String, byte[]> changes) throws IOException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        if (changes.size() == 1) {
+            // a single rename is atomic by itself
+            Map.Entry<String, byte[]> change = changes.entrySet().iterator().next();
+            File file = file(change.getKey());
+            if (change.getValue() == null) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                Path temp = writeTemp(file, change.getValue());
+                try {
+                    Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+            }
+            force(file.getParentFile());
+            return;
+        }
+        commitJournaled(changes);
+    }
+
+    private void commitJournaled(Map<String, byte[]> changes) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        _dir.mkdirs();
+        Path journal = Files.createTempFile(_dir.toPath(), JOURNAL_PREFIX, JOURNAL_SUFFIX);
+        List<Path> temps = new ArrayList<>();
+        boolean committed = false;
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    sb.append(DELETE).append(change.getKey()).append('\n');
+                } else {
+                    Path temp = writeTemp(file(change.getKey()), change.getValue());
+                    temps.add(temp);
+                    sb.append(PUT).append(relative(temp)).append('\t').append(change.getKey()).append('\n');
+                }
+            }
+            sb.append(COMMITTED).append('\n');
+            ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+            force(_dir);
+            committed = true;
+            try {
+                apply(Arrays.asList(sb.toString().split("\n")), true);
+            } catch (IOException | RuntimeException e) {
+                // decided, the next store opened on the directory completes it
+                throw new IOException("Commit interrupted, completed on the next run: $journal", e);
+            }
+            Files.delete(journal);
+        } finally {
+            if (!committed) {
+                for (Path temp : temps) {
+                    Files.deleteIfExists(temp);
+                }
+                Files.deleteIfExists(journal);
+            }
+        }
+    }
+
+    /**
+     * Completes the commits journaled by processes that did not finish them and drops the undecided ones.
+     */
+    private void recover() throws IOException {
+        File[] journals = _dir.listFiles((dir, name) -> name.startsWith(JOURNAL_PREFIX) && name.endsWith(JOURNAL_SUFFIX));
+        if (journals == null) {
+            return;
+        }
+        for (File journal : journals) {
+            try (FileChannel channel = FileChannel.open(journal.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileLock lock = channel.tryLock()) {
+                if (lock == null) {
+                    // committing in another process
+                    continue;
+                }
+                List<String> lines = Files.readAllLines(journal.toPath(), StandardCharsets.UTF_8);
+                boolean committed = !lines.isEmpty() && COMMITTED.equals(lines.get(lines.size() - 1));
+                if (!committed && journal.lastModified() > System.currentTimeMillis() - STALE_JOURNAL_MILLIS) {
+                    continue;
+                }
+                apply(lines, committed);
+                Files.delete(journal.toPath());
+            } catch (OverlappingFileLockException e) {
+                // committing in this process
+            } catch (NoSuchFileException e) {
+                // completed meanwhile
+            }
+        }
+    }
+
+    /**
+     * Makes the renames and deletes of a journal, or if not committed, removes its temp files. Repeatable, a temp file
+     * already renamed is gone.
+     */
+    private void apply(List<String> journal, boolean committed) throws IOException {
+        Set<File> dirs = new LinkedHashSet<>();
+        for (String line : journal) {
+            if (line.startsWith(PUT)) {
+                String[] fields = line.substring(PUT.length()).split("\t");
+                if (fields.length != 2) {
+                    continue;
+                }
+                Path temp = new File(_dir, fields[0].replace('/', File.separatorChar)).toPath();
+                File file = file(fields[1]);
+                if (!committed) {
+                    Files.deleteIfExists(temp);
+                } else if (Files.exists(temp)) {
+                    Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    dirs.add(file.getParentFile());
+                }
+            } else if (line.startsWith(DELETE) && committed) {
+                File file = file(line.substring(DELETE.length()));
+                if (Files.deleteIfExists(file.toPath())) {
+                    dirs.add(file.getParentFile());
+                }
+            }
+        }
+        for (File dir : dirs) {
+            force(dir);
+        }
+    }
+
+    /**
+     * @return A forced temp file with the value, unique per writer, next to {@code file}
+     */
+    private static Path writeTemp(File file, byte[] value) throws IOException {
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return temp;
+    }
+
+    /**
+     * Forces a directory's entries, so renames into it survive a crash.
+     */
+    private static void force(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // directories can't be opened on every platform, e.g. Windows, renames are then as durable as it makes them
+        }
+    }
+
+    private String relative(Path temp) {
+        return _dir.toPath().relativize(temp).toString().replace(File.separatorChar, '/');
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private File file(String key) {
+        return new File(_dir, key.replace('/', File.separatorChar));
+    }
+}
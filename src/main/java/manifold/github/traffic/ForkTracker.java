@@ -0,0 +1,152 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+
+/**
+ * Tracks a repo's forks between runs in {@code forks.txt}: the known forks, newest first, after a first line with
+ * the fork count the repo reported when the file was written.
+ * <p/>
+ * Forks are paged newest first and paging stops at the first fork already known, so a run with no new forks costs a
+ * single request. Paging from the top can't see deleted forks, those are found by a full scan, which runs only when
+ * the repo's fork count drops below the recorded count.
+ */
+final class ForkTracker {
+    static final String FILE = "forks.txt";
+    static final int PAGE_SIZE = 100; // max
+    private static final String FORKS_COUNT = "#forks_count ";
+
+    private final StateStore _store;
+    private final String _key;
+
+    ForkTracker(StateStore store, String user, String repo) {
+        _store = store;
+        _key = StateStore.key(user, repo, FILE);
+    }
+
+    /**
+     * Updates the known forks and records {@code forksCount}.
+     *
+     * @param forksCount The repo's current fork count
+     * @param pager Fetches a page of forks, newest first, pages start at 1
+     * @return Forks created and deleted since the last run, both empty on the first run
+     */
+    Diff update(int forksCount, Pager pager) throws IOException {
+        Snapshot prior = read();
+        List<String> gained = new ArrayList<>();
+        List<String> lost = new ArrayList<>();
+        LinkedHashSet<String> now;
+        if (prior == null || forksCount < prior.forksCount) {
+            now = new LinkedHashSet<>();
+            fetch(pager, fork -> {
+                now.add(fork);
+                return true;
+            });
+            if (prior != null) {
+                for (String fork : now) {
+                    if (!prior.forks.contains(fork)) {
+                        gained.add(fork);
+                    }
+                }
+                for (String fork : prior.forks) {
+                    if (!now.contains(fork)) {
+                        lost.add(fork);
+                    }
+                }
+            }
+        } else {
+            // a fork deleted and another created since the last run leave the count as is, the deleted fork stays
+            // listed until the count next drops
+            fetch(pager, fork -> !prior.forks.contains(fork) && gained.add(fork));
+            now = new LinkedHashSet<>(gained);
+            now.addAll(prior.forks);
+        }
+        write(now, forksCount);
+        return new Diff(gained, lost);
+    }
+
+    /**
+     * Pages until {@code consumer} declines a fork or the last page.
+     */
+    private static void fetch(Pager pager, ForkConsumer consumer) {
+        List<String> onePage;
+        int page = 0;
+        do {
+            page++;
+            onePage = pager.page(page);
+            for (String fork : onePage) {
+                if (!consumer.accept(fork)) {
+                    return;
+                }
+            }
+        } while (onePage.size() == PAGE_SIZE);
+    }
+
+    private Snapshot read() throws IOException {
+        String text = _store.getString(_key);
+        if (text == null) {
+            return null;
+        }
+        int forksCount = 0;
+        LinkedHashSet<String> forks = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(FORKS_COUNT)) {
+                    try {
+                        forksCount = Integer.parseInt(line.substring(FORKS_COUNT.length()).trim());
+                    } catch (NumberFormatException e) {
+                        // unknown count, the next drop in count is missed until a full scan
+                    }
+                } else if (!line.isEmpty()) {
+                    forks.add(line);
+                }
+            }
+        }
+        return new Snapshot(forksCount, forks);
+    }
+
+    private void write(Collection<String> forks, int forksCount) throws IOException {
+        StringBuilder sb = new StringBuilder(FORKS_COUNT).append(forksCount).append('\n');
+        for (String fork : forks) {
+            sb.append(fork).append('\n');
+        }
+        _store.putString(_key, sb.toString());
+    }
+
+    interface Pager {
+        /**
+         * @return Full names of the forks on the page, e.g. "joeuser/widget", newest first
+         */
+        List<String> page(int page);
+    }
+
+    private interface ForkConsumer {
+        /**
+         * @return False to stop paging
+         */
+        boolean accept(String fork);
+    }
+
+    private static class Snapshot {
+        final int forksCount;
+        final LinkedHashSet<String> forks;
+
+        Snapshot(int forksCount, LinkedHashSet<String> forks) {
+            this.forksCount = forksCount;
+            this.forks = forks;
+        }
+    }
+
+    static class Diff {
+        final List<String> gained;
+        final List<String> lost;
+
+        Diff(List<String> gained, List<String> lost) {
+            this.gained = gained;
+            this.lost = lost;
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package manifold.github.traffic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * HTTP transport for GitHub REST API requests. Unlike Manifold's {@code Requester}, responses expose status, headers
+ * and size, which the profiler and later callers need. Server errors and connection failures are retried with
+ * exponential backoff. Requests are spread over a {@link TokenPool}, a rate limited request moves on to another token
+ * right away, or with a single token is retried after the wait GitHub asks for, if it is short enough. A rate limit
+ * that outlasts that is a {@link ReportedException}, never a response. With a {@link Deadline}, no request starts, waits or retries past it, see {@link Deadline.ExceededException}.
+ */
+public class GitHubApi {
+    static final String API_VERSION = "2022-11-28";
+    static final String JSON = "application/vnd.github+json";
+    private static final int MAX_RETRIES = 3;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final long MAX_RATE_LIMIT_WAIT_MILLIS = 60_000;
+
+    private final TokenPool _tokens;
+    private final Deadline _deadline;
+
+    public GitHubApi(TokenPool tokens) {
+        this(tokens, Deadline.NONE);
+    }
+
+    public GitHubApi(TokenPool tokens, Deadline deadline) {
+        _tokens = tokens;
+        _deadline = deadline;
+    }
+
+    public Deadline deadline() {
+        return _deadline;
+    }
+
+    /**
+     * @param accept Media type for the Accept header, null for the default JSON media type
+     * @return The response, which may have any status but a rate limit. Only server errors and connection failures are
+     * retried.
+     * @throws ReportedException If every token is rate limited for longer than the client waits
+     */
+    public Response get(String url, String accept) throws IOException {
+        return get(url, accept, null);
+    }
+
+    /**
+     * A conditional request, answered with {@code 304 Not Modified} and an empty body if the resource still has the
+     * given ETag. GitHub does not count 304 responses against the rate limit.
+     *
+     * @param etag ETag of an earlier response, null for an unconditional request
+     */
+    public Response get(String url, String accept, String etag) throws IOException {
+        long start = System.nanoTime();
+        int retries = 0;
+        int tokenSwitches = 0;
+        while (true) {
+            _deadline.check(url);
+            long delay = RETRY_DELAY_MILLIS << retries;
+            try {
+                TokenPool.Token token = acquireToken();
+                Response response = tryGet(url, accept, etag, token, retries);
+                _tokens.update(token, response);
+                long rateLimitWait = response.rateLimitWaitMillis();
+                if (rateLimitWait >= 0 && tokenSwitches < _tokens.size() - 1) {
+                    // try the next best token, the pool now skips this one until its reset
+                    tokenSwitches++;
+                    continue;
+                }
+                boolean retry = response.status >= 500 || (rateLimitWait >= 0 && rateLimitWait <= MAX_RATE_LIMIT_WAIT_MILLIS);
+                if (!retry || retries == MAX_RETRIES) {
+                    Profiler.request(url, response.status, response.bytes, System.nanoTime() - start, retries);
+                    if (rateLimitWait >= 0) {
+                        // reported as a 403 or 429, callers would take it for a missing repo or no access
+                        throw rateLimited(rateLimitWait);
+                    }
+                    return response;
+                }
+                delay = Math.max(delay, rateLimitWait);
+            } catch (IOException e) {
+                if (retries == MAX_RETRIES || _deadline.isExpired()) {
+                    Profiler.request(url, -1, 0, System.nanoTime() - start, retries);
+                    // likely a timeout cut short by the deadline
+                    _deadline.check(url);
+                    throw e;
+                }
+            }
+            if (delay >= _deadline.remainingMillis()) {
+                throw new Deadline.ExceededException("Deadline reached while retrying: $url");
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while retrying: $url", e);
+            }
+            retries++;
+        }
+    }
+
+    private TokenPool.Token acquireToken() throws IOException {
+        while (true) {
+            TokenPool.Token token = _tokens.acquire();
+            if (token != null) {
+                return token;
+            }
+            long wait = _tokens.millisUntilReset();
+            if (wait > MAX_RATE_LIMIT_WAIT_MILLIS) {
+                throw rateLimited(wait);
+            }
+            if (wait >= _deadline.remainingMillis()) {
+                throw new Deadline.ExceededException("Deadline reached waiting for a rate limit reset");
+            }
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a rate limit reset", e);
+            }
+        }
+    }
+
+    /**
+     * @param wait Milliseconds until the token just used resets, if no exhausted token resets sooner
+     */
+    private ReportedException rateLimited(long wait) {
+        long earliest = _tokens.millisUntilReset();
+        if (earliest > 0) {
+            wait = Math.min(wait, earliest);
+        }
+        return new ReportedException("All GitHub tokens are rate limited, the next resets in ${wait / 60_000 + 1} min", null);
+    }
+
+    private Response tryGet(String url, String accept, String etag, TokenPool.Token token, int retries) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setRequestProperty("Accept", accept == null ? JSON : accept);
+            conn.setRequestProperty("X-GitHub-Api-Version", API_VERSION);
+            conn.setRequestProperty("Authorization", "Bearer ${token.getValue()}");
+            if (etag != null) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (_deadline.isBounded()) {
+                // a stalled request must not outlast the deadline, 0 would mean no timeout
+                int timeout = (int) Math.max(1, Math.min(Integer.MAX_VALUE, _deadline.remainingMillis()));
+                conn.setConnectTimeout(timeout);
+                conn.setReadTimeout(timeout);
+            }
+            long start = System.nanoTime();
+            conn.connect();
+            long connected = System.nanoTime();
+            int status = conn.getResponseCode();
+            long firstByte = System.nanoTime();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            byte[] body = in == null ? new byte[0] : read(in);
+            long done = System.nanoTime();
+            Profiler.http(connected - start, firstByte - connected, done - firstByte);
+            return new Response(url, status, body, conn.getHeaderFields(), token, retries);
+        } catch (IOException e) {
+            // otherwise the fully read stream returns the connection to the keep-alive pool
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    public static class Response {
+        public final String url;
+        public final int status;
+        public final String body;
+        public final int bytes;
+        public final Map<String, List<String>> headers;
+        public final TokenPool.Token token;
+        public final int retries;
+
+        Response(String url, int status, byte[] body, Map<String, List<String>> headers, TokenPool.Token token, int retries) {
+            this.url = url;
+            this.status = status;
+            this.body = new String(body, StandardCharsets.UTF_8);
+            this.bytes = body.length;
+            this.headers = headers == null ? Collections.emptyMap() : headers;
+            this.token = token;
+            this.retries = retries;
+        }
+
+        public boolean isSuccess() {
+            return status >= 200 && status < 300;
+        }
+
+        public boolean isNotModified() {
+            return status == 304;
+        }
+
+        /**
+         * @return The page number of the {@code rel="last"} link of a paged response, or -1 if there is none, e.g. a
+         * single page
+         */
+        public int lastPage() {
+            String link = header("Link");
+            if (link == null) {
+                return -1;
+            }
+            for (String part : link.split(",")) {
+                if (part.contains("rel=\"last\"")) {
+                    int start = part.indexOf('<');
+                    int end = part.indexOf('>');
+                    if (start >= 0 && end > start) {
+                        for (String param : part.substring(start + 1, end).replaceFirst("^[^?]*\\?", "").split("&")) {
+                            if (param.startsWith("page=")) {
+                                try {
+                                    return Integer.parseInt(param.substring("page=".length()));
+                                } catch (NumberFormatException e) {
+                                    return -1;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return Milliseconds to wait before retrying a rate limited response, or -1 if not rate limited
+         */
+        public long rateLimitWaitMillis() {
+            if (status != 403 && status != 429) {
+                return -1;
+            }
+            String retryAfter = header("Retry-After");
+            long wait = retryAfter == null ? -1 : retryAfterMillis(retryAfter.trim());
+            if (wait >= 0) {
+                return wait;
+            }
+            String reset = header("X-RateLimit-Reset");
+            if ("0".equals(header("X-RateLimit-Remaining")) && reset != null) {
+                try {
+                    return Math.max(0, Long.parseLong(reset.trim()) * 1000 - System.currentTimeMillis());
+                } catch (NumberFormatException e) {
+                    // malformed, no hint
+                }
+            }
+            // a 429 without hints, or a 403 that is not rate limiting (no access)
+            return status == 429 ? RETRY_DELAY_MILLIS : -1;
+        }
+
+        /**
+         * @param value Seconds to wait, or the HTTP-date to wait until
+         * @return The wait in milliseconds, -1 if the value is malformed
+         */
+        private static long retryAfterMillis(String value) {
+            try {
+                return Math.max(0, Long.parseLong(value) * 1000);
+            } catch (NumberFormatException e) {
+                // not seconds
+            }
+            try {
+                long until = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, until - System.currentTimeMillis());
+            } catch (DateTimeParseException e) {
+                return -1;
+            }
+        }
+
+        /**
+         * @return The first value of a response header, ignoring case, or null
+         */
+        public String header(String name) {
+            for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+                if (name.equalsIgnoreCase(entry.getKey()) && !entry.getValue().isEmpty()) {
+                    return entry.getValue().get(0);
+                }
+            }
+            return null;
+        }
+    }
+}
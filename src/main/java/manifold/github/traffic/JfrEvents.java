@@ -0,0 +1,197 @@
+package manifold.github.traffic;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Custom JFR events for GitHub requests ({@code manifold.github.traffic.Request}) and report stages
+ * ({@code manifold.github.traffic.Stage}).
+ * <p/>
+ * The project targets Java 8, whose API has no {@code jdk.jfr}, so the events are defined at runtime through
+ * {@code jdk.jfr.EventFactory} by reflection. On JVMs without the factory (Java 8) the events are simply off.
+ * Record with e.g. {@code java -XX:StartFlightRecording=filename=traffic.jfr -jar ...}.
+ * <p/>
+ * Whether a recording is running is kept in a flag, updated by a {@code jdk.jfr.FlightRecorderListener} as recordings
+ * start and stop, so checking it costs a volatile read.
+ */
+final class JfrEvents {
+    private static final Method GET_FLIGHT_RECORDER;
+    private static final Method GET_RECORDINGS;
+    private static final Method GET_STATE;
+    private static final Method NEW_EVENT;
+    private static final Method SET;
+    private static final Method COMMIT;
+    private static final Method IS_ENABLED;
+    private static final Object REQUEST_FACTORY;
+    private static final Object STAGE_FACTORY;
+
+    private static volatile boolean _recording;
+
+    static {
+        Method getFlightRecorder = null;
+        Method getRecordings = null;
+        Method getState = null;
+        Method newEvent = null;
+        Method set = null;
+        Method commit = null;
+        Method isEnabled = null;
+        Object requestFactory = null;
+        Object stageFactory = null;
+        try {
+            Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+            Class<?> event = Class.forName("jdk.jfr.Event");
+            getFlightRecorder = flightRecorder.getMethod("getFlightRecorder");
+            getRecordings = flightRecorder.getMethod("getRecordings");
+            getState = Class.forName("jdk.jfr.Recording").getMethod("getState");
+            newEvent = eventFactory.getMethod("newEvent");
+            set = event.getMethod("set", int.class, Object.class);
+            commit = event.getMethod("commit");
+            isEnabled = event.getMethod("isEnabled");
+            Method create = eventFactory.getMethod("create", List.class, List.class);
+            requestFactory = create.invoke(null,
+                    eventAnnotations("manifold.github.traffic.Request", "GitHub Request"),
+                    Arrays.asList(
+                            field(String.class, "urlTemplate", "URL Template", null),
+                            field(int.class, "status", "Status", null),
+                            field(long.class, "bytes", "Response Size", "jdk.jfr.DataAmount"),
+                            field(long.class, "latency", "Latency", "jdk.jfr.Timespan"),
+                            field(int.class, "retries", "Retry Count", null)));
+            stageFactory = create.invoke(null,
+                    eventAnnotations("manifold.github.traffic.Stage", "Report Stage"),
+                    Arrays.asList(
+                            field(String.class, "stage", "Stage", null),
+                            field(long.class, "elapsed", "Elapsed", "jdk.jfr.Timespan"),
+                            field(long.class, "allocated", "Allocated", "jdk.jfr.DataAmount")));
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // no JFR event factory on this JVM
+            requestFactory = null;
+            stageFactory = null;
+        }
+        GET_FLIGHT_RECORDER = getFlightRecorder;
+        GET_RECORDINGS = getRecordings;
+        GET_STATE = getState;
+        NEW_EVENT = newEvent;
+        SET = set;
+        COMMIT = commit;
+        IS_ENABLED = isEnabled;
+        REQUEST_FACTORY = requestFactory;
+        STAGE_FACTORY = stageFactory;
+        if (requestFactory != null) {
+            listen();
+        }
+    }
+
+    private JfrEvents() {
+    }
+
+    /**
+     * @return True if a flight recording is running in this JVM
+     */
+    static boolean isRecording() {
+        return _recording;
+    }
+
+    /**
+     * Registers a listener that updates {@link #_recording}. Adding it does not start the flight recorder, and if
+     * the recorder is already running, e.g. with {@code -XX:StartFlightRecording}, it is called right away.
+     */
+    private static void listen() {
+        try {
+            Class<?> listenerType = Class.forName("jdk.jfr.FlightRecorderListener");
+            Object listener = Proxy.newProxyInstance(JfrEvents.class.getClassLoader(), new Class<?>[]{listenerType},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "recorderInitialized":
+                            case "recordingStateChanged":
+                                updateRecording();
+                                return null;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return "JfrEvents recording listener";
+                            default:
+                                return null;
+                        }
+                    });
+            Class.forName("jdk.jfr.FlightRecorder").getMethod("addListener", listenerType).invoke(null, listener);
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException e) {
+            // events stay off
+        }
+    }
+
+    private static void updateRecording() {
+        boolean running = false;
+        try {
+            for (Object recording : (List<?>) GET_RECORDINGS.invoke(GET_FLIGHT_RECORDER.invoke(null))) {
+                running |= "RUNNING".equals(String.valueOf(GET_STATE.invoke(recording)));
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // instrumentation must never fail the report
+        }
+        _recording = running;
+    }
+
+    static void request(String urlTemplate, int status, long bytes, long latencyNanos, int retries) {
+        commit(REQUEST_FACTORY, urlTemplate, status, bytes, latencyNanos, retries);
+    }
+
+    static void stage(String stage, long elapsedNanos, long allocatedBytes) {
+        commit(STAGE_FACTORY, stage, elapsedNanos, allocatedBytes);
+    }
+
+    private static void commit(Object factory, Object... values) {
+        if (factory == null || !isRecording()) {
+            return;
+        }
+        try {
+            Object event = NEW_EVENT.invoke(factory);
+            if (!(Boolean) IS_ENABLED.invoke(event)) {
+                return;
+            }
+            for (int i = 0; i < values.length; i++) {
+                SET.invoke(event, i, values[i]);
+            }
+            COMMIT.invoke(event);
+        } catch (ReflectiveOperationException e) {
+            // instrumentation must never fail the report
+        }
+    }
+
+    private static List<Object> eventAnnotations(String name, String label) throws ReflectiveOperationException {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Name", name));
+        annotations.add(annotation("jdk.jfr.Label", label));
+        annotations.add(annotation("jdk.jfr.Category", new String[]{"GitHub Traffic"}));
+        // no stack traces, keeps the events cheap
+        annotations.add(annotation("jdk.jfr.StackTrace", false));
+        return annotations;
+    }
+
+    private static Object field(Class<?> type, String name, String label, String contentType) throws ReflectiveOperationException {
+        List<Object> annotations = new ArrayList<>();
+        annotations.add(annotation("jdk.jfr.Label", label));
+        if (contentType != null) {
+            // the element needs every value of the annotation, defaults included
+            annotations.add(annotation(contentType, contentType.equals("jdk.jfr.Timespan") ? "NANOSECONDS" : "BYTES"));
+        }
+        Class<?> valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor");
+        Constructor<?> constructor = valueDescriptor.getConstructor(Class.class, String.class, List.class);
+        return constructor.newInstance(type, name, annotations);
+    }
+
+    private static Object annotation(String annotationType, Object value) throws ReflectiveOperationException {
+        Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+        Class<?> type = Class.forName(annotationType);
+        if (value == null) {
+            return annotationElement.getConstructor(Class.class).newInstance(type);
+        }
+        return annotationElement.getConstructor(Class.class, Object.class).newInstance(type, value);
+    }
+}
@@ -0,0 +1,302 @@
+package manifold.github.traffic;
+
+import manifold.json.rt.api.DataBindings;
+import manifold.rt.api.Bindings;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses only the named fields of a JSON response, other subtrees are skipped while scanning without materializing
+ * them. Fields may be nested, {@code "user.login"}, a named field without nested names is kept whole. If the JSON is
+ * an array, each element is projected.
+ * <p/>
+ * Objects parse into {@link Bindings}, which cast to the {@code github.api} JSON types like any bindings, so the
+ * projected fields read through the usual typed API:
+ * <pre>
+ * private static final JsonProjection REPO_STATS = JsonProjection.of("stargazers_count", "forks_count");
+ * ...
+ * Repo repo = (Repo) REPO_STATS.parse(body);
+ * </pre>
+ * Reading a field outside the projection returns null. For a {@code Repo}, which GitHub returns with nested
+ * {@code owner}, {@code organization}, {@code parent}, {@code source} and {@code template_repository} objects,
+ * this keeps a handful of values instead of several hundred.
+ */
+public final class JsonProjection {
+    private final Map<String, JsonProjection> _fields;
+
+    private JsonProjection() {
+        _fields = new HashMap<>();
+    }
+
+    /**
+     * @param fields Names of the fields to keep, nested names separated by '.'
+     */
+    public static JsonProjection of(String... fields) {
+        JsonProjection projection = new JsonProjection();
+        for (String field : fields) {
+            JsonProjection node = projection;
+            for (String name : field.split("\\.")) {
+                node = node._fields.computeIfAbsent(name, k -> new JsonProjection());
+            }
+        }
+        return projection;
+    }
+
+    /**
+     * @return {@link Bindings} for an object, a {@link List} for an array, otherwise the value
+     */
+    public Object parse(String json) {
+        Parser parser = new Parser(json);
+        Object value = parser.value(this);
+        parser.whitespace();
+        if (parser._pos != json.length()) {
+            throw parser.error("Unexpected content after JSON value");
+        }
+        return value;
+    }
+
+    private boolean isWhole() {
+        return _fields.isEmpty();
+    }
+
+    private static class Parser {
+        private final String _json;
+        private int _pos;
+
+        Parser(String json) {
+            _json = json;
+        }
+
+        /**
+         * @param projection Fields to keep, null to skip the value
+         */
+        Object value(JsonProjection projection) {
+            whitespace();
+            if (_pos >= _json.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            char c = _json.charAt(_pos);
+            switch (c) {
+                case '{':
+                    return object(projection);
+                case '[':
+                    return array(projection);
+                case '"':
+                    if (projection == null) {
+                        skipString();
+                        return null;
+                    }
+                    return string();
+                case 't':
+                    literal("true");
+                    return Boolean.TRUE;
+                case 'f':
+                    literal("false");
+                    return Boolean.FALSE;
+                case 'n':
+                    literal("null");
+                    return null;
+                default:
+                    return number(projection != null);
+            }
+        }
+
+        private Bindings object(JsonProjection projection) {
+            _pos++; // {
+            Bindings bindings = projection == null ? null : new DataBindings();
+            whitespace();
+            if (peek() == '}') {
+                _pos++;
+                return bindings;
+            }
+            while (true) {
+                whitespace();
+                if (peek() != '"') {
+                    throw error("Expecting a field name");
+                }
+                JsonProjection field;
+                String name = null;
+                if (projection == null) {
+                    skipString();
+                    field = null;
+                } else if (projection.isWhole()) {
+                    name = string();
+                    field = projection;
+                } else {
+                    name = string();
+                    field = projection._fields.get(name);
+                }
+                whitespace();
+                expect(':');
+                Object value = value(field);
+                if (field != null) {
+                    bindings.put(name, value);
+                }
+                whitespace();
+                char c = next();
+                if (c == '}') {
+                    return bindings;
+                }
+                if (c != ',') {
+                    throw error("Expecting ',' or '}'");
+                }
+            }
+        }
+
+        private List<Object> array(JsonProjection projection) {
+            _pos++; // [
+            List<Object> list = projection == null ? null : new ArrayList<>();
+            whitespace();
+            if (peek() == ']') {
+                _pos++;
+                return list;
+            }
+            while (true) {
+                Object value = value(projection);
+                if (list != null) {
+                    list.add(value);
+                }
+                whitespace();
+                char c = next();
+                if (c == ']') {
+                    return list;
+                }
+                if (c != ',') {
+                    throw error("Expecting ',' or ']'");
+                }
+            }
+        }
+
+        private String string() {
+            int start = ++_pos; // "
+            StringBuilder sb = null;
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return sb == null ? _json.substring(start, _pos - 1) : sb.toString();
+                }
+                if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder(_json.substring(start, _pos - 1));
+                    }
+                    sb.append(escape());
+                } else if (sb != null) {
+                    sb.append(c);
+                }
+            }
+        }
+
+        private void skipString() {
+            _pos++; // "
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    next();
+                }
+            }
+        }
+
+        private char escape() {
+            char c = next();
+            switch (c) {
+                case 'b':
+                    return '\b';
+                case 'f':
+                    return '\f';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'u':
+                    if (_pos + 4 > _json.length()) {
+                        throw error("Bad unicode escape");
+                    }
+                    try {
+                        char unicode = (char) Integer.parseInt(_json.substring(_pos, _pos + 4), 16);
+                        _pos += 4;
+                        return unicode;
+                    } catch (NumberFormatException e) {
+                        throw error("Bad unicode escape");
+                    }
+                default:
+                    // '"', '\\' and '/'
+                    return c;
+            }
+        }
+
+        private Number number(boolean keep) {
+            int start = _pos;
+            boolean decimal = false;
+            while (_pos < _json.length()) {
+                char c = _json.charAt(_pos);
+                if (c == '.' || c == 'e' || c == 'E') {
+                    decimal = true;
+                } else if (!(c >= '0' && c <= '9') && c != '-' && c != '+') {
+                    break;
+                }
+                _pos++;
+            }
+            if (start == _pos) {
+                throw error("Unexpected character");
+            }
+            if (!keep) {
+                return null;
+            }
+            String number = _json.substring(start, _pos);
+            try {
+                if (decimal) {
+                    return Double.parseDouble(number);
+                }
+                long value = Long.parseLong(number);
+                // same number types as Manifold's JSON parser
+                return value == (int) value ? (Number) (int) value : (Number) value;
+            } catch (NumberFormatException e) {
+                throw error("Bad number: $number");
+            }
+        }
+
+        private void literal(String literal) {
+            if (!_json.startsWith(literal, _pos)) {
+                throw error("Unexpected character");
+            }
+            _pos += literal.length();
+        }
+
+        void whitespace() {
+            while (_pos < _json.length() && Character.isWhitespace(_json.charAt(_pos))) {
+                _pos++;
+            }
+        }
+
+        private void expect(char c) {
+            if (next() != c) {
+                throw error("Expecting '$c'");
+            }
+        }
+
+        private char peek() {
+            if (_pos >= _json.length()) {
+                throw error("Unexpected end of JSON");
+            }
+            return _json.charAt(_pos);
+        }
+
+        private char next() {
+            char c = peek();
+            _pos++;
+            return c;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("$message at offset $_pos");
+        }
+    }
+}
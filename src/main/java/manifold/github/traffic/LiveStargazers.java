@@ -0,0 +1,148 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+/**
+ * A repo's live stargazer list, {@code stargazers_live.txt}: the stargazers of the last full scan with the star
+ * events {@link StarWebhook} received since applied, in starring order. The first line records when the list was
+ * last scanned, the scanned logins follow.
+ * <p/>
+ * An event appends a {@code +login} or {@code -login} line rather than rewriting the list, {@link #read} folds them
+ * over the scanned logins and {@link #reconcile} writes the list anew without them. GitHub logins start with a letter
+ * or digit, so the prefixes can't be mistaken for one.
+ * <p/>
+ * The list only exists for repos that receive webhook events. The report then uses it in place of paging through
+ * {@code /stargazers}, and scans again only when reconciliation is due.
+ */
+final class LiveStargazers {
+    static final String FILE = "stargazers_live.txt";
+    private static final String SCANNED = "#scanned ";
+    private static final char STARRED = '+';
+    private static final char UNSTARRED = '-';
+
+    private final StateStore _store;
+    private final String _key;
+    private final String _scanKey;
+
+    LiveStargazers(StateStore store, String user, String repo) {
+        _store = store;
+        _key = StateStore.key(user, repo, FILE);
+        _scanKey = StateStore.key(user, repo, "stargazers.txt");
+    }
+
+    /**
+     * @return The live list, or null if the repo receives no webhook events
+     */
+    Snapshot read() throws IOException {
+        String text = _store.getString(_key);
+        if (text == null) {
+            return null;
+        }
+        Instant scanned = Instant.EPOCH;
+        LinkedHashSet<String> gazers = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SCANNED)) {
+                    try {
+                        scanned = Instant.parse(line.substring(SCANNED.length()));
+                    } catch (DateTimeParseException e) {
+                        // unknown scan time, reconcile
+                    }
+                } else if (line.length() > 1 && line.charAt(0) == STARRED) {
+                    gazers.add(line.substring(1));
+                } else if (line.length() > 1 && line.charAt(0) == UNSTARRED) {
+                    gazers.remove(line.substring(1));
+                } else if (!line.isEmpty()) {
+                    gazers.add(line);
+                }
+            }
+        }
+        return new Snapshot(scanned, gazers);
+    }
+
+    /**
+     * Replaces the live list and the events applied to it with a full scan.
+     */
+    void reconcile(Collection<String> gazers, Instant scanned) throws IOException {
+        write(gazers, scanned);
+    }
+
+    /**
+     * Applies a star event. The first event for a repo seeds the live list from {@code stargazers.txt}, the last
+     * scan the report saved.
+     *
+     * @param starred True for a new star, false for a removed star
+     * @return False if the repo has no saved scan to apply the event to
+     */
+    boolean apply(String login, boolean starred) throws IOException {
+        if (_store.get(_key) != null) {
+            // a repeated event folds to the same list, the next reconcile drops it
+            _store.append(_key, ("${starred ? STARRED : UNSTARRED}$login\n").getBytes(StandardCharsets.UTF_8));
+            return true;
+        }
+        Snapshot snapshot = seed();
+        if (snapshot == null) {
+            return false;
+        }
+        if (starred) {
+            snapshot.gazers.add(login);
+        } else {
+            snapshot.gazers.remove(login);
+        }
+        write(snapshot.gazers, snapshot.scanned);
+        return true;
+    }
+
+    private Snapshot seed() throws IOException {
+        String scan = _store.getString(_scanKey);
+        if (scan == null) {
+            return null;
+        }
+        LinkedHashSet<String> gazers = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(scan))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    gazers.add(line);
+                }
+            }
+        }
+        // the store keeps no time with the scan, count from the first event, the star count check catches drift
+        return new Snapshot(Instant.now(), gazers);
+    }
+
+    private void write(Collection<String> gazers, Instant scanned) throws IOException {
+        StringBuilder sb = new StringBuilder(SCANNED).append(scanned).append('\n');
+        for (String gazer : gazers) {
+            sb.append(gazer).append('\n');
+        }
+        _store.putString(_key, sb.toString());
+    }
+
+    static class Snapshot {
+        final Instant scanned;
+        final LinkedHashSet<String> gazers;
+
+        Snapshot(Instant scanned, LinkedHashSet<String> gazers) {
+            this.scanned = scanned;
+            this.gazers = gazers;
+        }
+
+        /**
+         * @param stars The repo's current star count, a different count means events were missed
+         * @return True if the list is too old or has drifted and a full scan is needed
+         */
+        boolean isReconcileDue(Duration reconcileEvery, int stars) {
+            return gazers.size() != stars || scanned.plus(reconcileEvery).isBefore(Instant.now());
+        }
+    }
+}
@@ -23,7 +23,7 @@ public class Main {
             return;
         }
         try {
-            new Traffic(processedArgs).report();
+            run(processedArgs);
         } catch (ReportedException e) {
             showError(e.getMessage(), false);
         } catch (RuntimeException e) {
@@ -36,6 +36,42 @@ public class Main {
         }
     }
 
+    private static void run(Map<Arg, String> processedArgs) throws IOException, InterruptedException {
+        if (processedArgs.containsKey(Arg.webhook)) {
+            try (StateStore store = StateStore.open(processedArgs);
+                 StarWebhook webhook = new StarWebhook(store, Integer.parseInt(processedArgs.get(Arg.webhook)),
+                         System.getenv(StarWebhook.SECRET_ENV)).start()) {
+                System.out.println("Receiving star events on port ${webhook.port()}");
+                webhook.await();
+            }
+        } else if (processedArgs.containsKey(Arg.org)) {
+            try (WriteBehindStore store = new WriteBehindStore(StateStore.open(processedArgs))) {
+                try {
+                    new OrgReport(processedArgs, store).report();
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    // the state stays at the last complete run
+                    store.discard();
+                    throw e;
+                }
+            }
+        } else if (!processedArgs.containsKey(Arg.repos)) {
+            try (WriteBehindStore store = new WriteBehindStore(StateStore.open(processedArgs))) {
+                try {
+                    new Traffic(processedArgs, store).report();
+                } catch (IOException | InterruptedException | RuntimeException e) {
+                    store.discard();
+                    throw e;
+                }
+            }
+        } else if (processedArgs.containsKey(Arg.merge)) {
+            System.out.println(new ShardCoordinator(processedArgs).merge());
+        } else {
+            try (ShardWorker worker = new ShardWorker(processedArgs)) {
+                worker.run();
+            }
+        }
+    }
+
     private static void displayUsage() {
         System.out.println();
         System.out.println("Displays recent statistics for a specified github repository.\n");
@@ -72,7 +108,7 @@ public class Main {
             }
         }
         List<String> missingArgs = Arg.allRequired().stream()
-                .filter(arg -> !map.containsKey(arg))
+                .filter(arg -> !arg.isPresent(map))
                 .map(arg -> "\n  " + arg.getName() + "  '" + arg.getDescription() + "'")
                 .collect(Collectors.toList());
         if( !missingArgs.isEmpty() ) {
@@ -0,0 +1,361 @@
+package manifold.github.traffic;
+
+import manifold.rt.api.Bindings;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static manifold.github.traffic.AnsiColor.*;
+
+/**
+ * Org mode, {@code -org}: one report over all repos of an org or user.
+ * <ul>
+ * <li>Views and clones are summed per day over the repos. Uniques are summed too, a visitor of two repos counts
+ * twice.</li>
+ * <li>Top paths are the org-wide top 10 of the repos' top-10 lists, top referrers are summed over the repos first.</li>
+ * <li>Star gains are summed over the repos since the last org report.</li>
+ * </ul>
+ * The repos' traffic is fetched concurrently, up to {@value #MAX_CONCURRENCY} requests at a time, so a report takes
+ * about as long as the slowest repo rather than the sum of all. Repos the token can't read the traffic of are left
+ * out and counted.
+ */
+public class OrgReport {
+    static final String STARS_FILE = "org_stars.txt";
+    private static final int MAX_CONCURRENCY = 64;
+    private static final int PAGE_SIZE = 100; // max
+    private static final int TOP = 10;
+    private static final int MAX_URL = 38;
+    private static final int MAX_REFERRER_URL = 30;
+    private static final JsonProjection REPO_LIST = JsonProjection.of("name", "stargazers_count", "forks_count");
+    private static final Comparator<TrafficReport.Popular> BY_COUNT =
+            Comparator.comparingInt(TrafficReport.Popular::getCount).thenComparingInt(TrafficReport.Popular::getUniques);
+
+    private final String _org;
+    private final String _apiUrl;
+    private final int _days;
+    private final GitHubApi _api;
+    private final StateStore _store;
+    private final Charts _charts;
+    private final PrintStream _out;
+    private final StringBuilder _content;
+
+    OrgReport(Map<Arg, String> processedArgs, StateStore store) throws IOException {
+        this(processedArgs, new GitHubApi(TokenPool.load(processedArgs.get(Arg.token), processedArgs.get(Arg.tokens)),
+                Deadline.of(processedArgs)), store, System.out);
+    }
+
+    OrgReport(Map<Arg, String> processedArgs, GitHubApi api, StateStore store, PrintStream out) {
+        _org = processedArgs.get(Arg.org);
+        String apiUrl = processedArgs.get(Arg.api);
+        _apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        _days = Integer.parseInt(processedArgs.get(Arg.days));
+        _api = api;
+        _store = store;
+        _charts = new Charts(_days);
+        _out = out;
+        _content = new StringBuilder();
+    }
+
+    @SuppressWarnings("UnusedReturnValue")
+    String report() throws IOException, InterruptedException {
+        List<Repo> repos;
+        try (Profiler.Stage ignored = Profiler.stage("org repos")) {
+            repos = listRepos();
+        }
+        if (repos.isEmpty()) {
+            throw new ReportedException("-org $_org has no repos", null);
+        }
+        List<String> failed = new ArrayList<>();
+        List<String> skipped = new ArrayList<>();
+        List<RepoTraffic> traffic;
+        try (Profiler.Stage ignored = Profiler.stage("org traffic")) {
+            traffic = fetchTraffic(repos, failed, skipped);
+        }
+
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("uuuu-MM-dd HH:mm:ss"));
+        println();
+        println("Org: $YELLOW$_org  $DKGREY$timestamp$RESET");
+        println();
+        println(makeStats(repos, failed, skipped));
+        println();
+        println("$_days-day summary$DKGREY (UTC time, ${traffic.size()} repos)$RESET");
+        println();
+        String charts;
+        try (Profiler.Stage ignored = Profiler.stage("org merge")) {
+            charts = makeCharts(traffic);
+        }
+        println(charts);
+        return _content.toString();
+    }
+
+    private List<Repo> listRepos() {
+        List<Repo> repos = new ArrayList<>();
+        String listUrl = "$_apiUrl/orgs/$_org/repos?type=all";
+        List<?> onePage;
+        int page = 0;
+        do {
+            page++;
+            GitHubApi.Response response = get("$listUrl&per_page=$PAGE_SIZE&page=$page");
+            if (response.status == 404 && page == 1) {
+                // not an org, a user's repos
+                listUrl = "$_apiUrl/users/$_org/repos?type=owner";
+                response = get("$listUrl&per_page=$PAGE_SIZE&page=$page");
+            }
+            check(response);
+            onePage = (List<?>) REPO_LIST.parse(response.body);
+            for (Object item : onePage) {
+                Bindings bindings = (Bindings) item;
+                repos.add(new Repo((String) bindings.get("name"), ((Number) bindings.get("stargazers_count")).intValue(),
+                        ((Number) bindings.get("forks_count")).intValue()));
+            }
+        } while (onePage.size() == PAGE_SIZE);
+        return repos;
+    }
+
+    /**
+     * @param failed Receives the repos whose traffic could not be read, typically for lack of push access
+     * @param skipped Receives the repos whose traffic was not read by the deadline
+     */
+    private List<RepoTraffic> fetchTraffic(List<Repo> repos, List<String> failed, List<String> skipped)
+            throws InterruptedException {
+        List<CompletableFuture<RepoTraffic>> futures = new ArrayList<>();
+        try (TrafficClient client = new TrafficClient(_api, _apiUrl, Duration.ZERO,
+                Math.min(MAX_CONCURRENCY, repos.size() * 4))) {
+            for (Repo repo : repos) {
+                CompletableFuture<DailySeries> views = client.views(_org, repo.name);
+                CompletableFuture<DailySeries> clones = client.clones(_org, repo.name);
+                CompletableFuture<List<TrafficReport.Popular>> paths = client.paths(_org, repo.name);
+                CompletableFuture<List<TrafficReport.Popular>> referrers = client.referrers(_org, repo.name);
+                futures.add(CompletableFuture.allOf(views, clones, paths, referrers).thenApply(v ->
+                        new RepoTraffic(views.join(), clones.join(), paths.join(), referrers.join())));
+            }
+            List<RepoTraffic> traffic = new ArrayList<>();
+            RuntimeException firstFailure = null;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    traffic.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    (e.getCause() instanceof Deadline.ExceededException ? skipped : failed).add(repos.get(i).name);
+                    if (firstFailure == null) {
+                        firstFailure = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause()
+                                : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            if (traffic.isEmpty()) {
+                // nothing to report, e.g. a bad token
+                throw firstFailure;
+            }
+            return traffic;
+        }
+    }
+
+    private String makeStats(List<Repo> repos, List<String> failed, List<String> skipped) throws IOException {
+        Map<String, Integer> prior = readStars();
+        int stars = 0;
+        int forks = 0;
+        int gained = 0;
+        for (Repo repo : repos) {
+            stars += repo.stars;
+            forks += repo.forks;
+            Integer priorStars = prior.get(repo.name);
+            if (priorStars != null) {
+                // new repos bring their stars along, not counted as gains
+                gained += repo.stars - priorStars;
+            }
+        }
+        writeStars(repos);
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("$YELLOW$stars$RESET");
+        if (!prior.isEmpty()) {
+            if (gained != 0) {
+                String sign = gained > 0 ? "$GREEN+" : "$RED";
+                sb.append("$DKGREY($sign$gained${DKGREY})");
+            }
+            sb.append("$DKGREY stars");
+        }
+        String separator = " $DKGREY|$RESET ";
+        sb.append(separator).append(Traffic.count(forks, "fork"))
+                .append(separator).append(Traffic.count(repos.size(), "repo"));
+        if (!failed.isEmpty()) {
+            sb.append(separator).append("$RED${failed.size()}$DKGREY without traffic access$RESET");
+        }
+        if (!skipped.isEmpty()) {
+            sb.append(separator).append("$YELLOW${skipped.size()}$DKGREY skipped, deadline reached$RESET");
+        }
+        return sb.toString();
+    }
+
+    private String makeCharts(List<RepoTraffic> traffic) {
+        List<DailySeries> views = new ArrayList<>();
+        List<DailySeries> clones = new ArrayList<>();
+        List<List<TrafficReport.Popular>> paths = new ArrayList<>();
+        Map<String, int[]> referrers = new HashMap<>();
+        for (RepoTraffic repo : traffic) {
+            views.add(repo.views);
+            clones.add(repo.clones);
+            List<TrafficReport.Popular> repoPaths = new ArrayList<>(repo.paths);
+            repoPaths.sort(BY_COUNT.reversed());
+            paths.add(repoPaths);
+            for (TrafficReport.Popular referrer : repo.referrers) {
+                int[] sums = referrers.computeIfAbsent(referrer.getName(), k -> new int[2]);
+                sums[0] += referrer.getCount();
+                sums[1] += referrer.getUniques();
+            }
+        }
+        List<TrafficReport.Popular> summedReferrers = new ArrayList<>(referrers.size());
+        referrers.forEach((name, sums) -> summedReferrers.add(new TrafficReport.Popular(name, sums[0], sums[1])));
+
+        Tile root = new Tile(Tile.Layout.Column, Tile.Margin.Empty);
+        Tile topCharts = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        topCharts.append(_charts.makeCountsChart("Views", sumDaily(views), _charts::viewsPerUser), new Tile.Margin(0, 0, 0, 4));
+        topCharts.append(_charts.makeCountsChart("Clones", sumDaily(clones), (u, t) -> ""));
+        root.append(topCharts);
+        if (_days >= 14) { // bottom chart data applies to past 14 days
+            Tile bottomCharts = new Tile(Tile.Layout.Row, new Tile.Margin(1, 0, 1, 0));
+            bottomCharts.append(_charts.makePathsChart("Top views", MAX_URL, TopK.mergeSorted(paths, BY_COUNT, TOP),
+                    item -> removeOrgPath(item.getName())), new Tile.Margin(0, 0, 0, 4));
+            bottomCharts.append(_charts.makePathsChart("Referring sites", MAX_REFERRER_URL,
+                    TopK.select(summedReferrers, BY_COUNT, TOP), item -> item.getName()));
+            root.append(bottomCharts);
+        }
+        return root.render();
+    }
+
+    /**
+     * Sums daily series by day, pairwise over a fork-join split of the repos.
+     */
+    static DailySeries sumDaily(List<DailySeries> series) {
+        return series.isEmpty()
+                ? DailySeries.empty(Traffic.today(), DailySeries.DAYS)
+                : ForkJoinPool.commonPool().invoke(new SumDaily(series, 0, series.size()));
+    }
+
+    private String removeOrgPath(String path) {
+        String orgPath = "/$_org/";
+        return path.startsWith(orgPath) ? path.substring(orgPath.length()) : path;
+    }
+
+    private Map<String, Integer> readStars() throws IOException {
+        Map<String, Integer> stars = new HashMap<>();
+        String saved = _store.getString(starsKey());
+        if (saved != null) {
+            for (String line : saved.split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    try {
+                        stars.put(line.substring(0, tab), Integer.parseInt(line.substring(tab + 1)));
+                    } catch (NumberFormatException e) {
+                        // unknown count, the repo's gain is missed this once
+                    }
+                }
+            }
+        }
+        return stars;
+    }
+
+    private void writeStars(List<Repo> repos) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Repo repo : repos) {
+            sb.append(repo.name).append('\t').append(repo.stars).append('\n');
+        }
+        _store.putString(starsKey(), sb.toString());
+    }
+
+    private String starsKey() {
+        return _org + '/' + STARS_FILE;
+    }
+
+    private GitHubApi.Response get(String url) {
+        try {
+            return _api.get(url, null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void check(GitHubApi.Response response) {
+        if (response.status == 401) {
+            throw new ReportedException("Unauthorized access for token: ${response.token.masked()}", null);
+        }
+        if (!response.isSuccess()) {
+            throw new ReportedException("-org not found: HTTP response code: ${response.status} for URL: ${response.url}", null);
+        }
+    }
+
+    private void println(String... data) {
+        for (String s : data) {
+            _content.append(s);
+            _out.print(s);
+        }
+        _content.append('\n');
+        _out.println();
+    }
+
+    private static final class SumDaily extends RecursiveTask<DailySeries> {
+        private static final int THRESHOLD = 16;
+
+        private final List<DailySeries> _series;
+        private final int _from;
+        private final int _to;
+
+        SumDaily(List<DailySeries> series, int from, int to) {
+            _series = series;
+            _from = from;
+            _to = to;
+        }
+
+        @Override
+        protected DailySeries compute() {
+            if (_to - _from <= THRESHOLD) {
+                DailySeries sum = _series.get(_from);
+                for (int i = _from + 1; i < _to; i++) {
+                    sum = sum.plus(_series.get(i));
+                }
+                return sum;
+            }
+            int mid = (_from + _to) >>> 1;
+            SumDaily left = new SumDaily(_series, _from, mid);
+            left.fork();
+            DailySeries right = new SumDaily(_series, mid, _to).compute();
+            return left.join().plus(right);
+        }
+    }
+
+    private static class Repo {
+        final String name;
+        final int stars;
+        final int forks;
+
+        Repo(String name, int stars, int forks) {
+            this.name = name;
+            this.stars = stars;
+            this.forks = forks;
+        }
+    }
+
+    private static class RepoTraffic {
+        final DailySeries views;
+        final DailySeries clones;
+        final List<TrafficReport.Popular> paths;
+        final List<TrafficReport.Popular> referrers;
+
+        RepoTraffic(DailySeries views, DailySeries clones,
+                    List<TrafficReport.Popular> paths, List<TrafficReport.Popular> referrers) {
+            this.views = views;
+            this.clones = clones;
+            this.paths = paths;
+            this.referrers = referrers;
+        }
+    }
+}
@@ -0,0 +1,893 @@
+package manifold.github.traffic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * {@link StateStore} of one file, {@code -store paged}: a copy-on-write B-tree of 4 KiB pages, read through memory
+ * mappings.
+ * <p/>
+ * Layout:
+ * <ul>
+ * <li>Pages 0 and 1 are header slots, written in turns. A header has the root page, the page count, the count of pages
+ * the tree still uses and a CRC. The valid header with the highest generation is the current one.</li>
+ * <li>Leaf pages hold sorted keys with their values. Values over {@value #MAX_INLINE} bytes are in their own run of
+ * pages, which the leaf points to.</li>
+ * <li>Branch pages hold sorted keys and child pages. {@code keys[i]} is the first key under {@code children[i + 1]}.</li>
+ * </ul>
+ * A change never overwrites a page. It appends copies of the pages it changes, from the leaf up to a new root, forces
+ * them, then writes the header to the older slot and forces that. A crash before the header leaves the prior header
+ * current, so the store is always at its last commit. Readers take no lock, pages a header points to don't change.
+ * <p/>
+ * Writers, in this and other processes, take an exclusive lock on the file. When replaced pages outnumber the used
+ * ones, a writer compacts: it copies the tree to a new file, moves that over the store and marks the old file moved,
+ * so processes that still have it open reopen the store.
+ */
+final class PagedStateStore implements StateStore {
+    static final String FILE = "state.db";
+    static final int PAGE_SIZE = 4096;
+    static final int MAX_KEY = 1024;
+    private static final int MAX_INLINE = 512;
+    private static final long MAGIC = 0x4748_5354_4154_4531L; // GHSTATE1
+    private static final int VERSION = 1;
+    private static final int FLAG_MOVED = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final byte LEAF = 1;
+    private static final byte BRANCH = 2;
+    private static final long FIRST_PAGE = 2;
+    private static final int SEGMENT_PAGES = 1 << 14; // 64 MiB per mapping
+    private static final long MIN_COMPACT_PAGES = 256;
+    private static final int CACHED_NODES = 1024;
+    /** file locks are per process, threads of a process writing the same store take this first */
+    private static final Map<String, Object> WRITERS = new ConcurrentHashMap<>();
+
+    private final File _file;
+    private final Object _writers;
+    private FileChannel _channel;
+    private final List<MappedByteBuffer> _segments;
+    private final Map<Long, Node> _nodes;
+    private Header _header;
+
+    PagedStateStore(File file) throws IOException {
+        _file = file;
+        _segments = new ArrayList<>();
+        _nodes = new LinkedHashMap<Long, Node>(CACHED_NODES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Node> eldest) {
+                return size() > CACHED_NODES;
+            }
+        };
+        //noinspection ResultOfMethodCallIgnored
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        _writers = WRITERS.computeIfAbsent(file.getCanonicalPath(), path -> new Object());
+        open();
+    }
+
+    @Override
+    public synchronized byte[] get(String key) throws IOException {
+        refresh();
+        byte[] k = encode(key);
+        if (_header.root == 0) {
+            return null;
+        }
+        Node node = node(_header.root);
+        while (!node.leaf) {
+            node = node(node.childPages.get(childIndex(node, k)));
+        }
+        int i = search(node.keys, k);
+        // inline values are the cached node's, callers get their own copy
+        return i < 0 ? null : read(node.values.get(i)).clone();
+    }
+
+    @Override
+    public void put(String key, byte[] value) throws IOException {
+        commit(Collections.singletonMap(key, value));
+    }
+
+    /**
+     * Rewrites the whole value, copy-on-write pages can't grow in place. Appending n times costs O(n²), callers that
+     * append often batch their appends.
+     */
+    @Override
+    public synchronized void append(String key, byte[] data) throws IOException {
+        // the lock makes get-then-put atomic across processes too
+        write(tx -> {
+            byte[] value = tx.get(key);
+            if (value == null) {
+                tx.put(key, data);
+            } else {
+                byte[] appended = Arrays.copyOf(value, value.length + data.length);
+                System.arraycopy(data, 0, appended, value.length, data.length);
+                tx.put(key, appended);
+            }
+        });
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        commit(Collections.singletonMap(key, null));
+    }
+
+    @Override
+    public synchronized void commit(Map<String, byte[]> changes) throws IOException {
+        write(tx -> {
+            for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    tx.delete(change.getKey());
+                } else {
+                    tx.put(change.getKey(), change.getValue());
+                }
+            }
+        });
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _segments.clear();
+        _nodes.clear();
+        _channel.close();
+    }
+
+    private void open() throws IOException {
+        _channel = FileChannel.open(_file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        _segments.clear();
+        _nodes.clear();
+        _header = readHeader();
+    }
+
+    /**
+     * Rereads the header for other processes' commits, reopening the store if compaction moved it.
+     */
+    private void refresh() throws IOException {
+        _header = readHeader();
+        if (_header.isMoved()) {
+            _channel.close();
+            open();
+        }
+    }
+
+    private void write(Change change) throws IOException {
+        boolean retry = false;
+        boolean compacted = false;
+        synchronized (_writers) {
+            try (FileLock ignored = _channel.lock()) {
+                _header = readHeader();
+                if (_header.isMoved()) {
+                    retry = true;
+                } else {
+                    Tx tx = new Tx(_header);
+                    change.apply(tx);
+                    if (tx.changed) {
+                        _header = tx.commit();
+                        compacted = _header.pageCount > MIN_COMPACT_PAGES
+                                && _header.pageCount > 2 * _header.livePages
+                                && compact();
+                    }
+                }
+            }
+        }
+        if (retry || compacted) {
+            _channel.close();
+            open();
+        }
+        if (retry) {
+            // another process moved the store, apply to the new file
+            write(change);
+        }
+    }
+
+    //
+    // header
+    //
+
+    private Header readHeader() throws IOException {
+        Header current = Header.EMPTY;
+        for (int slot = 0; slot < 2; slot++) {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 8);
+            long position = (long) slot * PAGE_SIZE;
+            while (buf.hasRemaining() && _channel.read(buf, position + buf.position()) >= 0) {
+            }
+            buf.flip();
+            Header header = Header.parse(buf);
+            if (header != null && header.generation > current.generation) {
+                current = header;
+            }
+        }
+        return current;
+    }
+
+    private void writeHeader(FileChannel channel, Header header) throws IOException {
+        ByteBuffer buf = header.serialize();
+        long position = (header.generation % 2) * PAGE_SIZE;
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+        channel.force(false);
+    }
+
+    //
+    // reading
+    //
+
+    private ByteBuffer page(long pageNo) throws IOException {
+        int segment = (int) (pageNo / SEGMENT_PAGES);
+        int offset = (int) (pageNo % SEGMENT_PAGES) * PAGE_SIZE;
+        MappedByteBuffer mapped = segment < _segments.size() ? _segments.get(segment) : null;
+        if (mapped == null || mapped.capacity() < offset + PAGE_SIZE) {
+            // map the whole segment once the file has it, until then remap as the file grows
+            long start = (long) segment * SEGMENT_PAGES * PAGE_SIZE;
+            long size = Math.min((long) SEGMENT_PAGES * PAGE_SIZE, _channel.size() - start);
+            if (size < offset + PAGE_SIZE) {
+                throw new IOException("Page $pageNo is past the end of $_file");
+            }
+            mapped = _channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            while (_segments.size() <= segment) {
+                _segments.add(null);
+            }
+            _segments.set(segment, mapped);
+        }
+        ByteBuffer page = mapped.duplicate();
+        page.position(offset).limit(offset + PAGE_SIZE);
+        return page.slice();
+    }
+
+    private Node node(long pageNo) throws IOException {
+        Node node = _nodes.get(pageNo);
+        if (node == null) {
+            node = Node.parse(page(pageNo), pageNo);
+            _nodes.put(pageNo, node);
+        }
+        return node;
+    }
+
+    private byte[] read(Value value) throws IOException {
+        if (value.bytes != null) {
+            return value.bytes;
+        }
+        byte[] bytes = new byte[value.length];
+        for (int done = 0, i = 0; done < bytes.length; i++) {
+            int n = Math.min(PAGE_SIZE, bytes.length - done);
+            page(value.blobPage + i).get(bytes, done, n);
+            done += n;
+        }
+        return bytes;
+    }
+
+    private static int childIndex(Node branch, byte[] key) {
+        int i = search(branch.keys, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    private static int search(List<byte[]> keys, byte[] key) {
+        int low = 0;
+        int high = keys.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(keys.get(mid), key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private static byte[] encode(String key) {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        if (k.length == 0 || k.length > MAX_KEY) {
+            throw new IllegalArgumentException("Key must have 1 to $MAX_KEY bytes: $key");
+        }
+        return k;
+    }
+
+    private static int pages(int length) {
+        return (length + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    //
+    // writing
+    //
+
+    private interface Change {
+        void apply(Tx tx) throws IOException;
+    }
+
+    /**
+     * Changes against a header, copying the nodes on the path to each change. {@link #commit} appends the copies.
+     */
+    private final class Tx {
+        private final Header _base;
+        private Node _root;
+        private long _freed;
+        boolean changed;
+
+        Tx(Header base) throws IOException {
+            _base = base;
+            _root = base.root == 0 ? null : node(base.root);
+        }
+
+        byte[] get(String key) throws IOException {
+            byte[] k = encode(key);
+            Node node = _root;
+            if (node == null) {
+                return null;
+            }
+            while (!node.leaf) {
+                node = child(node, childIndex(node, k));
+            }
+            int i = search(node.keys, k);
+            return i < 0 ? null : read(node.values.get(i));
+        }
+
+        void put(String key, byte[] value) throws IOException {
+            Value v = new Value(value.clone());
+            changed = true;
+            if (_root == null) {
+                _root = new Node(true);
+                _root.keys.add(encode(key));
+                _root.values.add(v);
+                return;
+            }
+            Node[] split = insert(_root, encode(key), v);
+            if (split.length == 1) {
+                _root = split[0];
+            } else {
+                Node root = new Node(false);
+                root.addChild(split[0]);
+                root.keys.add(split[1].keys.get(0));
+                root.addChild(split[2]);
+                _root = root;
+            }
+        }
+
+        void delete(String key) throws IOException {
+            byte[] k = encode(key);
+            if (_root == null || get(key) == null) {
+                return;
+            }
+            changed = true;
+            _root = remove(_root, k);
+            while (_root != null && !_root.leaf && _root.keys.isEmpty()) {
+                _root = child(_root, 0);
+            }
+        }
+
+        /**
+         * @return The copied node, or the two halves of a split with the separator node's key in between
+         */
+        private Node[] insert(Node node, byte[] key, Value value) throws IOException {
+            Node copy = copy(node);
+            if (copy.leaf) {
+                int i = search(copy.keys, key);
+                if (i >= 0) {
+                    free(copy.values.get(i));
+                    copy.values.set(i, value);
+                } else {
+                    copy.keys.add(-i - 1, key);
+                    copy.values.add(-i - 1, value);
+                }
+            } else {
+                int i = childIndex(copy, key);
+                Node[] split = insert(child(copy, i), key, value);
+                copy.setChild(i, split[0]);
+                if (split.length > 1) {
+                    copy.keys.add(i, split[1].keys.get(0));
+                    copy.childPages.add(i + 1, -1L);
+                    copy.childNodes.add(i + 1, split[2]);
+                }
+            }
+            return copy.size() <= PAGE_SIZE ? new Node[]{copy} : split(copy);
+        }
+
+        private Node[] split(Node node) {
+            Node left = new Node(node.leaf);
+            Node right = new Node(node.leaf);
+            int half = splitIndex(node);
+            Node separator = new Node(true);
+            if (node.leaf) {
+                left.keys.addAll(node.keys.subList(0, half));
+                left.values.addAll(node.values.subList(0, half));
+                right.keys.addAll(node.keys.subList(half, node.keys.size()));
+                right.values.addAll(node.values.subList(half, node.values.size()));
+                separator.keys.add(right.keys.get(0));
+            } else {
+                // the middle key moves up
+                left.keys.addAll(node.keys.subList(0, half));
+                left.childPages.addAll(node.childPages.subList(0, half + 1));
+                left.childNodes.addAll(node.childNodes.subList(0, half + 1));
+                right.keys.addAll(node.keys.subList(half + 1, node.keys.size()));
+                right.childPages.addAll(node.childPages.subList(half + 1, node.childPages.size()));
+                right.childNodes.addAll(node.childNodes.subList(half + 1, node.childNodes.size()));
+                separator.keys.add(node.keys.get(half));
+            }
+            return new Node[]{left, separator, right};
+        }
+
+        /**
+         * @return The copied node, or null if it is left empty
+         */
+        private Node remove(Node node, byte[] key) throws IOException {
+            Node copy = copy(node);
+            if (copy.leaf) {
+                int i = search(copy.keys, key);
+                free(copy.values.get(i));
+                copy.keys.remove(i);
+                copy.values.remove(i);
+                return copy.keys.isEmpty() ? null : copy;
+            }
+            int i = childIndex(copy, key);
+            Node child = remove(child(copy, i), key);
+            if (child != null) {
+                copy.setChild(i, child);
+                return copy;
+            }
+            // underfull nodes are left to compaction, only empty ones go
+            copy.childPages.remove(i);
+            copy.childNodes.remove(i);
+            if (!copy.keys.isEmpty()) {
+                copy.keys.remove(i == 0 ? 0 : i - 1);
+            }
+            return copy.childPages.isEmpty() ? null : copy;
+        }
+
+        /**
+         * @return Where to split the node by size, keeping both halves within a page
+         */
+        private int splitIndex(Node node) {
+            int total = node.size();
+            int left = node.leaf ? 3 : 11;
+            for (int i = 0; i < node.keys.size(); i++) {
+                int entry = node.entrySize(i);
+                if (left + entry > total / 2) {
+                    int split = left + entry <= PAGE_SIZE ? i + 1 : i;
+                    return Math.max(1, Math.min(split, node.keys.size() - 1));
+                }
+                left += entry;
+            }
+            return node.keys.size() - 1;
+        }
+
+        private Node child(Node branch, int i) throws IOException {
+            Node child = branch.childNodes.get(i);
+            return child != null ? child : node(branch.childPages.get(i));
+        }
+
+        /**
+         * Nodes of this commit are changed in place, committed ones are copied.
+         */
+        private Node copy(Node node) {
+            if (node.page < 0) {
+                return node;
+            }
+            _freed++;
+            return node.copy();
+        }
+
+        private void free(Value value) {
+            if (value.bytes == null) {
+                _freed += pages(value.length);
+            }
+        }
+
+        Header commit() throws IOException {
+            Pages out = new Pages(_channel, Math.max(_base.pageCount, FIRST_PAGE));
+            long root = _root == null ? 0 : out.write(_root);
+            out.flush();
+            _channel.force(false);
+            long written = out.next - Math.max(_base.pageCount, FIRST_PAGE);
+            Header header = new Header(_base.generation + 1, 0, root, out.next,
+                    _base.livePages - _freed + written);
+            writeHeader(_channel, header);
+            for (Node node : out.written) {
+                _nodes.put(node.page, node);
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Appends pages at the end of a store, children before their parents.
+     */
+    private final class Pages {
+        private final FileChannel _out;
+        private final ByteBuffer _buf;
+        private long _bufStart;
+        final List<Node> written;
+        long next;
+
+        Pages(FileChannel out, long next) {
+            _out = out;
+            _buf = ByteBuffer.allocate(64 * PAGE_SIZE);
+            _bufStart = next;
+            this.next = next;
+            written = new ArrayList<>();
+        }
+
+        long write(Node node) throws IOException {
+            if (node.page >= 0) {
+                return node.page;
+            }
+            if (node.leaf) {
+                for (int i = 0; i < node.values.size(); i++) {
+                    Value value = node.values.get(i);
+                    if (value.bytes != null && value.length > MAX_INLINE) {
+                        node.values.set(i, new Value(writeBlob(value.bytes), value.length));
+                    }
+                }
+            } else {
+                for (int i = 0; i < node.childPages.size(); i++) {
+                    if (node.childPages.get(i) < 0) {
+                        node.childPages.set(i, write(node.childNodes.get(i)));
+                    }
+                    node.childNodes.set(i, null);
+                }
+            }
+            node.page = next;
+            ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+            node.serialize(page);
+            page.clear();
+            add(page);
+            written.add(node);
+            return node.page;
+        }
+
+        long writeBlob(byte[] bytes) throws IOException {
+            long first = next;
+            for (int done = 0; done < bytes.length; done += PAGE_SIZE) {
+                ByteBuffer page = ByteBuffer.allocate(PAGE_SIZE);
+                page.put(bytes, done, Math.min(PAGE_SIZE, bytes.length - done));
+                page.clear();
+                add(page);
+            }
+            return first;
+        }
+
+        private void add(ByteBuffer page) throws IOException {
+            if (!_buf.hasRemaining()) {
+                flush();
+            }
+            _buf.put(page);
+            next++;
+        }
+
+        void flush() throws IOException {
+            _buf.flip();
+            long position = _bufStart * PAGE_SIZE;
+            while (_buf.hasRemaining()) {
+                position += _out.write(_buf, position);
+            }
+            _buf.clear();
+            _bufStart = next;
+        }
+    }
+
+    //
+    // compaction
+    //
+
+    /**
+     * Copies the live tree to a new file, packing the leaves, and moves it over the store.
+     *
+     * @return True if the store moved, false if compaction failed and the store is as it was
+     */
+    private boolean compact() throws IOException {
+        File temp = new File(_file.getPath() + ".compact");
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Pages pages = new Pages(out, FIRST_PAGE);
+            // each level as its nodes' pages and first keys, bottom up
+            List<Long> levelPages = new ArrayList<>();
+            List<byte[]> levelKeys = new ArrayList<>();
+            Node leaf = new Node(true);
+            for (Iterator<Object[]> entries = entries(); entries.hasNext(); ) {
+                Object[] entry = entries.next();
+                byte[] key = (byte[]) entry[0];
+                Value value = (Value) entry[1];
+                if (value.bytes == null) {
+                    value = new Value(pages.writeBlob(read(value)), value.length);
+                }
+                leaf.keys.add(key);
+                leaf.values.add(value);
+                if (leaf.size() > PAGE_SIZE) {
+                    leaf.keys.remove(leaf.keys.size() - 1);
+                    leaf.values.remove(leaf.values.size() - 1);
+                    levelKeys.add(leaf.keys.get(0));
+                    levelPages.add(pages.write(leaf));
+                    leaf = new Node(true);
+                    leaf.keys.add(key);
+                    leaf.values.add(value);
+                }
+            }
+            if (!leaf.keys.isEmpty()) {
+                levelKeys.add(leaf.keys.get(0));
+                levelPages.add(pages.write(leaf));
+            }
+            while (levelPages.size() > 1) {
+                List<Long> upPages = new ArrayList<>();
+                List<byte[]> upKeys = new ArrayList<>();
+                Node branch = null;
+                for (int i = 0; i < levelPages.size(); i++) {
+                    if (branch != null) {
+                        branch.keys.add(levelKeys.get(i));
+                        branch.childPages.add(levelPages.get(i));
+                        branch.childNodes.add(null);
+                        if (branch.size() <= PAGE_SIZE) {
+                            continue;
+                        }
+                        branch.keys.remove(branch.keys.size() - 1);
+                        branch.childPages.remove(branch.childPages.size() - 1);
+                        branch.childNodes.remove(branch.childNodes.size() - 1);
+                        upPages.add(pages.write(branch));
+                    }
+                    branch = new Node(false);
+                    branch.childPages.add(levelPages.get(i));
+                    branch.childNodes.add(null);
+                    upKeys.add(levelKeys.get(i));
+                }
+                upPages.add(pages.write(branch));
+                levelPages = upPages;
+                levelKeys = upKeys;
+            }
+            pages.flush();
+            out.force(false);
+            writeHeader(out, new Header(1, 0, levelPages.isEmpty() ? 0 : levelPages.get(0), pages.next,
+                    pages.next - FIRST_PAGE));
+        } catch (IOException e) {
+            // the store is intact, try again on a later commit
+            Files.deleteIfExists(temp.toPath());
+            return false;
+        }
+        Files.move(temp.toPath(), _file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        writeHeader(_channel, new Header(_header.generation + 1, FLAG_MOVED, _header.root, _header.pageCount,
+                _header.livePages));
+        return true;
+    }
+
+    /**
+     * @return The committed entries in key order, as {key, value}
+     */
+    private Iterator<Object[]> entries() throws IOException {
+        List<Object[]> leaves = new ArrayList<>();
+        Deque<Long> stack = new ArrayDeque<>();
+        if (_header.root != 0) {
+            stack.push(_header.root);
+        }
+        // leaves only, values are read as they are copied
+        while (!stack.isEmpty()) {
+            Node node = Node.parse(page(stack.pop()), -1);
+            if (node.leaf) {
+                for (int i = 0; i < node.keys.size(); i++) {
+                    leaves.add(new Object[]{node.keys.get(i), node.values.get(i)});
+                }
+            } else {
+                for (int i = node.childPages.size() - 1; i >= 0; i--) {
+                    stack.push(node.childPages.get(i));
+                }
+            }
+        }
+        return leaves.iterator();
+    }
+
+    //
+    // pages
+    //
+
+    private static final class Header {
+        static final Header EMPTY = new Header(0, 0, 0, FIRST_PAGE, 0);
+
+        final long generation;
+        final int flags;
+        final long root;
+        final long pageCount;
+        final long livePages;
+
+        Header(long generation, int flags, long root, long pageCount, long livePages) {
+            this.generation = generation;
+            this.flags = flags;
+            this.root = root;
+            this.pageCount = pageCount;
+            this.livePages = livePages;
+        }
+
+        boolean isMoved() {
+            return (flags & FLAG_MOVED) != 0;
+        }
+
+        /**
+         * @return The header, or null if the slot is empty or torn
+         */
+        static Header parse(ByteBuffer buf) {
+            if (buf.remaining() < HEADER_SIZE + 8 || buf.getLong(0) != MAGIC) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            byte[] bytes = new byte[HEADER_SIZE];
+            buf.get(bytes);
+            crc.update(bytes);
+            if (buf.getLong() != crc.getValue()) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.wrap(bytes);
+            header.getLong();
+            if (header.getInt() != VERSION) {
+                return null;
+            }
+            int flags = header.getInt();
+            return new Header(header.getLong(), flags, header.getLong(), header.getLong(), header.getLong());
+        }
+
+        ByteBuffer serialize() {
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + 8);
+            buf.putLong(MAGIC).putInt(VERSION).putInt(flags)
+                    .putLong(generation).putLong(root).putLong(pageCount).putLong(livePages);
+            CRC32 crc = new CRC32();
+            crc.update(buf.array(), 0, HEADER_SIZE);
+            buf.putLong(crc.getValue());
+            buf.flip();
+            return buf;
+        }
+    }
+
+    /**
+     * A value, inline bytes or a run of pages.
+     */
+    private static final class Value {
+        final byte[] bytes;
+        final long blobPage;
+        final int length;
+
+        Value(byte[] bytes) {
+            this.bytes = bytes;
+            blobPage = -1;
+            length = bytes.length;
+        }
+
+        Value(long blobPage, int length) {
+            bytes = null;
+            this.blobPage = blobPage;
+            this.length = length;
+        }
+
+        int size() {
+            return length > MAX_INLINE ? 8 : length;
+        }
+    }
+
+    /**
+     * A leaf or branch page. {@code page} is -1 until the node is written. Committed nodes are shared through the
+     * cache and never changed.
+     */
+    private static final class Node {
+        final boolean leaf;
+        long page = -1;
+        final List<byte[]> keys;
+        final List<Value> values;
+        final List<Long> childPages;
+        final List<Node> childNodes;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            keys = new ArrayList<>();
+            values = leaf ? new ArrayList<>() : null;
+            childPages = leaf ? null : new ArrayList<>();
+            childNodes = leaf ? null : new ArrayList<>();
+        }
+
+        Node copy() {
+            Node copy = new Node(leaf);
+            copy.keys.addAll(keys);
+            if (leaf) {
+                copy.values.addAll(values);
+            } else {
+                copy.childPages.addAll(childPages);
+                copy.childNodes.addAll(childNodes);
+            }
+            return copy;
+        }
+
+        void addChild(Node child) {
+            childPages.add(child.page);
+            childNodes.add(child.page < 0 ? child : null);
+        }
+
+        void setChild(int i, Node child) {
+            childPages.set(i, child.page);
+            childNodes.set(i, child.page < 0 ? child : null);
+        }
+
+        int size() {
+            int size = leaf ? 3 : 11;
+            for (int i = 0; i < keys.size(); i++) {
+                size += entrySize(i);
+            }
+            return size;
+        }
+
+        int entrySize(int i) {
+            return 2 + keys.get(i).length + (leaf ? 4 + values.get(i).size() : 8);
+        }
+
+        static Node parse(ByteBuffer page, long pageNo) throws IOException {
+            byte type = page.get();
+            if (type != LEAF && type != BRANCH) {
+                throw new IOException("Not a tree page: $pageNo");
+            }
+            Node node = new Node(type == LEAF);
+            node.page = pageNo;
+            int count = page.getShort() & 0xffff;
+            if (!node.leaf) {
+                node.childPages.add(page.getLong());
+                node.childNodes.add(null);
+            }
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[page.getShort() & 0xffff];
+                page.get(key);
+                node.keys.add(key);
+                if (node.leaf) {
+                    int length = page.getInt();
+                    if (length > MAX_INLINE) {
+                        node.values.add(new Value(page.getLong(), length));
+                    } else {
+                        byte[] bytes = new byte[length];
+                        page.get(bytes);
+                        node.values.add(new Value(bytes));
+                    }
+                } else {
+                    node.childPages.add(page.getLong());
+                    node.childNodes.add(null);
+                }
+            }
+            return node;
+        }
+
+        void serialize(ByteBuffer page) {
+            page.put(leaf ? LEAF : BRANCH);
+            page.putShort((short) keys.size());
+            if (!leaf) {
+                page.putLong(childPages.get(0));
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                byte[] key = keys.get(i);
+                page.putShort((short) key.length);
+                page.put(key);
+                if (leaf) {
+                    Value value = values.get(i);
+                    page.putInt(value.length);
+                    if (value.length > MAX_INLINE) {
+                        page.putLong(value.blobPage);
+                    } else {
+                        page.put(value.bytes);
+                    }
+                } else {
+                    page.putLong(childPages.get(i + 1));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package manifold.github.traffic;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Persistent history of the popular paths and referrers reported by GitHub. GitHub only exposes the current top-10
+ * lists, so each run's snapshot is kept here to answer questions like "when did this page start trending".
+ * <p/>
+ * Path and referrer strings are interned to integer ids in a dictionary. Each day's snapshot is a small binary record
+ * of (id, count, uniques) under its own key, linked to the snapshot before it, and a pointer key names the latest
+ * day. A run writes its own day, the pointer and any new names in one commit, so the cost of a save does not grow with
+ * the history. Queries walk back from the latest snapshot and read only the days they reach.
+ */
+public class PopularHistory {
+    private static final String DICTIONARY_FILE = "popular_dictionary.txt";
+    private static final String LATEST_FILE = "popular_latest.txt";
+    private static final String SNAPSHOTS_DIR = "popular/";
+    private static final int NONE = -1;
+
+    private final StateStore _store;
+    private final String _user;
+    private final String _repo;
+    private final Map<String, Integer> _ids;
+    private final List<String> _names;
+    private final List<Kind> _kinds;
+    // read snapshots by epoch day
+    private final Map<Integer, Snapshot> _snapshots;
+    // recorded and not saved yet, by epoch day
+    private final SortedMap<Integer, Snapshot> _pending;
+    private int _savedNames;
+    private int _latest = NONE;
+
+    private PopularHistory(StateStore store, String user, String repo) {
+        _store = store;
+        _user = user;
+        _repo = repo;
+        _ids = new HashMap<>();
+        _names = new ArrayList<>();
+        _kinds = new ArrayList<>();
+        _snapshots = new HashMap<>();
+        _pending = new TreeMap<>();
+    }
+
+    public static PopularHistory load(StateStore store, String user, String repo) throws IOException {
+        PopularHistory history = new PopularHistory(store, user, repo);
+        history.readDictionary();
+        String latest = store.getString(history.stateKey(LATEST_FILE));
+        if (latest != null) {
+            history._latest = Integer.parseInt(latest.trim());
+        }
+        return history;
+    }
+
+    /**
+     * Records today's count and uniques for a path or referrer. Recording the same name twice on the same day keeps
+     * the latest values.
+     *
+     * @throws IllegalArgumentException If {@code day} is before the latest saved snapshot, snapshots are kept in day
+     *                                  order
+     */
+    public void record(Kind kind, String name, LocalDate day, int count, int uniques) {
+        int epochDay = (int) day.toEpochDay();
+        if (epochDay < _latest) {
+            throw new IllegalArgumentException(
+                "$day is before the latest saved snapshot, ${LocalDate.ofEpochDay(_latest)}");
+        }
+        int id = intern(kind, name);
+        _pending.computeIfAbsent(epochDay, k -> new Snapshot(NONE)).put(id, count, uniques);
+    }
+
+    /**
+     * Saves the snapshots recorded since the last load or save, with the new names and the latest day pointer in one
+     * commit, so a snapshot is never saved without its names.
+     */
+    public void save() throws IOException {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        Map<String, byte[]> changes = new HashMap<>();
+        if (_savedNames < _names.size()) {
+            StringBuilder names = new StringBuilder();
+            for (int id = _savedNames; id < _names.size(); id++) {
+                names.append(_kinds.get(id).getCode()).append('\t').append(_names.get(id)).append('\n');
+            }
+            changes.put(dictionaryKey(), appended(dictionaryKey(), names.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        Map<Integer, Snapshot> saved = new HashMap<>();
+        int prev = _latest;
+        for (int day : _pending.keySet()) {
+            Snapshot snapshot = snapshot(day);
+            if (day != _latest) {
+                snapshot = snapshot.linkedTo(prev);
+            }
+            changes.put(snapshotKey(day), snapshot.encode());
+            saved.put(day, snapshot);
+            prev = day;
+        }
+        changes.put(stateKey(LATEST_FILE), String.valueOf(prev).getBytes(StandardCharsets.UTF_8));
+        _store.commit(changes);
+        _snapshots.putAll(saved);
+        _latest = prev;
+        _savedNames = _names.size();
+        _pending.clear();
+    }
+
+    private byte[] appended(String key, byte[] data) throws IOException {
+        byte[] value = _store.get(key);
+        if (value == null) {
+            return data;
+        }
+        byte[] joined = Arrays.copyOf(value, value.length + data.length);
+        System.arraycopy(data, 0, joined, value.length, data.length);
+        return joined;
+    }
+
+    /**
+     * @return The daily postings for {@code name} within {@code from..to} inclusive, oldest first.
+     */
+    public List<Posting> trend(Kind kind, String name, LocalDate from, LocalDate to) throws IOException {
+        Integer id = _ids.get(key(kind, name));
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        int first = (int) from.toEpochDay();
+        int last = (int) to.toEpochDay();
+        List<Posting> trend = new ArrayList<>();
+        for (int day = newestDay(); day != NONE && day >= first; day = previousDay(day)) {
+            int[] entry = day <= last ? snapshot(day).get(id) : null;
+            if (entry != null) {
+                trend.add(new Posting(LocalDate.ofEpochDay(day), entry[0], entry[1]));
+            }
+        }
+        Collections.reverse(trend);
+        return trend;
+    }
+
+    /**
+     * Compares the most recent snapshot of {@code kind} with the latest snapshot at least {@code days} earlier. A name
+     * is in a snapshot if it has a posting on the snapshot's day.
+     *
+     * @return Changes in count, largest risers first and largest fallers last. Names new to the top-10 rise from zero,
+     * names that dropped out fall to zero. Names in neither snapshot are left out.
+     */
+    public List<Change> changes(Kind kind, int days) throws IOException {
+        int latest = NONE;
+        int baseline = NONE;
+        for (int day = newestDay(); day != NONE; day = previousDay(day)) {
+            if (latest != NONE && day > latest - days) {
+                continue;
+            }
+            if (has(snapshot(day), kind)) {
+                if (latest == NONE) {
+                    latest = day;
+                } else {
+                    baseline = day;
+                    break;
+                }
+            }
+        }
+        if (baseline == NONE) {
+            // nothing to compare with yet
+            return Collections.emptyList();
+        }
+        Snapshot now = snapshot(latest);
+        Snapshot before = snapshot(baseline);
+        Set<Integer> ids = new LinkedHashSet<>(now.ids());
+        ids.addAll(before.ids());
+        List<Change> changes = new ArrayList<>();
+        for (int id : ids) {
+            if (_kinds.get(id) != kind) {
+                continue;
+            }
+            int count = now.count(id);
+            int delta = count - before.count(id);
+            if (delta != 0) {
+                changes.add(new Change(_names.get(id), count, delta));
+            }
+        }
+        changes.sort(Comparator.comparingInt((Change c) -> c.delta).reversed());
+        return changes;
+    }
+
+    private boolean has(Snapshot snapshot, Kind kind) {
+        for (int id : snapshot.ids()) {
+            if (_kinds.get(id) == kind) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int newestDay() {
+        return _pending.isEmpty() ? _latest : Math.max(_latest, _pending.lastKey());
+    }
+
+    /**
+     * @return The day of the snapshot before {@code day}'s, or {@link #NONE}
+     */
+    private int previousDay(int day) throws IOException {
+        if (day > _latest) {
+            SortedMap<Integer, Snapshot> earlier = _pending.headMap(day);
+            return earlier.isEmpty() || earlier.lastKey() < _latest ? _latest : earlier.lastKey();
+        }
+        Snapshot saved = savedSnapshot(day);
+        return saved == null ? NONE : saved.prev;
+    }
+
+    /**
+     * @return The saved snapshot of {@code day} with what was recorded for it since
+     */
+    private Snapshot snapshot(int day) throws IOException {
+        Snapshot saved = day <= _latest ? savedSnapshot(day) : null;
+        Snapshot pending = _pending.get(day);
+        if (saved == null) {
+            return pending == null ? new Snapshot(NONE) : pending;
+        }
+        return pending == null ? saved : saved.with(pending);
+    }
+
+    private Snapshot savedSnapshot(int day) throws IOException {
+        Snapshot snapshot = _snapshots.get(day);
+        if (snapshot == null) {
+            byte[] value = _store.get(snapshotKey(day));
+            if (value == null) {
+                return null;
+            }
+            snapshot = Snapshot.decode(value, _names.size());
+            _snapshots.put(day, snapshot);
+        }
+        return snapshot;
+    }
+
+    private int intern(Kind kind, String name) {
+        name = name.replace('\n', ' ').replace('\r', ' ');
+        String key = key(kind, name);
+        Integer id = _ids.get(key);
+        if (id == null) {
+            id = _names.size();
+            _ids.put(key, id);
+            _names.add(name);
+            _kinds.add(kind);
+        }
+        return id;
+    }
+
+    private static String key(Kind kind, String name) {
+        return kind.getCode() + name;
+    }
+
+    private String stateKey(String name) {
+        return StateStore.key(_user, _repo, name);
+    }
+
+    private String dictionaryKey() {
+        return stateKey(DICTIONARY_FILE);
+    }
+
+    private String snapshotKey(int day) {
+        return stateKey(SNAPSHOTS_DIR + LocalDate.ofEpochDay(day) + ".dat");
+    }
+
+    private void readDictionary() throws IOException {
+        String dictionary = _store.getString(dictionaryKey());
+        if (dictionary == null) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(dictionary))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    throw new IOException("Corrupt dictionary entry in ${dictionaryKey()}: $line");
+                }
+                intern(Kind.byCode(line.charAt(0)), line.substring(tab + 1));
+            }
+        }
+        _savedNames = _names.size();
+    }
+
+    public enum Kind {
+        Path('P'),
+        Referrer('R');
+
+        private final char _code;
+
+        Kind(char code) {
+            _code = code;
+        }
+
+        char getCode() {
+            return _code;
+        }
+
+        static Kind byCode(char code) {
+            for (Kind kind : values()) {
+                if (kind._code == code) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Unknown kind: $code");
+        }
+    }
+
+    public static class Posting {
+        public final LocalDate day;
+        public final int count;
+        public final int uniques;
+
+        Posting(LocalDate day, int count, int uniques) {
+            this.day = day;
+            this.count = count;
+            this.uniques = uniques;
+        }
+    }
+
+    public static class Change {
+        public final String name;
+        public final int count;
+        public final int delta;
+
+        Change(String name, int count, int delta) {
+            this.name = name;
+            this.count = count;
+            this.delta = delta;
+        }
+    }
+
+    /**
+     * One day's (count, uniques) by id, and the day of the snapshot before it. Saved as that day followed by 12 byte
+     * records.
+     */
+    private static class Snapshot {
+        final int prev;
+        private final Map<Integer, int[]> _entries;
+
+        Snapshot(int prev) {
+            this.prev = prev;
+            _entries = new LinkedHashMap<>();
+        }
+
+        void put(int id, int count, int uniques) {
+            _entries.put(id, new int[]{count, uniques});
+        }
+
+        int[] get(int id) {
+            return _entries.get(id);
+        }
+
+        /**
+         * @return The count, 0 if not in this snapshot
+         */
+        int count(int id) {
+            int[] entry = _entries.get(id);
+            return entry == null ? 0 : entry[0];
+        }
+
+        Set<Integer> ids() {
+            return _entries.keySet();
+        }
+
+        Snapshot linkedTo(int prev) {
+            Snapshot linked = new Snapshot(prev);
+            linked._entries.putAll(_entries);
+            return linked;
+        }
+
+        /**
+         * @return This snapshot with the entries of {@code later} recorded over it
+         */
+        Snapshot with(Snapshot later) {
+            Snapshot merged = linkedTo(prev);
+            merged._entries.putAll(later._entries);
+            return merged;
+        }
+
+        byte[] encode() {
+            ByteBuffer out = ByteBuffer.allocate(4 + _entries.size() * 12);
+            out.putInt(prev);
+            for (Map.Entry<Integer, int[]> entry : _entries.entrySet()) {
+                out.putInt(entry.getKey()).putInt(entry.getValue()[0]).putInt(entry.getValue()[1]);
+            }
+            return out.array();
+        }
+
+        /**
+         * @param names Ids below this are in the dictionary, others are ignored
+         */
+        static Snapshot decode(byte[] value, int names) {
+            ByteBuffer in = ByteBuffer.wrap(value);
+            Snapshot snapshot = new Snapshot(in.getInt());
+            while (in.remaining() >= 12) {
+                int id = in.getInt();
+                int count = in.getInt();
+                int uniques = in.getInt();
+                if (id >= 0 && id < names) {
+                    snapshot.put(id, count, uniques);
+                }
+            }
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persisted LRU cache of stargazer profiles shared by all repos. Entries expire after a TTL and the least recently used
+ * entries are evicted once the cache exceeds its maximum size. The saved cache lists entries least recently used
+ * first, so loading it restores the LRU order.
+ * <p/>
+ * A shard worker loads the cache once and shares it between its reports, see {@link ProfileFetcher}. Workers running
+ * at the same time each save it when done. Saving merges with the saved cache, so one worker's profiles don't
+ * overwrite another's: the newer fetch of a login is kept, and this cache's entries count as the most recently used.
+ * <p/>
+ * Not thread-safe, {@link ProfileFetcher} guards access.
+ */
+public class ProfileCache {
+    static final String CACHE_FILE = "profile_cache.txt";
+    static final Duration DEFAULT_TTL = Duration.ofDays(7);
+    static final int DEFAULT_MAX_ENTRIES = 10_000;
+    private static final Object SAVE_LOCK = new Object();
+
+    private final StateStore _store;
+    private final Duration _ttl;
+    private final int _maxEntries;
+    private final LinkedHashMap<String, Profile> _entries;
+    private boolean _dirty;
+
+    public ProfileCache(StateStore store) {
+        this(store, DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    public ProfileCache(StateStore store, Duration ttl, int maxEntries) {
+        _store = store;
+        _ttl = ttl;
+        _maxEntries = maxEntries;
+        _entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public ProfileCache load() throws IOException {
+        _entries.putAll(readSaved());
+        evict();
+        return this;
+    }
+
+    /**
+     * @return The cached profile for {@code login}, or null if absent or expired.
+     */
+    public Profile get(String login) {
+        Profile profile = _entries.get(login);
+        if (profile != null && isExpired(profile)) {
+            _entries.remove(login);
+            _dirty = true;
+            return null;
+        }
+        if (profile != null) {
+            // access order changed
+            _dirty = true;
+        }
+        return profile;
+    }
+
+    public void put(Profile profile) {
+        _entries.put(profile.login, profile);
+        _dirty = true;
+        evict();
+    }
+
+    public int size() {
+        return _entries.size();
+    }
+
+    public void save() throws IOException {
+        if (!_dirty) {
+            return;
+        }
+        // caches in this process take turns, each merges with what the one before saved
+        synchronized (SAVE_LOCK) {
+            LinkedHashMap<String, Profile> merged = readSaved();
+            for (Profile profile : _entries.values()) {
+                Profile saved = merged.remove(profile.login);
+                merged.put(profile.login, saved != null && saved.fetched.isAfter(profile.fetched) ? saved : profile);
+            }
+            int skip = merged.size() - _maxEntries;
+            StringBuilder sb = new StringBuilder();
+            for (Profile profile : merged.values()) {
+                if (skip-- <= 0) {
+                    sb.append(profile.format()).append('\n');
+                }
+            }
+            _store.putString(CACHE_FILE, sb.toString());
+        }
+        _dirty = false;
+    }
+
+    /**
+     * @return The saved entries not expired, least recently used first
+     */
+    private LinkedHashMap<String, Profile> readSaved() throws IOException {
+        LinkedHashMap<String, Profile> entries = new LinkedHashMap<>();
+        String saved = _store.getString(CACHE_FILE);
+        if (saved == null) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(saved))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Profile profile = Profile.parse(line);
+                if (profile != null && !isExpired(profile)) {
+                    // a later line is more recently used
+                    entries.remove(profile.login);
+                    entries.put(profile.login, profile);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private boolean isExpired(Profile profile) {
+        return profile.fetched.plus(_ttl).isBefore(Instant.now());
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, Profile>> iterator = _entries.entrySet().iterator();
+        while (_entries.size() > _maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            _dirty = true;
+        }
+    }
+
+    public static class Profile {
+        public final String login;
+        public final Instant fetched;
+        public final int followers;
+        public final int publicRepos;
+        public final String company;
+        public final String name;
+
+        public Profile(String login, Instant fetched, int followers, int publicRepos, String company, String name) {
+            this.login = login;
+            this.fetched = fetched;
+            this.followers = followers;
+            this.publicRepos = publicRepos;
+            this.company = clean(company);
+            this.name = clean(name);
+        }
+
+        private static String clean(String value) {
+            return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ').trim();
+        }
+
+        String format() {
+            return login + '\t' + fetched.getEpochSecond() + '\t' + followers + '\t' + publicRepos + '\t' +
+                    company + '\t' + name;
+        }
+
+        static Profile parse(String line) {
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 6) {
+                return null;
+            }
+            try {
+                return new Profile(fields[0], Instant.ofEpochSecond(Long.parseLong(fields[1])),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), fields[4], fields[5]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
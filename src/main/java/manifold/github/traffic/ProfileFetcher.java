@@ -0,0 +1,117 @@
+package manifold.github.traffic;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Enriches stargazer logins with public profile data. Profiles are served from the shared {@link ProfileCache} when
+ * possible; misses are fetched with at most {@link #MAX_CONCURRENCY} requests in flight, and concurrent lookups of the
+ * same login share one request.
+ */
+public class ProfileFetcher implements AutoCloseable {
+    static final int MAX_CONCURRENCY = 4;
+
+    private final ProfileCache _cache;
+    private final Function<String, ProfileCache.Profile> _fetch;
+    private final ExecutorService _executor;
+    private final Map<String, CompletableFuture<ProfileCache.Profile>> _inFlight;
+
+    /**
+     * @param fetch Fetches the profile for a login, returns null if the user no longer exists. Throws if the profile
+     *              could not be fetched, the login is then left out and not cached.
+     */
+    public ProfileFetcher(ProfileCache cache, Function<String, ProfileCache.Profile> fetch) {
+        _cache = cache;
+        _fetch = fetch;
+        _executor = Executors.newFixedThreadPool(MAX_CONCURRENCY, r -> {
+            Thread thread = new Thread(r, "profile-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _inFlight = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return Profiles by login for the given logins, logins that could not be fetched are absent.
+     * @throws Deadline.ExceededException If a fetch was cut short by the deadline
+     */
+    public Map<String, ProfileCache.Profile> fetchAll(Collection<String> logins) throws InterruptedException {
+        Map<String, ProfileCache.Profile> result = new LinkedHashMap<>();
+        Map<String, CompletableFuture<ProfileCache.Profile>> pending = new LinkedHashMap<>();
+        for (String login : logins) {
+            ProfileCache.Profile cached;
+            synchronized (_cache) {
+                cached = _cache.get(login);
+            }
+            if (cached != null) {
+                result.put(login, cached);
+                continue;
+            }
+            // registered before its fetch starts, so the fetch can't end and unregister it first
+            CompletableFuture<ProfileCache.Profile> future = new CompletableFuture<>();
+            CompletableFuture<ProfileCache.Profile> inFlight = _inFlight.putIfAbsent(login, future);
+            if (inFlight == null) {
+                submit(login, future);
+                inFlight = future;
+            }
+            pending.put(login, inFlight);
+        }
+        for (Map.Entry<String, CompletableFuture<ProfileCache.Profile>> entry : pending.entrySet()) {
+            try {
+                ProfileCache.Profile profile = entry.getValue().get();
+                if (profile != null) {
+                    result.put(entry.getKey(), profile);
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Deadline.ExceededException) {
+                    throw (Deadline.ExceededException) e.getCause();
+                }
+                // enrichment is best effort, show the bare login and fetch it again next time
+            }
+        }
+        return result;
+    }
+
+    private void submit(String login, CompletableFuture<ProfileCache.Profile> future) {
+        try {
+            _executor.execute(() -> {
+                ProfileCache.Profile profile;
+                try {
+                    profile = _fetch.apply(login);
+                    if (profile != null) {
+                        synchronized (_cache) {
+                            _cache.put(profile);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    _inFlight.remove(login, future);
+                    future.completeExceptionally(e);
+                    return;
+                }
+                // unregistered before it completes, so a lookup after this one ends is not handed its result
+                _inFlight.remove(login, future);
+                future.complete(profile);
+            });
+        } catch (RejectedExecutionException e) {
+            // closed
+            _inFlight.remove(login, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    static ProfileCache.Profile toProfile(github.api.UserProfile user) {
+        return new ProfileCache.Profile(user.getLogin(), Instant.now(), user.getFollowers(), user.getPublic_repos(),
+                user.getCompany(), user.getName());
+    }
+
+    @Override
+    public void close() throws IOException {
+        _executor.shutdownNow();
+        synchronized (_cache) {
+            _cache.save();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package manifold.github.traffic;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import static manifold.github.traffic.AnsiColor.*;
+
+/**
+ * Timing and allocation accounting for GitHub requests and report stages, enabled with {@code -profile}. Requests and
+ * stages are also emitted as JFR events whenever a flight recording is running.
+ * <p/>
+ * When profiling is off and no recording is running a stage is a shared no-op and a request costs two volatile
+ * reads, so the instrumentation stays in production builds. Allocation is measured per thread, so a stage only
+ * counts what its own thread allocates. On JVMs that can't measure it, allocation is reported as n/a.
+ * <p/>
+ * The stats are kept per process. A process makes one report at a time, e.g. a shard worker going through its repos,
+ * so each report {@link #reset resets} them when it starts and its profile covers only its own stages and requests.
+ */
+public final class Profiler {
+    private static final Stage NO_OP = () -> {};
+    private static final com.sun.management.ThreadMXBean THREADS = threadMXBean();
+
+    private static volatile boolean _enabled;
+    private static final Map<String, Stats> _stages = new ConcurrentHashMap<>();
+    private static final Map<String, Stats> _requests = new ConcurrentHashMap<>();
+    private static final Stats _connect = new Stats();
+    private static final Stats _wait = new Stats();
+    private static final Stats _read = new Stats();
+
+    private Profiler() {
+    }
+
+    public static void enable() {
+        _enabled = true;
+    }
+
+    public static boolean isEnabled() {
+        return _enabled;
+    }
+
+    /**
+     * Drops the stats recorded so far, e.g. those of the previous report.
+     */
+    public static void reset() {
+        _stages.clear();
+        _requests.clear();
+        _connect.reset();
+        _wait.reset();
+        _read.reset();
+    }
+
+    /**
+     * Times a report stage until the returned stage is closed:
+     * <pre>
+     * try (Profiler.Stage ignored = Profiler.stage("views")) {
+     *     ...
+     * }
+     * </pre>
+     */
+    public static Stage stage(String name) {
+        if (!_enabled && !JfrEvents.isRecording()) {
+            return NO_OP;
+        }
+        long start = System.nanoTime();
+        long allocated = allocatedBytes();
+        return () -> {
+            long nanos = System.nanoTime() - start;
+            // -1 if not supported, n/a in the report
+            long bytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+            if (_enabled) {
+                _stages.computeIfAbsent(name, k -> new Stats()).add(nanos, bytes, 0);
+            }
+            JfrEvents.stage(name, nanos, bytes);
+        };
+    }
+
+    /**
+     * Records a completed request, including retries.
+     *
+     * @param status HTTP status, -1 if the request failed without a response
+     */
+    static void request(String url, int status, long bytes, long nanos, int retries) {
+        if (!_enabled && !JfrEvents.isRecording()) {
+            return;
+        }
+        String template = template(url);
+        if (_enabled) {
+            _requests.computeIfAbsent(template, k -> new Stats()).add(nanos, bytes, retries);
+        }
+        JfrEvents.request(template, status, bytes, nanos, retries);
+    }
+
+    /**
+     * Records the phases of one HTTP exchange: connect (DNS, TCP and TLS for a new connection), wait for the first
+     * response byte, and reading the body.
+     */
+    static void http(long connectNanos, long waitNanos, long readNanos) {
+        if (_enabled) {
+            _connect.add(connectNanos, 0, 0);
+            _wait.add(waitNanos, 0, 0);
+            _read.add(readNanos, 0, 0);
+        }
+    }
+
+    /**
+     * @return The url without scheme, host or query, with owner, repo and user names replaced by placeholders
+     */
+    static String template(String url) {
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : url.indexOf('/', start + 3);
+        if (start < 0) {
+            return "/";
+        }
+        int query = url.indexOf('?', start);
+        String[] segments = url.substring(start + 1, query < 0 ? url.length() : query).split("/");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (i == 1 && segments[0].equals("repos")) {
+                segment = "{owner}";
+            } else if (i == 2 && segments[0].equals("repos")) {
+                segment = "{repo}";
+            } else if (i == 1 && (segments[0].equals("users") || segments[0].equals("orgs"))) {
+                segment = "{user}";
+            } else if (!segment.isEmpty() && segment.chars().allMatch(Character::isDigit)) {
+                segment = "{id}";
+            }
+            sb.append('/').append(segment);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return A compact timing and allocation breakdown of the stages and requests recorded so far
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Profile$DKGREY wall time & allocation per thread$RESET\n");
+        sb.append(String.format("$DKGREY%-36s %6s %10s %10s %10s$RESET\n", "Stage", "calls", "total ms", "max ms", "alloc"));
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(_stages).entrySet()) {
+            Stats stats = entry.getValue();
+            sb.append(String.format("%-36s %6d %10.1f %10.1f %10s\n", entry.getKey(), stats.count.sum(),
+                    millis(stats.nanos.sum()), millis(stats.maxNanos), bytes(stats.bytes.sum())));
+        }
+        sb.append('\n');
+        sb.append(String.format("$DKGREY%-36s %6s %10s %10s %10s %7s$RESET\n", "Request", "calls", "total ms", "max ms", "bytes", "retries"));
+        for (Map.Entry<String, Stats> entry : new TreeMap<>(_requests).entrySet()) {
+            Stats stats = entry.getValue();
+            sb.append(String.format("%-36s %6d %10.1f %10.1f %10s %7d\n", clip(entry.getKey()), stats.count.sum(),
+                    millis(stats.nanos.sum()), millis(stats.maxNanos), bytes(stats.bytes.sum()), stats.retries.sum()));
+        }
+        if (_connect.count.sum() > 0) {
+            sb.append('\n');
+            sb.append(String.format("${DKGREY}HTTP:$RESET connect %.1f ms, server wait %.1f ms, read %.1f ms over %d exchanges\n",
+                    millis(_connect.nanos.sum()), millis(_wait.nanos.sum()), millis(_read.nanos.sum()), _connect.count.sum()));
+        }
+        return sb.toString();
+    }
+
+    private static String clip(String template) {
+        return template.length() <= 36 ? template : "…" + template.substring(template.length() - 35);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String bytes(long bytes) {
+        if (bytes < 0) {
+            return "n/a";
+        }
+        if (bytes < 1024) {
+            return bytes + "B";
+        }
+        return bytes < 1024 * 1024
+                ? String.format("%.1fKB", bytes / 1024.0)
+                : String.format("%.1fMB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A timed section, close it to record it.
+     */
+    public interface Stage extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Stats {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        volatile long maxNanos;
+
+        void add(long nanos, long bytes, int retries) {
+            this.count.increment();
+            this.nanos.add(nanos);
+            this.bytes.add(bytes);
+            this.retries.add(retries);
+            if (nanos > maxNanos) {
+                synchronized (this) {
+                    maxNanos = Math.max(maxNanos, nanos);
+                }
+            }
+        }
+
+        synchronized void reset() {
+            count.reset();
+            nanos.reset();
+            bytes.reset();
+            retries.reset();
+            maxNanos = 0;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Tracks the download counts of a repo's release assets between runs in {@code releases.txt}: for each page of the
+ * release list, a {@code #page} line with the page's ETag, then a line per asset on the page with the release tag,
+ * the asset id and its download count.
+ * <p/>
+ * Every page is revalidated with its ETag, so a page with no new downloads costs a {@code 304 Not Modified}, which
+ * GitHub does not count against the rate limit, and its counts are taken from the snapshot. Releases are listed
+ * newest first, the first page tells how many pages there are and the rest are fetched concurrently.
+ */
+final class ReleaseTracker {
+    static final String FILE = "releases.txt";
+    static final int PAGE_SIZE = 100; // max
+    private static final int MAX_CONCURRENCY = 8;
+    private static final String PAGE = "#page ";
+
+    private final StateStore _store;
+    private final String _key;
+
+    ReleaseTracker(StateStore store, String user, String repo) {
+        _store = store;
+        _key = StateStore.key(user, repo, FILE);
+    }
+
+    /**
+     * Fetches the current download counts and records them.
+     *
+     * @return Downloads per release, newest first, and on runs after the first the downloads since the last run
+     */
+    Downloads update(Pager pager) throws IOException, InterruptedException {
+        SortedMap<Integer, Page> prior = read();
+        SortedMap<Integer, Page> now = fetch(pager, prior == null ? new TreeMap<>() : prior);
+        write(now);
+        return diff(prior, now);
+    }
+
+    private static SortedMap<Integer, Page> fetch(Pager pager, SortedMap<Integer, Page> prior) throws InterruptedException {
+        SortedMap<Integer, Page> now = new TreeMap<>();
+        Page first = revalidate(pager, 1, prior);
+        now.put(1, first);
+        // an unchanged first page means no new releases, only deleted ones could leave fewer pages than before
+        int lastPage = first.lastPage > 0 ? first.lastPage : first == prior.get(1) ? prior.lastKey() : 1;
+        if (lastPage == 1) {
+            return now;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_CONCURRENCY, lastPage - 1), r -> {
+            Thread thread = new Thread(r, "release-pages");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<Integer, Future<Page>> pages = new LinkedHashMap<>();
+            for (int page = 2; page <= lastPage; page++) {
+                int p = page;
+                pages.put(page, executor.submit(() -> revalidate(pager, p, prior)));
+            }
+            for (Map.Entry<Integer, Future<Page>> entry : pages.entrySet()) {
+                try {
+                    now.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return now;
+    }
+
+    private static Page revalidate(Pager pager, int page, Map<Integer, Page> prior) {
+        Page known = prior.get(page);
+        Page fetched = pager.page(page, known == null ? null : known.etag);
+        return fetched == null ? known : fetched;
+    }
+
+    private static Downloads diff(SortedMap<Integer, Page> prior, SortedMap<Integer, Page> now) {
+        Map<Long, Integer> before = new HashMap<>();
+        if (prior != null) {
+            for (Page page : prior.values()) {
+                for (Asset asset : page.assets) {
+                    before.put(asset.id, asset.downloads);
+                }
+            }
+        }
+        Map<String, Release> releases = new LinkedHashMap<>();
+        for (Page page : now.values()) {
+            for (Asset asset : page.assets) {
+                Release release = releases.computeIfAbsent(asset.release, Release::new);
+                release.downloads += asset.downloads;
+                // assets new since the last run, e.g. of a new release, were downloaded since
+                release.gained += asset.downloads - before.getOrDefault(asset.id, 0);
+            }
+        }
+        return new Downloads(new ArrayList<>(releases.values()), prior != null);
+    }
+
+    private SortedMap<Integer, Page> read() throws IOException {
+        String text = _store.getString(_key);
+        if (text == null) {
+            return null;
+        }
+        SortedMap<Integer, Page> pages = new TreeMap<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            Page page = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    if (line.startsWith(PAGE)) {
+                        int space = line.indexOf(' ', PAGE.length());
+                        int number = Integer.parseInt(space < 0 ? line.substring(PAGE.length()) : line.substring(PAGE.length(), space));
+                        String etag = space < 0 ? null : line.substring(space + 1);
+                        page = new Page(etag, -1, new ArrayList<>());
+                        pages.put(number, page);
+                    } else if (page != null && !line.isEmpty()) {
+                        String[] fields = line.split("\t");
+                        page.assets.add(new Asset(fields[0], Long.parseLong(fields[1]), Integer.parseInt(fields[2])));
+                    }
+                } catch (RuntimeException e) {
+                    // a damaged line, its downloads count as new once
+                }
+            }
+        }
+        return pages.isEmpty() ? null : pages;
+    }
+
+    private void write(SortedMap<Integer, Page> pages) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Page> entry : pages.entrySet()) {
+            Page page = entry.getValue();
+            sb.append(PAGE).append(entry.getKey());
+            if (page.etag != null) {
+                sb.append(' ').append(page.etag);
+            }
+            sb.append('\n');
+            for (Asset asset : page.assets) {
+                sb.append(asset.release).append('\t').append(asset.id).append('\t').append(asset.downloads).append('\n');
+            }
+        }
+        _store.putString(_key, sb.toString());
+    }
+
+    interface Pager {
+        /**
+         * @param etag The page's ETag from the last run, null if unknown
+         * @return The page, or null if it still has {@code etag}
+         */
+        Page page(int page, String etag);
+    }
+
+    static class Page {
+        final String etag;
+        final int lastPage;
+        final List<Asset> assets;
+
+        /**
+         * @param etag The response's ETag, null if none
+         * @param lastPage Number of the last page per the response's Link header, -1 if not known
+         * @param assets The assets of the releases on the page, newest release first
+         */
+        Page(String etag, int lastPage, List<Asset> assets) {
+            this.etag = etag;
+            this.lastPage = lastPage;
+            this.assets = assets;
+        }
+    }
+
+    static class Asset {
+        final String release;
+        final long id;
+        final int downloads;
+
+        Asset(String release, long id, int downloads) {
+            this.release = release;
+            this.id = id;
+            this.downloads = downloads;
+        }
+    }
+
+    static class Release {
+        final String tag;
+        int downloads;
+        int gained;
+
+        Release(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    static class Downloads {
+        final List<Release> releases;
+        final boolean sinceLastRun;
+
+        Downloads(List<Release> releases, boolean sinceLastRun) {
+            this.releases = releases;
+            this.sinceLastRun = sinceLastRun;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package manifold.github.traffic;
 
 public class ReportedException extends RuntimeException {
-    public ReportedException(String msg, RuntimeException e) {
+    public ReportedException(String msg, Throwable e) {
         super(msg, e);
 
     }
@@ -0,0 +1,57 @@
+package manifold.github.traffic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static manifold.github.traffic.AnsiColor.*;
+
+/**
+ * Coordinator command, {@code -repos <file> -merge}: merges the per-repo reports {@link ShardWorker}s wrote for a run
+ * into a single report, in the order of the repos file. The merged report is printed and saved as
+ * {@code <dir>/shards/<run>/merged.txt}.
+ */
+public class ShardCoordinator {
+    static final String MERGED_FILE = "merged.txt";
+
+    private final List<String> _repos;
+    private final File _runDir;
+
+    public ShardCoordinator(Map<Arg, String> processedArgs) throws IOException {
+        _repos = ShardWorker.readRepos(new File(processedArgs.get(Arg.repos)));
+        _runDir = ShardWorker.runDir(new File(processedArgs.get(Arg.dir)), processedArgs.get(Arg.run));
+    }
+
+    /**
+     * @return The merged report, repos without a report yet are listed as missing
+     */
+    public String merge() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        List<String> missing = new ArrayList<>();
+        for (String repo : _repos) {
+            File report = ShardWorker.reportFile(_runDir, repo);
+            if (report.isFile()) {
+                sb.append(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8));
+            } else {
+                missing.add(repo);
+            }
+        }
+        sb.append('\n').append("Run ${_runDir.getName()}: ${_repos.size() - missing.size()} of ${_repos.size()} repos reported");
+        if (!missing.isEmpty()) {
+            sb.append("$DKGREY, missing:$RESET");
+            for (String repo : missing) {
+                sb.append("\n$RED- $repo$RESET");
+            }
+        }
+        sb.append('\n');
+        String merged = sb.toString();
+        if (_runDir.isDirectory()) {
+            StateFiles.writeAtomically(new File(_runDir, MERGED_FILE), merged);
+        }
+        return merged;
+    }
+}
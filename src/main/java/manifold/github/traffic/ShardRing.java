@@ -0,0 +1,57 @@
+package manifold.github.traffic;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring assigning repos to workers. Each worker is placed on the ring at many points, a repo belongs to
+ * the first worker point at or after the repo's hash. When a worker joins or leaves only the repos next to its points
+ * move, the other workers keep their shards and the state directories they have built up.
+ * <p/>
+ * Hashes come from MD5, so every JVM, on any host, computes the same assignment.
+ */
+final class ShardRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final TreeMap<Long, String> _ring;
+
+    ShardRing(Collection<String> workers) {
+        if (workers.isEmpty()) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        _ring = new TreeMap<>();
+        for (String worker : workers) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                _ring.put(hash(worker + '#' + i), worker);
+            }
+        }
+    }
+
+    /**
+     * @param key A repo as {@code user/repo}
+     * @return The worker owning the repo
+     */
+    String owner(String key) {
+        Map.Entry<Long, String> entry = _ring.ceilingEntry(hash(key));
+        return (entry == null ? _ring.firstEntry() : entry).getValue();
+    }
+
+    static long hash(String key) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to provide MD5
+            throw new IllegalStateException(e);
+        }
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (digest[i] & 0xff);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,362 @@
+package manifold.github.traffic;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static manifold.github.traffic.AnsiColor.*;
+
+/**
+ * Worker mode, {@code -repos}: reports on a share of a set of repos. Any number of workers, in one JVM each, on one
+ * host or on several hosts with a shared {@code -dir}, split the repos by consistent hashing of {@code user/repo}
+ * over the live workers, see {@link ShardRing}. A worker owns the state of its shard's repos in the {@link StateStore}.
+ * <p/>
+ * Coordination is through files under {@code <dir>/shards}:
+ * <ul>
+ * <li>{@code workers/<id>} a worker's heartbeat, touched every few seconds. A worker whose heartbeat stops is dropped
+ * from the ring and its repos move to the others.</li>
+ * <li>{@code leases/<user>__<repo>} held while a worker reports on a repo and renewed with the heartbeat, so a repo is
+ * never reported by two workers while the ring changes. A lease that is no longer renewed may be taken over, under a
+ * lock on {@code leases/takeover.lock} so that only one worker takes it.</li>
+ * <li>{@code <run>/<user>__<repo>.txt} a repo's report for a run, which marks the repo done for the run. It is
+ * written, and the lease released, once the repo's state is committed.</li>
+ * </ul>
+ * A worker keeps going until every repo is done for the run, waiting on repos owned by other live workers, so that it
+ * takes over their share if they die. {@link ShardCoordinator} merges the reports.
+ */
+public class ShardWorker implements AutoCloseable {
+    static final String SHARDS_DIR = "shards";
+    static final long HEARTBEAT_MILLIS = 5_000;
+    static final long LEASE_TTL_MILLIS = 30_000;
+    private static final long POLL_MILLIS = 1_000;
+    private static final String TAKEOVER_LOCK = "takeover.lock";
+    // file locks are held per JVM, workers in the same JVM take turns on this first
+    private static final Object TAKEOVER_MONITOR = new Object();
+
+    private final Map<Arg, String> _args;
+    private final List<String> _repos;
+    private final String _id;
+    private final File _workerFile;
+    private final File _workersDir;
+    private final File _leasesDir;
+    private final File _runDir;
+    private final GitHubApi _api;
+    private final StatsScheduler _stats;
+    private final WriteBehindStore _store;
+    private final ProfileFetcher _profiles;
+    private final Set<File> _leases;
+    private final ScheduledExecutorService _heartbeat;
+
+    public ShardWorker(Map<Arg, String> processedArgs) throws IOException {
+        _args = processedArgs;
+        _repos = readRepos(new File(processedArgs.get(Arg.repos)));
+        _id = ManagementFactory.getRuntimeMXBean().getName(); // pid@host
+        File shardsDir = new File(processedArgs.get(Arg.dir), SHARDS_DIR);
+        _workersDir = new File(shardsDir, "workers");
+        _leasesDir = new File(shardsDir, "leases");
+        _runDir = runDir(new File(processedArgs.get(Arg.dir)), processedArgs.get(Arg.run));
+        _workerFile = new File(_workersDir, _id);
+        for (File dir : Arrays.asList(_workersDir, _leasesDir, _runDir)) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Failed to create directory: $dir");
+            }
+        }
+        _api = new GitHubApi(TokenPool.load(processedArgs.get(Arg.token), processedArgs.get(Arg.tokens)),
+                Deadline.of(processedArgs));
+        _stats = processedArgs.containsKey(Arg.stats) ? new StatsScheduler(_api, processedArgs.get(Arg.api)) : null;
+        _store = new WriteBehindStore(StateStore.open(processedArgs));
+        // shared by the repos, not part of any one repo's state
+        _profiles = Traffic.profileFetcher(_api, Traffic.apiUrl(processedArgs), _store.writeThrough());
+        _leases = ConcurrentHashMap.newKeySet();
+        _heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "shard-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reports on this worker's share of the repos until every repo is done for the run.
+     *
+     * @return The number of repos this worker reported on
+     */
+    public int run() throws IOException, InterruptedException {
+        heartbeat();
+        _heartbeat.scheduleAtFixedRate(this::heartbeat, HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+        System.out.println("Worker $_id: ${_repos.size()} repos, run ${_runDir.getName()}");
+        requestStats();
+        int reported = 0;
+        while (true) {
+            List<String> pending = pending();
+            if (pending.isEmpty()) {
+                break;
+            }
+            if (_api.deadline().isExpired()) {
+                // the rest is left to the other workers, or to the next run with the same -run
+                System.out.println("Worker $_id: deadline reached, ${pending.size()} repos not done");
+                break;
+            }
+            boolean worked = false;
+            for (String repo : pending) {
+                if (_api.deadline().isExpired()) {
+                    break;
+                }
+                // membership is re-read per repo, a worker joining or dying mid-run takes effect right away
+                if (!_id.equals(new ShardRing(liveWorkers()).owner(repo)) || !claim(repo)) {
+                    continue;
+                }
+                if (isDone(repo)) {
+                    release(repo);
+                    continue;
+                }
+                report(repo);
+                reported++;
+                worked = true;
+            }
+            if (!worked) {
+                // the rest belongs to other workers, wait for them to finish or for their share to move here
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+        System.out.println("Worker $_id: reported on $reported repos");
+        return reported;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_stats != null) {
+            _stats.close();
+        }
+        try {
+            try {
+                _profiles.close();
+            } finally {
+                // only a repo cut short by an error is staged and not flushed
+                _store.discard();
+                // the repos still committing are marked done and released when their commit is
+                _store.close();
+            }
+        } finally {
+            _heartbeat.shutdownNow();
+            for (File lease : _leases) {
+                //noinspection ResultOfMethodCallIgnored
+                lease.delete();
+            }
+            //noinspection ResultOfMethodCallIgnored
+            _workerFile.delete();
+        }
+    }
+
+    /**
+     * Reports on a claimed repo. The lease is released once the repo is marked done, which for a report that
+     * succeeded waits for its state to be committed, in the background while the next repo is reported.
+     */
+    private void report(String repo) throws IOException, InterruptedException {
+        try {
+            reportClaimed(repo);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            release(repo);
+            throw e;
+        }
+    }
+
+    private void reportClaimed(String repo) throws IOException, InterruptedException {
+        int slash = repo.indexOf('/');
+        Map<Arg, String> args = new HashMap<>(_args);
+        args.put(Arg.user, repo.substring(0, slash));
+        args.put(Arg.repo, repo.substring(slash + 1));
+        long start = System.nanoTime();
+        String output;
+        try {
+            output = new Traffic(args, _api, _stats, _profiles, _store, new PrintStream(new NullOutputStream())).report();
+        } catch (RuntimeException e) {
+            _store.discard();
+            // recorded as the repo's report for the run, a failing repo must not stall the other workers
+            Throwable cause = e instanceof ReportedException || e.getCause() == null ? e : e.getCause();
+            markDone(repo, "\nRepo: $repo\n${RED}Error: ${cause.getMessage()}$RESET\n", "${RED}failed$RESET", start);
+            return;
+        }
+        // committed in the background while the next repo is reported, with the repos done meanwhile
+        _store.flush().whenComplete((v, e) -> {
+            if (e == null) {
+                markDone(repo, output, "${GREEN}done$RESET", start);
+            } else {
+                // not marked done, the repo is reported again
+                release(repo);
+                System.out.println("Worker $_id: $repo ${RED}failed$RESET$DKGREY, state not committed: ${e.getMessage()}$RESET");
+            }
+        });
+    }
+
+    private void markDone(String repo, String output, String status, long start) {
+        try {
+            StateFiles.writeAtomically(reportFile(_runDir, repo), output);
+            System.out.println("Worker $_id: $repo $status$DKGREY ${(System.nanoTime() - start) / 1_000_000} ms$RESET");
+        } catch (IOException e) {
+            System.out.println("Worker $_id: $repo ${RED}failed$RESET$DKGREY, report not written: ${e.getMessage()}$RESET");
+        } finally {
+            release(repo);
+        }
+    }
+
+    /**
+     * Starts computing the stats of the repos in this worker's share, so GitHub works on all of them while the worker
+     * reports on one at a time.
+     */
+    private void requestStats() {
+        if (_stats == null) {
+            return;
+        }
+        ShardRing ring = new ShardRing(liveWorkers());
+        for (String repo : pending()) {
+            if (_id.equals(ring.owner(repo))) {
+                int slash = repo.indexOf('/');
+                _stats.request(repo.substring(0, slash), repo.substring(slash + 1));
+            }
+        }
+    }
+
+    private List<String> pending() {
+        List<String> pending = new ArrayList<>();
+        for (String repo : _repos) {
+            if (!isDone(repo)) {
+                pending.add(repo);
+            }
+        }
+        return pending;
+    }
+
+    private boolean isDone(String repo) {
+        return reportFile(_runDir, repo).isFile();
+    }
+
+    private boolean claim(String repo) throws IOException {
+        File lease = new File(_leasesDir, fileName(repo));
+        if (isStale(lease)) {
+            // the holder stopped renewing, it died mid-report
+            takeOver(lease);
+        }
+        if (!lease.createNewFile()) {
+            return false;
+        }
+        _leases.add(lease);
+        // for whoever inspects the shared directory
+        Files.write(lease.toPath(), _id.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    private static boolean isStale(File lease) {
+        return lease.exists() && System.currentTimeMillis() - lease.lastModified() > LEASE_TTL_MILLIS;
+    }
+
+    /**
+     * Deletes a stale lease, so that it can be created anew. Workers that found it stale at the same time take turns
+     * and check again, otherwise a worker could delete the lease another one just took over.
+     */
+    private void takeOver(File lease) throws IOException {
+        synchronized (TAKEOVER_MONITOR) {
+            try (FileChannel channel = FileChannel.open(new File(_leasesDir, TAKEOVER_LOCK).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                if (isStale(lease)) {
+                    //noinspection ResultOfMethodCallIgnored
+                    lease.delete();
+                }
+            }
+        }
+    }
+
+    private void release(String repo) {
+        File lease = new File(_leasesDir, fileName(repo));
+        _leases.remove(lease);
+        //noinspection ResultOfMethodCallIgnored
+        lease.delete();
+    }
+
+    private void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            if (!_workerFile.setLastModified(now)) {
+                //noinspection ResultOfMethodCallIgnored
+                _workerFile.createNewFile();
+            }
+        } catch (IOException e) {
+            // missed beats only matter once they add up to the lease TTL
+        }
+        for (File lease : _leases) {
+            //noinspection ResultOfMethodCallIgnored
+            lease.setLastModified(now);
+        }
+    }
+
+    private List<String> liveWorkers() {
+        List<String> live = new ArrayList<>();
+        live.add(_id);
+        File[] workers = _workersDir.listFiles();
+        if (workers != null) {
+            long now = System.currentTimeMillis();
+            for (File worker : workers) {
+                if (!worker.getName().equals(_id) && now - worker.lastModified() <= LEASE_TTL_MILLIS) {
+                    live.add(worker.getName());
+                }
+            }
+        }
+        return live;
+    }
+
+    /**
+     * @return The repos listed in the file as {@code user/repo}, one per line, {@code #} comments
+     */
+    static List<String> readRepos(File file) throws IOException {
+        Set<String> repos = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int slash = line.indexOf('/');
+                if (slash <= 0 || slash == line.length() - 1 || line.indexOf('/', slash + 1) >= 0) {
+                    throw new ReportedException("Expecting user/repo in ${file.getName()}, but was: $line", null);
+                }
+                repos.add(line);
+            }
+        }
+        if (repos.isEmpty()) {
+            throw new ReportedException("No repos listed in ${file.getName()}", null);
+        }
+        return new ArrayList<>(repos);
+    }
+
+    static File runDir(File stateDir, String run) {
+        return new File(new File(stateDir, SHARDS_DIR), run);
+    }
+
+    static File reportFile(File runDir, String repo) {
+        return new File(runDir, fileName(repo) + ".txt");
+    }
+
+    private static String fileName(String repo) {
+        return repo.replace("/", "__");
+    }
+
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
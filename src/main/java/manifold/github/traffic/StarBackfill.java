@@ -0,0 +1,239 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+/**
+ * Reconstructs a repo's daily star counts from the {@code starred_at} timestamps of its stargazers.
+ * <p/>
+ * Stargazers are listed oldest first, so the star at list index {@code i} brought the count to {@code i + 1} at its
+ * {@code starred_at} time. Pages are fetched in parallel and completed pages are appended to a checkpoint in batches,
+ * an interrupted backfill resumes from there instead of starting over.
+ * <p/>
+ * GitHub truncates the REST listing at {@link #MAX_PAGES} pages (40k stars). For larger repos a sample of the
+ * accessible pages is fetched, counts between samples are interpolated, and the stars beyond the listing are
+ * interpolated between the last listed star and the current count.
+ */
+public class StarBackfill {
+    static final String CHECKPOINT_FILE = "star_backfill.checkpoint";
+    static final int PAGE_SIZE = 100;
+    static final int MAX_PAGES = 400;
+    static final int SAMPLE_STRIDE = 4;
+    private static final int MAX_CONCURRENCY = 8;
+    // pages per checkpoint append, an append may rewrite the whole checkpoint
+    private static final int CHECKPOINT_BATCH = 16;
+
+    private final int _stars;
+    private int _plannedStars;
+    private final StateStore _store;
+    private final String _checkpointKey;
+    private final IntFunction<List<Instant>> _fetchPage;
+
+    /**
+     * @param stars Current star count
+     * @param checkpointKey Where in {@code store} to keep the checkpoint
+     * @param fetchPage Returns the {@code starred_at} times of a 1-based page of stargazers
+     */
+    public StarBackfill(int stars, StateStore store, String checkpointKey, IntFunction<List<Instant>> fetchPage) {
+        _stars = stars;
+        _plannedStars = stars;
+        _store = store;
+        _checkpointKey = checkpointKey;
+        _fetchPage = fetchPage;
+    }
+
+    /**
+     * @return Cumulative star count at the end of each day (UTC), from the day of the first star through today.
+     */
+    public SortedMap<LocalDate, Integer> run(Progress progress) throws IOException, InterruptedException {
+        SortedMap<Integer, List<Instant>> pages = readCheckpoint();
+        List<Integer> remaining = new ArrayList<>();
+        for (int page : pagesToFetch()) {
+            if (!pages.containsKey(page)) {
+                remaining.add(page);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_CONCURRENCY);
+        StringBuilder unsaved = new StringBuilder();
+        int unsavedPages = 0;
+        try {
+            if (pages.isEmpty()) {
+                appendCheckpoint("stars\t$_plannedStars\n");
+            }
+            CompletionService<Map.Entry<Integer, List<Instant>>> completion = new ExecutorCompletionService<>(executor);
+            for (int page : remaining) {
+                completion.submit(() -> new AbstractMap.SimpleEntry<>(page, _fetchPage.apply(page)));
+            }
+            for (int i = 0; i < remaining.size(); i++) {
+                Future<Map.Entry<Integer, List<Instant>>> done;
+                while ((done = completion.poll(250, TimeUnit.MILLISECONDS)) == null) {
+                    progress.bumpProgress();
+                    // the fetches are slow, save what came in meanwhile
+                    saveCheckpoint(unsaved);
+                    unsavedPages = 0;
+                }
+                Map.Entry<Integer, List<Instant>> result;
+                try {
+                    result = done.get();
+                } catch (ExecutionException e) {
+                    // completed pages are checkpointed, the next run resumes from here
+                    throw e.getCause() instanceof RuntimeException
+                            ? (RuntimeException) e.getCause()
+                            : new RuntimeException(e.getCause());
+                }
+                pages.put(result.getKey(), result.getValue());
+                appendCheckpointLine(unsaved, result.getKey(), result.getValue());
+                if (++unsavedPages == CHECKPOINT_BATCH) {
+                    saveCheckpoint(unsaved);
+                    unsavedPages = 0;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            saveCheckpoint(unsaved);
+        }
+        return toDailyCounts(pages);
+    }
+
+    /**
+     * Removes the checkpoint along with the backfilled counts.
+     *
+     * @param results The store the counts are saved to. With a write-behind store the checkpoint is deleted in the
+     *                same commit as the counts, a run killed before it resumes from the checkpoint next time.
+     */
+    public void complete(StateStore results) throws IOException {
+        results.delete(_checkpointKey);
+    }
+
+    private List<Integer> pagesToFetch() {
+        int totalPages = Math.max(1, (_plannedStars + PAGE_SIZE - 1) / PAGE_SIZE);
+        List<Integer> pages = new ArrayList<>();
+        if (totalPages <= MAX_PAGES) {
+            for (int page = 1; page <= totalPages; page++) {
+                pages.add(page);
+            }
+        } else {
+            for (int page = 1; page < MAX_PAGES; page += SAMPLE_STRIDE) {
+                pages.add(page);
+            }
+            pages.add(MAX_PAGES);
+        }
+        return pages;
+    }
+
+    private SortedMap<LocalDate, Integer> toDailyCounts(SortedMap<Integer, List<Instant>> pages) {
+        // (cumulative count, time) points, ordered by count
+        List<long[]> points = new ArrayList<>();
+        for (Map.Entry<Integer, List<Instant>> entry : pages.entrySet()) {
+            int index = (entry.getKey() - 1) * PAGE_SIZE;
+            for (Instant starredAt : entry.getValue()) {
+                index++;
+                long time = starredAt.getEpochSecond();
+                // a star removed mid-scan can shift a page, keep times monotonic
+                if (!points.isEmpty() && time < points.get(points.size() - 1)[1]) {
+                    time = points.get(points.size() - 1)[1];
+                }
+                points.add(new long[]{index, time});
+            }
+        }
+        SortedMap<LocalDate, Integer> counts = new TreeMap<>();
+        if (points.isEmpty()) {
+            return counts;
+        }
+        long now = Instant.now().getEpochSecond();
+        long[] last = points.get(points.size() - 1);
+        if (last[0] < _stars && now > last[1]) {
+            // stars beyond the listing
+            points.add(new long[]{_stars, now});
+        }
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate day = LocalDateTime.ofEpochSecond(points.get(0)[1], 0, ZoneOffset.UTC).toLocalDate();
+        int p = 0;
+        for (; !day.isAfter(today); day = day.plusDays(1)) {
+            long endOfDay = day.plusDays(1).atStartOfDay().toEpochSecond(ZoneOffset.UTC) - 1;
+            while (p + 1 < points.size() && points.get(p + 1)[1] <= endOfDay) {
+                p++;
+            }
+            long[] at = points.get(p);
+            long count = at[0];
+            if (p + 1 < points.size()) {
+                long[] next = points.get(p + 1);
+                count += (next[0] - at[0] - 1) * (endOfDay - at[1]) / Math.max(1, next[1] - at[1]);
+            }
+            counts.put(day, (int) count);
+        }
+        return counts;
+    }
+
+    private SortedMap<Integer, List<Instant>> readCheckpoint() throws IOException {
+        SortedMap<Integer, List<Instant>> pages = new TreeMap<>();
+        String checkpoint = _store.getString(_checkpointKey);
+        if (checkpoint == null) {
+            return pages;
+        }
+        try (BufferedReader reader = new BufferedReader(new StringReader(checkpoint))) {
+            // resume with the interrupted run's page plan, the current count only anchors the interpolated tail
+            String header = reader.readLine();
+            String line = null;
+            if (header != null && header.startsWith("stars\t")) {
+                _plannedStars = Integer.parseInt(header.substring("stars\t".length()));
+                line = reader.readLine();
+            }
+            for (; line != null; line = reader.readLine()) {
+                int tab = line.indexOf('\t');
+                if (tab < 0 || !line.endsWith(";")) {
+                    // partially written line
+                    continue;
+                }
+                try {
+                    List<Instant> times = new ArrayList<>();
+                    for (String time : line.substring(tab + 1, line.length() - 1).split(",")) {
+                        if (!time.isEmpty()) {
+                            times.add(Instant.ofEpochSecond(Long.parseLong(time)));
+                        }
+                    }
+                    pages.put(Integer.parseInt(line.substring(0, tab)), times);
+                } catch (NumberFormatException e) {
+                    // a partially written line followed by a resumed run's line, refetch both pages
+                }
+            }
+        }
+        if (pages.isEmpty()) {
+            // nothing to resume, start a new checkpoint
+            _plannedStars = _stars;
+            _store.delete(_checkpointKey);
+        }
+        return pages;
+    }
+
+    private static void appendCheckpointLine(StringBuilder sb, int page, List<Instant> times) {
+        sb.append(page).append('\t');
+        for (int i = 0; i < times.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(times.get(i).getEpochSecond());
+        }
+        sb.append(";\n");
+    }
+
+    /**
+     * Appends the unsaved checkpoint lines and clears them.
+     */
+    private void saveCheckpoint(StringBuilder unsaved) throws IOException {
+        if (unsaved.length() > 0) {
+            appendCheckpoint(unsaved.toString());
+            unsaved.setLength(0);
+        }
+    }
+
+    private void appendCheckpoint(String line) throws IOException {
+        _store.append(_checkpointKey, line.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,211 @@
+package manifold.github.traffic;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import github.api.StarEvent;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+/**
+ * Receiver for GitHub {@code star} and {@code watch} webhook events, {@code -webhook <port>}. Each event is checked
+ * against its {@code X-Hub-Signature-256} HMAC and applied to the repo's {@link LiveStargazers} list, so new and lost
+ * stars are known without paging through {@code /stargazers}.
+ * <p/>
+ * Configure the webhook on the repo or org with content type {@code application/json}, the <i>Stars</i> and
+ * <i>Watches</i> events, and the secret from the {@code GITHUB_WEBHOOK_SECRET} environment variable. Events are
+ * applied one at a time, in the order they arrive.
+ */
+public class StarWebhook implements AutoCloseable {
+    static final String SECRET_ENV = "GITHUB_WEBHOOK_SECRET";
+    // star payloads are a few KB
+    private static final int MAX_PAYLOAD = 1 << 20;
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    private final HttpServer _server;
+    private final ExecutorService _executor;
+    private final StateStore _store;
+    private final byte[] _secret;
+    private final CountDownLatch _closed;
+
+    public StarWebhook(File stateDir, int port, String secret) throws IOException {
+        this(new FileStateStore(stateDir), port, secret);
+    }
+
+    /**
+     * @param store Where the live lists are kept, the caller closes it after the webhook
+     */
+    public StarWebhook(StateStore store, int port, String secret) throws IOException {
+        if (secret == null || secret.isEmpty()) {
+            throw new ReportedException("-webhook requires the webhook secret in the $SECRET_ENV environment variable", null);
+        }
+        _store = store;
+        _secret = secret.getBytes(StandardCharsets.UTF_8);
+        _closed = new CountDownLatch(1);
+        _server = HttpServer.create(new InetSocketAddress(port), 0);
+        // one thread, events for a repo must not race each other's read-modify-write
+        _executor = Executors.newSingleThreadExecutor();
+        _server.setExecutor(_executor);
+        _server.createContext("/", this::handle);
+    }
+
+    public StarWebhook start() {
+        _server.start();
+        return this;
+    }
+
+    public int port() {
+        return _server.getAddress().getPort();
+    }
+
+    /**
+     * Blocks until the receiver is closed.
+     */
+    public void await() throws InterruptedException {
+        _closed.await();
+    }
+
+    @Override
+    public void close() {
+        _server.stop(0);
+        _executor.shutdownNow();
+        _closed.countDown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "POST only");
+                return;
+            }
+            byte[] body = read(exchange.getRequestBody());
+            if (body == null) {
+                send(exchange, 413, "Payload too large");
+                return;
+            }
+            if (!verify(_secret, body, exchange.getRequestHeaders().getFirst("X-Hub-Signature-256"))) {
+                send(exchange, 401, "Bad signature");
+                return;
+            }
+            String event = exchange.getRequestHeaders().getFirst("X-GitHub-Event");
+            if ("ping".equals(event)) {
+                send(exchange, 200, "pong");
+            } else if ("star".equals(event) || "watch".equals(event)) {
+                String result = apply(StarEvent.load().fromJson(new String(body, StandardCharsets.UTF_8)));
+                send(exchange, result == null ? 400 : 200, result == null ? "Unexpected payload" : result);
+            } else {
+                send(exchange, 202, "Ignored event: $event");
+            }
+        } catch (RuntimeException e) {
+            // a malformed payload must not take down the receiver
+            send(exchange, 400, "Unexpected payload: ${e.getMessage()}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * @return A description of the outcome, or null if the payload names no valid repo
+     */
+    private String apply(StarEvent event) throws IOException {
+        String user = event.getRepository().getOwner().getLogin();
+        String repo = event.getRepository().getName();
+        String login = event.getSender().getLogin();
+        if (!isName(user) || !isName(repo) || !isName(login)) {
+            return null;
+        }
+        String action = event.getAction();
+        boolean starred;
+        if ("created".equals(action) || "started".equals(action)) {
+            // a star sends both a star created and a watch started event, applying it twice changes nothing
+            starred = true;
+        } else if ("deleted".equals(action)) {
+            starred = false;
+        } else {
+            return "Ignored action: $action";
+        }
+        if (!new LiveStargazers(_store, user, repo).apply(login, starred)) {
+            return "No stargazer scan yet for $user/$repo, the next report scans";
+        }
+        return (starred ? "+" : "-") + " $login $user/$repo";
+    }
+
+    /**
+     * @param signature {@code X-Hub-Signature-256} header value, {@code sha256=<hex HMAC of the body>}
+     */
+    static boolean verify(byte[] secret, byte[] body, String signature) {
+        if (signature == null || !signature.startsWith("sha256=")) {
+            return false;
+        }
+        byte[] expected;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            expected = mac.doFinal(body);
+        } catch (GeneralSecurityException e) {
+            // every JVM is required to provide HmacSHA256
+            throw new IllegalStateException(e);
+        }
+        // constant time comparison
+        return MessageDigest.isEqual(expected, hex(signature.substring("sha256=".length())));
+    }
+
+    private static byte[] hex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int hi = Character.digit(hex.charAt(i * 2), 16);
+            int lo = Character.digit(hex.charAt(i * 2 + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return new byte[0];
+            }
+            bytes[i] = (byte) ((hi << 4) | lo);
+        }
+        return bytes;
+    }
+
+    private static boolean isName(String name) {
+        // names end up in file paths
+        return name != null && NAME.matcher(name).matches() && !name.equals(".") && !name.equals("..");
+    }
+
+    /**
+     * @return The body, or null if larger than {@link #MAX_PAYLOAD}
+     */
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_PAYLOAD) {
+                return null;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package manifold.github.traffic;
+
+import java.util.*;
+
+/**
+ * Stars gained and lost between the persisted stargazer list and the current one.
+ */
+public class StargazerDiff {
+    private final List<String> _gained;
+    private final List<String> _lost;
+
+    private StargazerDiff(List<String> gained, List<String> lost) {
+        _gained = gained;
+        _lost = lost;
+    }
+
+    /**
+     * @param prev Prior stargazer logins, one per line, in star order
+     * @param nowGazers Current stargazer logins
+     */
+    public static StargazerDiff compute(String prev, Set<String> nowGazers) {
+        List<String> lost = new ArrayList<>();
+        List<String> gained = new ArrayList<>();
+        StringTokenizer tokPrev = new StringTokenizer(prev, "\n");
+        Set<String> prevGazers = new HashSet<>();
+        int prevPos = 0;
+        while (tokPrev.hasMoreTokens()) {
+            prevPos++;
+            String gazer = tokPrev.nextToken();
+            prevGazers.add(gazer);
+            if (!nowGazers.contains(gazer)) {
+                lost.add("#$prevPos $gazer");
+            }
+        }
+        for (String gazer : nowGazers) {
+            if (!prevGazers.contains(gazer)) {
+                gained.add(gazer);
+            }
+        }
+        return new StargazerDiff(gained, lost);
+    }
+
+    /**
+     * @return Logins that starred since the prior list, in star order
+     */
+    public List<String> getGained() {
+        return _gained;
+    }
+
+    /**
+     * @return Logins that unstarred since the prior list, each prefixed with its prior position, e.g. "#12 joeuser"
+     */
+    public List<String> getLost() {
+        return _lost;
+    }
+}
@@ -0,0 +1,112 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A full scan of a repo's stargazers, page by page on the calling thread. A scan cut short, e.g. by the
+ * {@link Deadline}, leaves a checkpoint with the logins read so far and the page to go on from, the next scan resumes
+ * there instead of starting over.
+ * <p/>
+ * Stargazers are listed oldest first, so new stars land on pages not read yet. Unstars shift the later logins toward
+ * the front, the last checkpointed page is read again on resume so a login shifted across it is not missed. A login
+ * unstarred within the checkpointed pages stays listed until the next full scan.
+ */
+final class StargazerScan {
+    static final String CHECKPOINT_FILE = "stargazers_scan.checkpoint";
+    static final int PAGE_SIZE = 100; // max
+    private static final String PAGE = "#page ";
+
+    private final StateStore _store;
+    private final String _checkpointKey;
+    private final IntFunction<List<String>> _fetchPage;
+
+    /**
+     * @param checkpointKey Where in {@code store} to keep the checkpoint
+     * @param fetchPage Returns the logins of a 1-based page of stargazers
+     */
+    StargazerScan(StateStore store, String checkpointKey, IntFunction<List<String>> fetchPage) {
+        _store = store;
+        _checkpointKey = checkpointKey;
+        _fetchPage = fetchPage;
+    }
+
+    /**
+     * @param progress Bumped per page, null for none
+     * @return The logins, oldest star first
+     */
+    LinkedHashSet<String> run(Progress progress) throws IOException {
+        LinkedHashSet<String> gazers = new LinkedHashSet<>();
+        int first = readCheckpoint(gazers);
+        int page = first;
+        try {
+            List<String> onePage;
+            do {
+                onePage = _fetchPage.apply(page);
+                gazers.addAll(onePage);
+                if (progress != null) {
+                    progress.bumpProgress();
+                }
+                page++;
+            } while (!onePage.isEmpty());
+        } catch (RuntimeException e) {
+            if (page > first) {
+                // written once rather than per page, the checkpoint grows with every page
+                writeCheckpoint(page - 1, gazers);
+            }
+            throw e;
+        }
+        return gazers;
+    }
+
+    /**
+     * Removes the checkpoint along with the scanned logins, in the same commit if {@code results} stages its writes.
+     *
+     * @param results The store the logins are saved to
+     */
+    void complete(StateStore results) throws IOException {
+        results.delete(_checkpointKey);
+    }
+
+    /**
+     * @return The page to resume from, 1 without a checkpoint
+     */
+    private int readCheckpoint(LinkedHashSet<String> gazers) throws IOException {
+        String text = _store.getString(_checkpointKey);
+        if (text == null) {
+            return 1;
+        }
+        int page = 1;
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line = reader.readLine();
+            if (line == null || !line.startsWith(PAGE)) {
+                return 1;
+            }
+            try {
+                page = Math.max(1, Integer.parseInt(line.substring(PAGE.length()).trim()));
+            } catch (NumberFormatException e) {
+                // damaged, start over
+                return 1;
+            }
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    gazers.add(line);
+                }
+            }
+        }
+        return page;
+    }
+
+    private void writeCheckpoint(int page, LinkedHashSet<String> gazers) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(PAGE).append(page).append('\n');
+        for (String gazer : gazers) {
+            sb.append(gazer).append('\n');
+        }
+        _store.putString(_checkpointKey, sb.toString());
+    }
+}
@@ -0,0 +1,35 @@
+package manifold.github.traffic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * File helpers for state shared between processes.
+ */
+final class StateFiles {
+    private StateFiles() {
+    }
+
+    /**
+     * Writes to a temp file renamed into place, so readers in other processes, on other hosts, never see a partial
+     * file.
+     */
+    static void writeAtomically(File file, String content) throws IOException {
+        writeAtomically(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static void writeAtomically(File file, byte[] content) throws IOException {
+        // unique per writer, two processes may write the same file
+        Path temp = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(temp, content);
+            Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
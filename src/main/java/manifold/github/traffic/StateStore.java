@@ -0,0 +1,105 @@
+package manifold.github.traffic;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Persisted state of the reports: star history, stargazer and fork lists, popular history, the profile cache and
+ * checkpoints. Keys are paths such as {@code joeuser/joeswidget/star_history.txt}, see {@link #key}.
+ * <p/>
+ * Backends, chosen with {@code -store}:
+ * <ul>
+ * <li>{@code files}, {@link FileStateStore}: a file per key under {@code -dir}, a directory per repo. The default.</li>
+ * <li>{@code paged}, {@link PagedStateStore}: every key in one memory mapped B-tree file, {@code <dir>/state.db}. For
+ * many repos, a repo's state is a few page reads away instead of a directory of files.</li>
+ * </ul>
+ * Implementations are thread-safe, and several processes may share a store. Reports write through a
+ * {@link #writeBehind} store, so a run's state is committed as a whole after the report, never partly.
+ */
+public interface StateStore extends AutoCloseable {
+    String FILES = "files";
+    String PAGED = "paged";
+
+    /**
+     * @return The store {@code -store} selects in {@code -dir}
+     */
+    static StateStore open(Map<Arg, String> args) throws IOException {
+        return open(args.get(Arg.store), new File(args.get(Arg.dir)));
+    }
+
+    /**
+     * @param kind {@link #FILES} or {@link #PAGED}
+     */
+    static StateStore open(String kind, File dir) throws IOException {
+        switch (kind) {
+            case FILES:
+                return new FileStateStore(dir);
+            case PAGED:
+                return new PagedStateStore(new File(dir, PagedStateStore.FILE));
+            default:
+                throw new IllegalArgumentException("Unknown state store: $kind");
+        }
+    }
+
+    /**
+     * @return A store staging the writes to {@code store} in memory and committing them in the background, see
+     * {@link WriteBehindStore}. Closing it commits what is staged, then closes {@code store}.
+     */
+    static StateStore writeBehind(StateStore store) {
+        return new WriteBehindStore(store);
+    }
+
+    /**
+     * @return The key of a repo's state, {@code <user>/<repo>/<name>}
+     */
+    static String key(String user, String repo, String name) {
+        return user + '/' + repo + '/' + name;
+    }
+
+    /**
+     * @return The value, or null if absent
+     */
+    byte[] get(String key) throws IOException;
+
+    void put(String key, byte[] value) throws IOException;
+
+    /**
+     * Appends to the value, or puts it if absent. Only the file store appends in place, the others rewrite the whole
+     * value.
+     */
+    void append(String key, byte[] data) throws IOException;
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Applies the changes together and durably: after a crash either all of them or none are in the store.
+     *
+     * @param changes New values by key, a null value deletes the key
+     */
+    void commit(Map<String, byte[]> changes) throws IOException;
+
+    /**
+     * @return This store, or for a store staging its writes the store it stages them for. For checkpoints, which must
+     * outlast a run that fails or is killed, and for state shared with other processes while the run goes on.
+     */
+    default StateStore writeThrough() {
+        return this;
+    }
+
+    /**
+     * @return The value as UTF-8 text, or null if absent
+     */
+    default String getString(String key) throws IOException {
+        byte[] value = get(key);
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+
+    default void putString(String key, String value) throws IOException {
+        put(key, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,139 @@
+package manifold.github.traffic;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the repository statistics endpoints, {@code /repos/<user>/<repo>/stats/*}. GitHub computes these on demand and
+ * answers {@code 202 Accepted} until they are ready, which can take from seconds to minutes. A stat that is not ready
+ * is parked on a timer and polled again with exponential backoff, no thread waits on it, so the stats of many repos
+ * are computed concurrently and the waits overlap.
+ * <p/>
+ * Requests for the same stat of the same repo share one poll, so a worker may request the stats of all its repos up
+ * front and each report picks up its repo's results.
+ */
+public class StatsScheduler implements AutoCloseable {
+    private static final int THREADS = 4;
+    private static final long FIRST_DELAY_MILLIS = 1_000;
+    private static final long MAX_DELAY_MILLIS = 16_000;
+    // about two minutes with the delays above
+    private static final int MAX_POLLS = 10;
+
+    public enum Stat {
+        /** Weekly commit counts of the last year */
+        commit_activity,
+        /** Weekly additions and deletions */
+        code_frequency,
+        /** Commit totals per contributor */
+        contributors
+    }
+
+    private final GitHubApi _api;
+    private final String _apiUrl;
+    private final ScheduledExecutorService _executor;
+    private final Map<String, CompletableFuture<String>> _polls;
+
+    public StatsScheduler(GitHubApi api, String apiUrl) {
+        _api = api;
+        _apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        _executor = Executors.newScheduledThreadPool(THREADS, r -> {
+            Thread thread = new Thread(r, "stats-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _polls = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts polling every stat of the repo, unless already polling.
+     */
+    public void request(String user, String repo) {
+        for (Stat stat : Stat.values()) {
+            fetch(user, repo, stat);
+        }
+    }
+
+    /**
+     * @return The stat's JSON, {@code []} for a repo without commits. Completes exceptionally if GitHub answers with
+     * an error or is still computing after several minutes.
+     */
+    public CompletableFuture<String> fetch(String user, String repo, Stat stat) {
+        return _polls.computeIfAbsent("$user/$repo/$stat", key -> {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            schedule(new Poll("$_apiUrl/repos/$user/$repo/stats/$stat", result), 0);
+            return result;
+        });
+    }
+
+    /**
+     * Drops the repo's results once its report has them, a later request polls again.
+     */
+    public void forget(String user, String repo) {
+        for (Stat stat : Stat.values()) {
+            _polls.remove("$user/$repo/$stat");
+        }
+    }
+
+    @Override
+    public void close() {
+        _executor.shutdownNow();
+        for (CompletableFuture<String> poll : _polls.values()) {
+            poll.cancel(false);
+        }
+    }
+
+    private void schedule(Poll poll, long delayMillis) {
+        try {
+            _executor.schedule(poll, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            poll.result.cancel(false);
+        }
+    }
+
+    private class Poll implements Runnable {
+        final String url;
+        final CompletableFuture<String> result;
+        int polls;
+
+        Poll(String url, CompletableFuture<String> result) {
+            this.url = url;
+            this.result = result;
+        }
+
+        @Override
+        public void run() {
+            if (result.isDone()) {
+                return;
+            }
+            GitHubApi.Response response;
+            try {
+                response = _api.get(url, null);
+            } catch (IOException | RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            polls++;
+            if (response.status == 202) {
+                if (polls == MAX_POLLS) {
+                    result.completeExceptionally(new ReportedException("GitHub is still computing $url", null));
+                } else {
+                    schedule(this, Math.min(FIRST_DELAY_MILLIS << (polls - 1), MAX_DELAY_MILLIS));
+                }
+            } else if (response.status == 204) {
+                // no commits
+                result.complete("[]");
+            } else if (response.isSuccess()) {
+                result.complete(response.body);
+            } else {
+                result.completeExceptionally(
+                        new ReportedException("HTTP response code: ${response.status} for URL: $url", null));
+            }
+        }
+    }
+}
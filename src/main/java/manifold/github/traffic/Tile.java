@@ -1,8 +1,11 @@
 package manifold.github.traffic;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 import static manifold.github.traffic.Tile.Layout.*;
 
@@ -13,8 +16,18 @@ import static manifold.github.traffic.Tile.Layout.*;
  * A tile may contain text, margins, a layout, and child tiles. Child tiles are sequential and render horizontally as a
  * row, vertically as a column, or manually by coordinate, according to the assigned layout. Tiles may be nested to any
  * depth.
+ * <p/>
+ * Sibling subtrees render independently of each other, so large tiles render their children on the fork-join pool and
+ * compose the results in order. Tiles of fewer than {@link #PARALLEL_LINES} lines, counting all nested tiles, render on
+ * the calling thread.
+ * <p/>
+ * Rendering works on lists of lines, which are joined once at the end. Rendered text read back by
+ * {@link String#lines()} loses a trailing empty line, and {@link #readBack} does the same to the lists, so the layout is
+ * the same as if each step were joined and split again.
  */
 public class Tile {
+    static final int PARALLEL_LINES = 512;
+
     private final List<String> _lines;
     private final Layout _layout;
     private final Margin _margin;
@@ -86,64 +99,90 @@ public class Tile {
     }
     
     public String render() {
-        String result = render(_lines, 0, 0, "");
+        List<String> lines = lineCount() < PARALLEL_LINES ? renderLines() : RenderTask.plan(this).invoke();
+        return String.join("\n", lines);
+    }
+
+    /**
+     * Renders on the calling thread only, the same as {@link #render()}.
+     */
+    public String renderSequentially() {
+        return String.join("\n", renderLines());
+    }
+
+    private List<String> renderLines() {
+        List<String> result = render(_lines, 0, 0, Collections.emptyList());
         for (Tile child : _nest) {
-            result = render(child.render().lines().toList(), child._x, child._y, result);
+            result = render(readBack(child.renderLines()), child._x, child._y, readBack(result));
         }
         return includeMargin(result);
     }
 
-    private String render(List<String> lines, int x, int y, String background) {
-        StringBuilder result = new StringBuilder();
-        List<String> bgLines = new ArrayList<>(background.lines().toList());
-        List<String> itLines = new ArrayList<>(lines);
-        for (int i = y; i < 0; i++) {
-            itLines.remove(0);
+    /**
+     * @param children The rendered children, in order
+     */
+    private List<String> compose(List<List<String>> children) {
+        List<String> result = render(_lines, 0, 0, Collections.emptyList());
+        for (int i = 0; i < _nest.size(); i++) {
+            Tile child = _nest.get(i);
+            result = render(readBack(children.get(i)), child._x, child._y, readBack(result));
         }
-        while (bgLines.size() < y) {
-            bgLines.add("");
+        return includeMargin(result);
+    }
+
+    /**
+     * @return Lines of content in this tile and its nested tiles, the measure of rendering work
+     */
+    private int lineCount() {
+        int count = _lines.size();
+        for (int i = 0; i < _nest.size(); i++) {
+            count += _nest.get(i).lineCount();
         }
-        for (int i = 0; i < bgLines.size(); i++) {
-            String bgLine = bgLines.get(i);
-            result.append(bgLine);
-            if (!itLines.isEmpty() && i >= y) {
-                String itLine = itLines.remove(0);
+        return count;
+    }
+
+    /**
+     * @return The rendered lines as {@link String#lines()} reads back their join, without a trailing empty line
+     */
+    private static List<String> readBack(List<String> rendered) {
+        int size = rendered.size();
+        return size > 0 && rendered.get(size - 1).isEmpty() ? rendered.subList(0, size - 1) : rendered;
+    }
+
+    private List<String> render(List<String> lines, int x, int y, List<String> background) {
+        int next = y < 0 ? Math.min(-y, lines.size()) : 0;
+        int bgSize = Math.max(background.size(), y);
+        List<String> result = new ArrayList<>(bgSize + lines.size() - next);
+        for (int i = 0; i < bgSize; i++) {
+            String bgLine = i < background.size() ? background.get(i) : "";
+            if (next < lines.size() && i >= y) {
+                String itLine = lines.get(next++);
                 if (x >= length(bgLine)) {
-                    result.append(" ".repeat(x - length(bgLine))).append(itLine);
+                    result.add(bgLine + " ".repeat(x - length(bgLine)) + itLine);
                 } else if (x < 0) {
                     //todo: handle overwriting text having ansi color codes, prob remove these chars and make map of location/code and then fixup result accordingly because we know the layout of the tiles.
-                    int lineStart = result.length() - bgLine.length();
-                    result.replace(lineStart, lineStart + itLine.length() + x, itLine.substring(-x));
+                    result.add(new StringBuilder(bgLine).replace(0, itLine.length() + x, itLine.substring(-x)).toString());
                 } else {
                     //todo: handle overwriting text having ansi color codes...
-                    int offset = result.length() - bgLine.length() + x;
-                    result.replace(offset, offset + itLine.length(), itLine);
+                    result.add(new StringBuilder(bgLine).replace(x, x + itLine.length(), itLine).toString());
                 }
-            }
-            result.append('\n');
-        }
-        for (String itLine : itLines) {
-            if (x < 0) {
-                result.append(itLine.substring(-x)).append('\n');
             } else {
-                result.append(" ".repeat(x)).append(itLine).append('\n');
+                result.add(bgLine);
             }
         }
-        removeTerminatingNewline(result);
-        return result.toString();
-    }
-
-    private static void removeTerminatingNewline(StringBuilder result) {
-        if (result.length() != 0 && result.charAt(result.length() - 1) == '\n') {
-            result.deleteCharAt(result.length() - 1);
+        for (; next < lines.size(); next++) {
+            String itLine = lines.get(next);
+            result.add(x < 0 ? itLine.substring(-x) : " ".repeat(x) + itLine);
         }
+        return result;
     }
 
-    private String includeMargin(String result) {
-        List<String> lines = new ArrayList<>(result.lines().toList());
+    private List<String> includeMargin(List<String> result) {
+        List<String> lines = readBack(result);
         if (lines.isEmpty() || _margin.equals(Margin.Empty)) {
             return result;
         }
+        lines = new ArrayList<>(lines);
         int maxLength = length(lines.stream().max(Comparator.comparingInt(this::length)).get());
 //        if (_margin.left != 0 || _margin.right != 0) {
 //            String leftMargin = _margin.left > 0 ? ("│" + spaces(_margin.left - 1)) : "";
@@ -164,7 +203,7 @@ public class Tile {
             String line = " ".repeat(maxLength);
             lines.add(line);
         }
-        return String.join("\n", lines);
+        return lines;
     }
 
     private String spaces(int n) {
@@ -215,6 +254,49 @@ public class Tile {
         return height;
     }
 
+    /**
+     * Renders the children of a large tile as subtasks, each splitting further while large.
+     */
+    private static class RenderTask extends RecursiveTask<List<String>> {
+        private final Tile _tile;
+        private final int _lineCount;
+        // null if small enough to render on one thread
+        private final List<RenderTask> _children;
+
+        private RenderTask(Tile tile, int lineCount, List<RenderTask> children) {
+            _tile = tile;
+            _lineCount = lineCount;
+            _children = children;
+        }
+
+        /**
+         * Counts the lines of every tile of the tree once, bottom up, rather than again for each level.
+         */
+        static RenderTask plan(Tile tile) {
+            List<RenderTask> children = new ArrayList<>(tile._nest.size());
+            int lineCount = tile._lines.size();
+            for (Tile child : tile._nest) {
+                RenderTask task = plan(child);
+                lineCount += task._lineCount;
+                children.add(task);
+            }
+            return new RenderTask(tile, lineCount, lineCount < PARALLEL_LINES || children.isEmpty() ? null : children);
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (_children == null) {
+                return _tile.renderLines();
+            }
+            ForkJoinTask.invokeAll(_children);
+            List<List<String>> rendered = new ArrayList<>(_children.size());
+            for (RenderTask child : _children) {
+                rendered.add(child.join());
+            }
+            return _tile.compose(rendered);
+        }
+    }
+
     public enum Layout {
         Row {
             @Override
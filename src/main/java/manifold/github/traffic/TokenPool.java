@@ -0,0 +1,177 @@
+package manifold.github.traffic;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A pool of GitHub tokens with per-token rate limit accounting. Each request goes to the token with the most remaining
+ * budget according to the {@code X-RateLimit-*} headers of its latest response. Tokens that hit their limit are
+ * skipped until their reset time, so throughput scales with the number of tokens.
+ * <p/>
+ * Tokens come from {@code -token}, a {@code -tokens} file (one per line, {@code #} comments) and the
+ * {@code GITHUB_TOKENS} environment variable (comma or whitespace separated).
+ */
+public class TokenPool {
+    static final String TOKENS_ENV = "GITHUB_TOKENS";
+    // GitHub's hourly REST budget for a personal token, assumed until a response says otherwise
+    private static final int DEFAULT_LIMIT = 5000;
+
+    private final List<Token> _tokens;
+
+    public TokenPool(Set<String> tokens) {
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("At least one token is required");
+        }
+        _tokens = new ArrayList<>();
+        for (String token : tokens) {
+            _tokens.add(new Token(token));
+        }
+    }
+
+    /**
+     * @param token The {@code -token} value, or null
+     * @param tokensFile The {@code -tokens} file, or null
+     */
+    public static TokenPool load(String token, String tokensFile) throws IOException {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (token != null && !token.isEmpty()) {
+            tokens.add(token);
+        }
+        if (tokensFile != null) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(new File(tokensFile)))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        tokens.add(line);
+                    }
+                }
+            }
+        }
+        String env = System.getenv(TOKENS_ENV);
+        if (env != null) {
+            for (String value : env.split("[,\\s]+")) {
+                if (!value.isEmpty()) {
+                    tokens.add(value);
+                }
+            }
+        }
+        if (tokens.isEmpty()) {
+            throw new ReportedException("No GitHub token, use -token, -tokens or the $TOKENS_ENV environment variable", null);
+        }
+        return new TokenPool(tokens);
+    }
+
+    public int size() {
+        return _tokens.size();
+    }
+
+    /**
+     * Reserves one request from the token with the most remaining budget.
+     *
+     * @return The token, or null if every token is exhausted, see {@link #millisUntilReset()}
+     */
+    public synchronized Token acquire() {
+        long now = System.currentTimeMillis();
+        Token best = null;
+        for (Token token : _tokens) {
+            if (token._resetMillis <= now && token._remaining <= 0) {
+                // budget restored
+                token._remaining = token._limit;
+            }
+            if (token._remaining > 0 && (best == null || token._remaining > best._remaining)) {
+                best = token;
+            }
+        }
+        if (best != null) {
+            best._remaining--;
+        }
+        return best;
+    }
+
+    /**
+     * @return Milliseconds until the earliest exhausted token resets, 0 if no token is exhausted
+     */
+    public synchronized long millisUntilReset() {
+        long earliest = Long.MAX_VALUE;
+        for (Token token : _tokens) {
+            if (token._remaining <= 0) {
+                earliest = Math.min(earliest, token._resetMillis);
+            }
+        }
+        return earliest == Long.MAX_VALUE ? 0 : Math.max(0, earliest - System.currentTimeMillis());
+    }
+
+    /**
+     * Updates a token's budget from the rate limit headers of its latest response.
+     */
+    public synchronized void update(Token token, GitHubApi.Response response) {
+        String limit = response.header("X-RateLimit-Limit");
+        String remaining = response.header("X-RateLimit-Remaining");
+        String reset = response.header("X-RateLimit-Reset");
+        try {
+            if (limit != null) {
+                token._limit = Integer.parseInt(limit.trim());
+            }
+            long resetMillis = reset == null ? token._resetMillis : Long.parseLong(reset.trim()) * 1000;
+            if (remaining != null) {
+                int serverRemaining = Integer.parseInt(remaining.trim());
+                token._remaining = resetMillis != token._resetMillis
+                        // new rate limit window
+                        ? serverRemaining
+                        // requests still in flight on this token were reserved by acquire(), keep the lower count
+                        : Math.min(token._remaining, serverRemaining);
+            }
+            token._resetMillis = resetMillis;
+        } catch (NumberFormatException e) {
+            // ignore malformed headers, the reservation made by acquire() stands
+        }
+        long rateLimitWait = response.rateLimitWaitMillis();
+        if (rateLimitWait >= 0) {
+            token._remaining = 0;
+            token._resetMillis = Math.max(token._resetMillis, System.currentTimeMillis() + rateLimitWait);
+        }
+    }
+
+    /**
+     * @return Remaining budget per token, tokens masked
+     */
+    public synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        for (Token token : _tokens) {
+            lines.add("${token.masked()}: ${Math.max(0, token._remaining)}/${token._limit}");
+        }
+        return Collections.unmodifiableList(lines);
+    }
+
+    public static class Token {
+        private final String _value;
+        private int _limit;
+        private int _remaining;
+        private long _resetMillis;
+
+        private Token(String value) {
+            _value = value;
+            _limit = DEFAULT_LIMIT;
+            _remaining = DEFAULT_LIMIT;
+        }
+
+        public String getValue() {
+            return _value;
+        }
+
+        /**
+         * @return The token with all but its last four characters hidden
+         */
+        public String masked() {
+            return _value.length() <= 8 ? "****" : "****" + _value.substring(_value.length() - 4);
+        }
+    }
+}
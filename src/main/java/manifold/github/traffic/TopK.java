@@ -0,0 +1,57 @@
+package manifold.github.traffic;
+
+import java.util.*;
+
+/**
+ * The top {@code k} items by an order, without sorting everything. Results are largest first.
+ */
+final class TopK {
+    private TopK() {
+    }
+
+    /**
+     * Merges lists that are each sorted largest first, e.g. the top-10 lists of many repos. A heap holds the head of
+     * each list and the merge stops after {@code k} items, O(lists + k log lists).
+     */
+    static <T> List<T> mergeSorted(List<? extends List<T>> lists, Comparator<? super T> order, int k) {
+        // [list index, position] cursors, largest head first
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, lists.size()),
+                (a, b) -> order.compare(lists.get(b[0]).get(b[1]), lists.get(a[0]).get(a[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heads.add(new int[]{i, 0});
+            }
+        }
+        List<T> top = new ArrayList<>(k);
+        while (top.size() < k && !heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<T> list = lists.get(head[0]);
+            top.add(list.get(head[1]));
+            if (++head[1] < list.size()) {
+                heads.add(head);
+            }
+        }
+        return top;
+    }
+
+    /**
+     * Selects from unsorted items with a min-heap bounded to {@code k}, O(n log k).
+     */
+    static <T> List<T> select(Iterable<T> items, Comparator<? super T> order, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+        PriorityQueue<T> smallestOnTop = new PriorityQueue<>(k, order);
+        for (T item : items) {
+            if (smallestOnTop.size() < k) {
+                smallestOnTop.add(item);
+            } else if (order.compare(item, smallestOnTop.peek()) > 0) {
+                smallestOnTop.poll();
+                smallestOnTop.add(item);
+            }
+        }
+        List<T> top = new ArrayList<>(smallestOnTop);
+        top.sort(order.reversed());
+        return top;
+    }
+}
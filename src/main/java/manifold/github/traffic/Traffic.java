@@ -2,23 +2,20 @@ package manifold.github.traffic;
 
 import github.api.*;
 import github.api.StarHistory.StarHistoryItem;
-import manifold.ext.rt.api.Structural;
 import manifold.ext.rt.api.auto;
-import manifold.json.rt.api.Requester;
-import manifold.rt.api.util.StreamUtil;
+import manifold.rt.api.Bindings;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.net.UnknownHostException;
 import java.text.DecimalFormat;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ToIntFunction;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static manifold.github.traffic.AnsiColor.*;
 
 /**
@@ -27,63 +24,440 @@ import static manifold.github.traffic.AnsiColor.*;
  */
 @SuppressWarnings({"StringConcatenationInsideStringBufferAppend", "MalformedFormatString", "unchecked"})
 public class Traffic {
-    private static final String HEAVY_BLOCK = "▓";
-    private static final String LIGHT_BLOCK = "░";
-
-    private static final int MAX_BAR_LEN = 40;
     private static final int MAX_URL = 38;
     private static final int MAX_REFERRER_URL = 30;
-    private static final int MAX_UNIQUE_URL_BAR = 5;
-    private static final int MAX_COUNT_URL_BAR = 10;
+    private static final int TRENDING_DAYS = 7;
+    private static final int MAX_TRENDING = 5;
+    private static final int MAX_GAZERS = 10;
+    private static final int MAX_CONTRIBUTORS = 5;
+    private static final int MAX_RELEASES = 10;
     private static final String STAR_HISTORY_FILE = "star_history.txt";
+    // terminal height when the shell doesn't export LINES
+    private static final int DEFAULT_ROWS = 24;
+    // responses are parsed for just the fields the report reads, see JsonProjection
+    static final JsonProjection REPO_STATS =
+            JsonProjection.of("stargazers_count", "subscribers_count", "forks_count", "open_issues");
+    private static final JsonProjection STARGAZER_LOGINS = JsonProjection.of("login");
+    private static final JsonProjection STARRED_AT = JsonProjection.of("starred_at");
+    private static final JsonProjection FORK_NAMES = JsonProjection.of("full_name");
+    private static final JsonProjection COMMIT_ACTIVITY = JsonProjection.of("week", "total");
+    // [week, additions, deletions] arrays
+    private static final JsonProjection CODE_FREQUENCY = JsonProjection.of();
+    // leaves out the weekly breakdown, most of the response
+    private static final JsonProjection CONTRIBUTORS = JsonProjection.of("total", "author.login");
+    private static final JsonProjection RELEASE_ASSETS =
+            JsonProjection.of("tag_name", "assets.id", "assets.download_count");
+    private static final JsonProjection USER_PROFILE =
+            JsonProjection.of("login", "name", "company", "type", "public_repos", "followers");
 
     private final String _user;
     private final String _repo;
-    private final String _token;
+    private final String _apiUrl;
+    private final StateStore _store;
     private final int _days;
+    private final boolean _backfill;
+    private final boolean _profile;
+    private final Duration _reconcileEvery;
+    private final boolean _progressive;
+    private final GitHubApi _api;
+    private final StatsScheduler _stats;
+    private final boolean _ownsStats;
+    private final ProfileFetcher _profiles;
+    private final boolean _releases;
+    private final Charts _charts;
+    private final PrintStream _out;
     private final StringBuilder _content;
+    private final Set<Section> _skipped;
+    private volatile int _stars = -1;
+    private volatile int _forks = -1;
+    private int _frameLines;
+
+    Traffic(Map<Arg, String> processedArgs, StateStore store) throws IOException {
+        this(processedArgs, new GitHubApi(TokenPool.load(processedArgs.get(Arg.token), processedArgs.get(Arg.tokens)),
+                Deadline.of(processedArgs)), null, null, store, System.out);
+    }
 
-    Traffic(Map<Arg, String> processedArgs) {
+    /**
+     * @param api Shared by reports on several repos, so they draw on the same token budgets. Sections not made by its
+     *            {@link Deadline} show as skipped.
+     * @param stats Shared by reports on several repos, so their stats are computed concurrently. If null and
+     *              {@code -stats} is set, the report polls its stats itself.
+     * @param profiles Shared by reports on several repos, so a stargazer's profile is loaded and fetched once, see
+     *                 {@link #profileFetcher}. If null, the report loads the profile cache itself.
+     * @param store Where the repo's state is kept, shared by reports on several repos
+     * @param out Where the report prints as it is made
+     */
+    Traffic(Map<Arg, String> processedArgs, GitHubApi api, StatsScheduler stats, ProfileFetcher profiles,
+            StateStore store, PrintStream out) {
         _user = processedArgs.get(Arg.user);
         _repo = processedArgs.get(Arg.repo);
-        _token = processedArgs.get(Arg.token);
+        _apiUrl = apiUrl(processedArgs);
+        _profiles = profiles;
+        _store = store;
         _days = Integer.parseInt(processedArgs.get(Arg.days));
+        _backfill = processedArgs.containsKey(Arg.backfill);
+        _profile = processedArgs.containsKey(Arg.profile);
+        _reconcileEvery = Duration.ofDays(Integer.parseInt(processedArgs.get(Arg.reconcile)));
+        // the backfill progress bar would garble the redrawn report
+        _progressive = processedArgs.containsKey(Arg.progressive) && !_backfill;
+        _api = api;
+        boolean showStats = processedArgs.containsKey(Arg.stats);
+        _ownsStats = showStats && stats == null;
+        _stats = _ownsStats ? new StatsScheduler(api, _apiUrl) : showStats ? stats : null;
+        _releases = processedArgs.containsKey(Arg.releases);
+        _charts = new Charts(_days);
+        _out = out;
         _content = new StringBuilder();
+        _skipped = ConcurrentHashMap.newKeySet();
     }
 
     @SuppressWarnings("UnusedReturnValue")
-    void report() throws IOException, InterruptedException {
+    String report() throws IOException, InterruptedException {
+        if (_profile) {
+            // a shard worker makes many reports, each profile covers its own
+            Profiler.reset();
+            Profiler.enable();
+        }
+        long start = System.nanoTime();
+        if (_stats != null) {
+            // GitHub may take a while to compute these, they are polled while the rest of the report is made
+            _stats.request(_user, _repo);
+        }
+        try {
+            if (_progressive) {
+                reportProgressively();
+            } else {
+                reportSequentially();
+            }
+        } finally {
+            if (_ownsStats) {
+                _stats.close();
+            }
+        }
+        if (!_skipped.isEmpty()) {
+            StringJoiner skipped = new StringJoiner(", ");
+            for (Section section : Section.values()) {
+                if (_skipped.contains(section)) {
+                    skipped.add(section.title);
+                }
+            }
+            println("${DKGREY}Deadline reached, skipped: $skipped$RESET");
+        }
+        if (_profile) {
+            println(Profiler.report());
+            println("${DKGREY}Total:$RESET ${(System.nanoTime() - start) / 1_000_000} ms");
+        }
+        return _content.toString();
+    }
+
+    private void reportSequentially() throws IOException, InterruptedException {
         println();
         println(makeHeader());
         println();
-        println(showStats());
+        String stats = make(Section.Stats, "stats", this::showStats);
+        println(stats);
         println();
-        println("$_days-day summary$DKGREY (UTC time)$RESET");
+        println(makeSummaryTitle());
         println();
+        Map<Section, String> sections = new EnumMap<>(Section.class);
+        sections.put(Section.Views, make(Section.Views, "views", this::makePageViews));
+        sections.put(Section.Clones, make(Section.Clones, "clones", this::makeClones));
+        if (_days >= 14) { // bottom chart data applies to past 14 days
+            PopularHistory popularHistory = PopularHistory.load(_store, _user, _repo);
+            sections.put(Section.Paths, make(Section.Paths, "popular paths", () -> makePopularPaths(popularHistory)));
+            sections.put(Section.Referrers,
+                    make(Section.Referrers, "popular referrers", () -> makePopularReferrers(popularHistory)));
+            sections.put(Section.Trending, make(Section.Trending, "trending", () -> makeTrending(popularHistory)));
+        }
+        if (_stats != null) {
+            sections.put(Section.Activity, make(Section.Activity, "activity", this::makeActivity));
+        }
+        if (_releases) {
+            sections.put(Section.Releases, make(Section.Releases, "releases", this::makeReleases));
+        }
+        String report;
+        try (Profiler.Stage ignored = Profiler.stage("tile render")) {
+            report = makeCharts(sections).render();
+        }
+        println(report);
+        String diff = make(Section.Stargazers, null, this::showStargazerDiff);
+        String forks = make(Section.Forks, "forks", this::showForkDiff);
+        println(makeDiffs(diff, forks));
+    }
+
+    /**
+     * Fetches the sections concurrently and, on a terminal, redraws the report as each one arrives, with placeholders
+     * for the sections still loading. The redrawn frame is cut to the terminal's height, the cursor can't go back up
+     * to lines scrolled off. The final report is laid out as {@link #reportSequentially()} lays it out.
+     * <p/>
+     * Without a terminal nothing is redrawn, each part of the report is printed once it and the parts before it are
+     * made.
+     */
+    private void reportProgressively() throws IOException, InterruptedException {
+        boolean redraw = System.console() != null;
+        int rows = terminalRows();
+        String header = makeHeader();
+        int printed = 0;
+        Map<Section, String> sections = new ConcurrentHashMap<>();
+        BlockingQueue<CompletableFuture<String>> arrived = new LinkedBlockingQueue<>();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Section.values().length, r -> {
+            Thread thread = new Thread(r, "report-section");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<String> stats = section(Section.Stats, "stats", this::showStats, executor, sections);
+            futures.add(stats);
+            futures.add(section(Section.Views, "views", this::makePageViews, executor, sections));
+            futures.add(section(Section.Clones, "clones", this::makeClones, executor, sections));
+            if (_days >= 14) {
+                PopularHistory popularHistory = PopularHistory.load(_store, _user, _repo);
+                CompletableFuture<String> paths = section(Section.Paths, "popular paths",
+                        () -> makePopularPaths(popularHistory), executor, sections);
+                CompletableFuture<String> referrers = section(Section.Referrers, "popular referrers",
+                        () -> makePopularReferrers(popularHistory), executor, sections);
+                futures.add(paths);
+                futures.add(referrers);
+                // trends need both lists recorded
+                futures.add(CompletableFuture.allOf(paths, referrers).thenCompose(v ->
+                        section(Section.Trending, "trending", () -> makeTrending(popularHistory), executor, sections)));
+            }
+            if (_stats != null) {
+                futures.add(section(Section.Activity, "activity", this::makeActivity, executor, sections));
+            }
+            if (_releases) {
+                futures.add(section(Section.Releases, "releases", this::makeReleases, executor, sections));
+            }
+            // the live stargazer list is checked against the star count
+            futures.add(stats.thenCompose(v ->
+                    section(Section.Stargazers, "stargazers", this::showStargazerDiff, executor, sections)));
+            // a drop in the fork count triggers a full fork scan
+            futures.add(stats.thenCompose(v ->
+                    section(Section.Forks, "forks", this::showForkDiff, executor, sections)));
+            for (CompletableFuture<String> future : futures) {
+                // also when it fails, or a section waiting on a failed one never runs
+                future.whenComplete((content, e) -> arrived.add(future));
+            }
+
+            if (redraw) {
+                redraw(makeFrame(header, sections), rows);
+            } else {
+                printed = printReady(printed, header, sections);
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                CompletableFuture<String> future = arrived.take();
+                if (future.isCompletedExceptionally()) {
+                    join(future);
+                }
+                if (redraw) {
+                    redraw(makeFrame(header, sections), rows);
+                } else {
+                    printed = printReady(printed, header, sections);
+                }
+            }
+            for (CompletableFuture<String> future : futures) {
+                join(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!redraw) {
+            // every section is made, the rest is printed
+            printReady(printed, header, sections);
+            return;
+        }
+        // replaced by the final report, which goes through println() like the sequential report
+        _out.print("\u001B[${_frameLines}A\r\u001B[J");
+        String frame;
+        try (Profiler.Stage ignored = Profiler.stage("tile render")) {
+            frame = makeFrame(header, sections);
+        }
+        println(frame);
+    }
+
+    /**
+     * Prints the parts of the report from {@code printed} on, as far as their sections are made. The parts printed
+     * together read as {@link #makeFrame} lays them out.
+     *
+     * @param printed The count of parts printed so far
+     * @return The count of parts printed now
+     */
+    private int printReady(int printed, String header, Map<Section, String> sections) {
+        if (printed == 0) {
+            println();
+            println(header);
+            println();
+            printed++;
+        }
+        if (printed == 1 && sections.containsKey(Section.Stats)) {
+            println(sections.get(Section.Stats));
+            println();
+            println(makeSummaryTitle());
+            println();
+            printed++;
+        }
+        if (printed == 2 && sections.keySet().containsAll(chartSections())) {
+            try (Profiler.Stage ignored = Profiler.stage("tile render")) {
+                println(makeCharts(sections).render());
+            }
+            printed++;
+        }
+        if (printed == 3 && sections.containsKey(Section.Stargazers) && sections.containsKey(Section.Forks)) {
+            println(makeDiffs(sections.get(Section.Stargazers), sections.get(Section.Forks)));
+            printed++;
+        }
+        return printed;
+    }
+
+    /**
+     * @return The sections {@link #makeCharts} lays out
+     */
+    private List<Section> chartSections() {
+        List<Section> charts = new ArrayList<>(Arrays.asList(Section.Views, Section.Clones));
+        if (_days >= 14) {
+            charts.addAll(Arrays.asList(Section.Paths, Section.Referrers, Section.Trending));
+        }
+        if (_stats != null) {
+            charts.add(Section.Activity);
+        }
+        if (_releases) {
+            charts.add(Section.Releases);
+        }
+        return charts;
+    }
+
+    private CompletableFuture<String> section(Section section, String stage, SectionMaker maker, ExecutorService executor,
+                                              Map<Section, String> sections) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String content = make(section, stage, maker);
+                sections.put(section, content);
+                return content;
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * @param stage The profiler stage, null if the section times its own stages
+     * @return The section, or if the deadline cut it short a marker in its place
+     */
+    private String make(Section section, String stage, SectionMaker maker) throws IOException, InterruptedException {
+        try (Profiler.Stage ignored = stage == null ? null : Profiler.stage(stage)) {
+            return maker.make();
+        } catch (Deadline.ExceededException e) {
+            _skipped.add(section);
+            return "${section.title}\n${DKGREY}skipped, deadline reached$RESET\n";
+        }
+    }
+
+    private static void join(CompletableFuture<String> future) throws IOException, InterruptedException {
+        try {
+            future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param rows The terminal's height, a taller frame is cut to fit with a marker in its last line
+     */
+    private void redraw(String frame, int rows) {
+        if (_frameLines > 0) {
+            // cursor up to the first line of the previous frame, then clear to the end of the screen
+            _out.print("\u001B[${_frameLines}A\r\u001B[J");
+        }
+        List<String> lines = Arrays.asList(frame.split("\n", -1));
+        if (lines.size() >= rows) {
+            // one row is left for the line break after the frame
+            lines = new ArrayList<>(lines.subList(0, rows - 2));
+            lines.add("${DKGREY}...$RESET");
+        }
+        _out.print(String.join("\n", lines));
+        _out.println();
+        _out.flush();
+        _frameLines = lines.size();
+    }
+
+    /**
+     * @return The terminal's height from {@code LINES}, or {@link #DEFAULT_ROWS} if the shell doesn't export it
+     */
+    private static int terminalRows() {
+        String lines = System.getenv("LINES");
+        try {
+            int rows = lines == null ? 0 : Integer.parseInt(lines.trim());
+            return rows > 2 ? rows : DEFAULT_ROWS;
+        } catch (NumberFormatException e) {
+            return DEFAULT_ROWS;
+        }
+    }
+
+    /**
+     * @return The whole report as the sequential report prints it, less the final line break
+     */
+    private String makeFrame(String header, Map<Section, String> sections) {
+        String stats = sections.getOrDefault(Section.Stats, "${DKGREY}loading...$RESET");
+        String diff = makeDiffs(sections.getOrDefault(Section.Stargazers, "${DKGREY}Fetching stargazers...$RESET"),
+                sections.getOrDefault(Section.Forks, ""));
+        return "\n$header\n\n$stats\n\n${makeSummaryTitle()}\n\n${makeCharts(sections).render()}\n$diff";
+    }
+
+    private String makeSummaryTitle() {
+        return "$_days-day summary$DKGREY (UTC time)$RESET";
+    }
+
+    /**
+     * Lays out the chart sections, sections not made yet show as placeholders.
+     */
+    private Tile makeCharts(Map<Section, String> sections) {
         Tile root = new Tile(Tile.Layout.Column, Tile.Margin.Empty);
         Tile topCharts = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
-        topCharts.append(makePageViews(), new Tile.Margin(0, 0, 0, 4));
-        topCharts.append(makeClones());
+        topCharts.append(sectionOrPlaceholder(sections, Section.Views, "Views"), new Tile.Margin(0, 0, 0, 4));
+        topCharts.append(sectionOrPlaceholder(sections, Section.Clones, "Clones"));
         root.append(topCharts);
-        if (_days >= 14) { // bottom chart data applies to past 14 days
+        if (_days >= 14) {
             Tile bottomCharts = new Tile(Tile.Layout.Row, new Tile.Margin(1, 0, 1, 0));
-            bottomCharts.append(makePopularPaths(), new Tile.Margin(0, 0, 0, 4));
-            bottomCharts.append(makePopularReferrers());
+            bottomCharts.append(sectionOrPlaceholder(sections, Section.Paths, "Top views"), new Tile.Margin(0, 0, 0, 4));
+            bottomCharts.append(sectionOrPlaceholder(sections, Section.Referrers, "Referring sites"));
             root.append(bottomCharts);
+            String trending = sections.getOrDefault(Section.Trending, "");
+            if (!trending.isEmpty()) {
+                root.append(new Tile(trending, new Tile.Margin(0, 0, 1, 0)));
+            }
         }
-        String report = root.render();
-        println(report);
-        String diff = showStargazerDiff();
-        println(diff);
+        if (_stats != null) {
+            root.append(new Tile(sectionOrPlaceholder(sections, Section.Activity, "Activity"), new Tile.Margin(0, 0, 1, 0)));
+        }
+        if (_releases) {
+            root.append(new Tile(sectionOrPlaceholder(sections, Section.Releases, "Releases"), new Tile.Margin(0, 0, 1, 0)));
+        }
+        return root;
+    }
+
+    private static String sectionOrPlaceholder(Map<Section, String> sections, Section section, String title) {
+        String content = sections.get(section);
+        return content != null ? content : "$title\n${DKGREY}loading...$RESET\n";
     }
 
     private void println(String... data) {
         for (String s: data) {
             _content.append(s);
-            System.out.print(s);
+            _out.print(s);
         }
         _content.append('\n');
-        System.out.println();
+        _out.println();
     }
 
     private String makeHeader() {
@@ -94,13 +468,25 @@ public class Traffic {
     private String showStats() throws IOException {
         auto history = readStarHistory();
 
-        Repo repoData = getOne(Repo.request("https://api.github.com/repos/$_user/$_repo"));
+        Repo repoData = getOne("$_apiUrl/repos/$_user/$_repo", body -> (Repo) REPO_STATS.parse(body));
         int stars = repoData.getStargazers_count();
+        _stars = stars;
+        _forks = repoData.getForks_count();
 
-        OpenPrCount openPrCount = getOne(OpenPrCount.request("https://api.github.com/search/issues?q=repo:$_user/$_repo%20is:pr%20is:open&per_page=1"));
+        OpenPrCount openPrCount = getOne("$_apiUrl/search/issues?q=repo:$_user/$_repo%20is:pr%20is:open&per_page=1", OpenPrCount.load()::fromJson);
         int openPrcCount = openPrCount.getTotal_count();
 
-        updateStarHistory(history.starHistory, stars);
+        StarHistory starHistory = history.starHistory;
+        StarBackfill backfill = null;
+        if (_backfill) {
+            backfill = new StarBackfill(stars, _store.writeThrough(), stateKey(StarBackfill.CHECKPOINT_FILE),
+                    this::fetchStarredAt);
+            starHistory = backfillStarHistory(backfill, starHistory);
+        }
+        updateStarHistory(starHistory, stars);
+        if (backfill != null) {
+            backfill.complete(_store);
+        }
 
         StringBuilder sb = new StringBuilder();
         sb.append("$YELLOW$stars$RESET");
@@ -124,14 +510,12 @@ public class Traffic {
         int prevStars = -1;
         //noinspection UnusedAssignment
         StarHistory starHistory = null;
-        File starHistoryFile = new File(getAppDirectory(), STAR_HISTORY_FILE);
-        if (starHistoryFile.isFile()) {
-            try (FileReader reader = new FileReader(starHistoryFile)) {
-                starHistory = StarHistory.load().fromJsonReader(reader);
-                if (!starHistory.isEmpty()) {
-                    //noinspection UnusedAssignment
-                    prevStars = starHistory.last().getCount();
-                }
+        String saved = _store.getString(stateKey(STAR_HISTORY_FILE));
+        if (saved != null) {
+            starHistory = StarHistory.load().fromJson(saved);
+            if (!starHistory.isEmpty()) {
+                //noinspection UnusedAssignment
+                prevStars = starHistory.last().getCount();
             }
         }
         return prevStars, starHistory;
@@ -152,292 +536,515 @@ public class Traffic {
                 throw new IllegalStateException("Current timestamp predates last recorded star count timestamp: " +
                         "today: '$todayWithTime'' last: '${last.getTimestamp()}'");
             } else {
-                starHistory = StarHistory.create();
                 starHistory.add(StarHistoryItem.create(todayWithTime, stars));
             }
         }
-        try (Writer writer = new FileWriter(new File(getAppDirectory(), STAR_HISTORY_FILE))) {
-            starHistory.write().toJson(writer);
+        _store.putString(stateKey(STAR_HISTORY_FILE), starHistory.write().toJson());
+    }
+
+    /**
+     * Prepends daily counts reconstructed from stargazer timestamps to the recorded history. Recorded counts take
+     * precedence, the backfill only covers days before the first recorded count.
+     */
+    private StarHistory backfillStarHistory(StarBackfill backfill, StarHistory starHistory) throws IOException, InterruptedException {
+        Progress progress = new Progress("Backfilling star history...");
+        SortedMap<LocalDate, Integer> counts;
+        try {
+            counts = backfill.run(progress);
+        } finally {
+            progress.clearProgress();
+        }
+        LocalDate firstRecorded = starHistory == null || starHistory.isEmpty()
+                ? today()
+                : starHistory.first().getTimestamp().toLocalDate();
+        StarHistory merged = StarHistory.create();
+        for (Map.Entry<LocalDate, Integer> entry : counts.headMap(firstRecorded).entrySet()) {
+            merged.add(StarHistoryItem.create(entry.getKey().atTime(23, 59, 59), entry.getValue()));
+        }
+        if (starHistory != null) {
+            merged.addAll(starHistory);
         }
+        return merged;
+    }
+
+    private List<Instant> fetchStarredAt(int page) {
+        List<?> onePage = getOne("$_apiUrl/repos/$_user/$_repo/stargazers?per_page=${StarBackfill.PAGE_SIZE}&page=$page",
+                "application/vnd.github.star+json", body -> (List<?>) STARRED_AT.parse(body));
+        List<Instant> times = new ArrayList<>();
+        for (Object item : onePage) {
+            times.add(Instant.parse((String) ((Bindings) item).get("starred_at")));
+        }
+        return times;
     }
 
     private String makePageViews() {
-        PageViews pageViews = getOne(PageViews.request("https://api.github.com/repos/$_user/$_repo/traffic/views"));
-        return makeCountsChart("Views", pageViews.getViews(), this::viewsPerUser);
+        DailySeries views = getOne("$_apiUrl/repos/$_user/$_repo/traffic/views",
+                body -> DailySeries.parse(body, "views", today()));
+        return _charts.makeCountsChart("Views", views, _charts::viewsPerUser);
     }
 
     private String makeClones() {
-        RepoClones repoClones = getOne(RepoClones.request("https://api.github.com/repos/$_user/$_repo/traffic/clones"));
-        return makeCountsChart("Clones", repoClones.getClones(), (u, t) -> "");
+        DailySeries clones = getOne("$_apiUrl/repos/$_user/$_repo/traffic/clones",
+                body -> DailySeries.parse(body, "clones", today()));
+        return _charts.makeCountsChart("Clones", clones, (u, t) -> "");
+    }
+
+    private String makePopularPaths(PopularHistory history) {
+        PopularPaths pp = getOne("$_apiUrl/repos/$_user/$_repo/traffic/popular/paths", PopularPaths.load()::fromJson);
+        LocalDate today = today();
+        synchronized (history) {
+            for (auto item : pp) {
+                history.record(PopularHistory.Kind.Path, item.getPath(), today, item.getCount(), item.getUniques());
+            }
+        }
+        return _charts.makePathsChart("Top views", MAX_URL, pp, item -> removeRepoPath(item.getPath()));
     }
 
-    private String makePopularPaths() {
-        PopularPaths pp = getOne(PopularPaths.request("https://api.github.com/repos/$_user/$_repo/traffic/popular/paths"));
-        return makePathsChart("Top views", MAX_URL, pp, item -> removeRepoPath(item.getPath()));
+    private String makePopularReferrers(PopularHistory history) {
+        PopularReferrers pr = getOne("$_apiUrl/repos/$_user/$_repo/traffic/popular/referrers", PopularReferrers.load()::fromJson);
+        LocalDate today = today();
+        synchronized (history) {
+            for (auto item : pr) {
+                history.record(PopularHistory.Kind.Referrer, item.getReferrer(), today, item.getCount(), item.getUniques());
+            }
+        }
+        return _charts.makePathsChart("Referring sites", MAX_REFERRER_URL, pr, item -> item.getReferrer());
     }
 
-    private String makePopularReferrers() {
-        PopularReferrers pr = getOne(PopularReferrers.request("https://api.github.com/repos/$_user/$_repo/traffic/popular/referrers"));
-        return makePathsChart("Referring sites", MAX_REFERRER_URL, pr, item -> item.getReferrer());
+    private String makeTrending(PopularHistory history) throws IOException {
+        if (_skipped.contains(Section.Paths) || _skipped.contains(Section.Referrers)) {
+            // a day with only one of the lists recorded would show as a drop in the other
+            throw new Deadline.ExceededException("trending");
+        }
+        history.save();
+        List<PopularHistory.Change> paths = history.changes(PopularHistory.Kind.Path, TRENDING_DAYS);
+        List<PopularHistory.Change> referrers = history.changes(PopularHistory.Kind.Referrer, TRENDING_DAYS);
+        if (paths.isEmpty() && referrers.isEmpty()) {
+            return "";
+        }
+        Tile row = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        row.append(makeChangesList("Trending views", paths, MAX_URL, this::removeRepoPath), new Tile.Margin(0, 0, 0, 4));
+        row.append(makeChangesList("Trending referrers", referrers, MAX_REFERRER_URL, referrer -> referrer));
+        return "$TRENDING_DAYS-day change$DKGREY in 14-day counts$RESET\n" + row.render();
     }
 
-    private String makeCountsChart(String title, List<? extends CountedItem> items, BiFunction<Integer, Integer, String> ratio) {
-        auto totals = calcTotals(items);
-        int digits = String.valueOf(totals.totalUniques).length();
-        int width = digits + 1;
-        double factor = (double) MAX_BAR_LEN / totals.maxCount;
+    private String makeChangesList(String title, List<PopularHistory.Change> changes, int maxUrl, Function<String, String> urlProcessor) {
         StringBuilder sb = new StringBuilder();
-        sb.append("$title$DKGREY unique & total$RESET").append('\n');
-        sb.append(makeCountsChart(items, factor, width, ratio));
-        if (_days > 1) {
-            sb.append(makeTotalsBar(totals.totalUniques, totals.totalCount, factor, width, ratio)).append('\n');
+        sb.append("$title\n");
+        int size = changes.size();
+        int risers = 0;
+        for (int i = 0; i < size && risers < MAX_TRENDING && changes.get(i).delta > 0; i++, risers++) {
+            appendChange(sb, changes.get(i), maxUrl, urlProcessor);
+        }
+        int fallers = 0;
+        for (int i = size - 1; i >= risers && fallers < MAX_TRENDING && changes.get(i).delta < 0; i--, fallers++) {
+            appendChange(sb, changes.get(i), maxUrl, urlProcessor);
         }
         return sb.toString();
     }
 
-    private <P> String makePathsChart(String title, int maxUrl, List<P> items, Function<P, String> urlProcessor) {
-        int maxUniques = 0;
-        int maxCount = 0;
-        //noinspection unchecked
-        List<CountedItem> countedItems = (List<CountedItem>)items;
-        for (CountedItem item : countedItems) {
-            maxUniques = Math.max(maxUniques, item.getUniques());
-            maxCount = Math.max(maxCount, item.getCount());
+    private void appendChange(StringBuilder sb, PopularHistory.Change change, int maxUrl, Function<String, String> urlProcessor) {
+        String url = _charts.clipUrl(urlProcessor.apply(change.name), maxUrl);
+        String delta = change.delta > 0 ? "$GREEN+${change.delta}" : "$RED${change.delta}";
+        sb.append(String.format("%-${maxUrl}s ", url)).append(delta).append(RESET).append('\n');
+    }
+
+    /**
+     * Waits for the repo's stats, see {@link StatsScheduler}, and charts them side by side.
+     */
+    private String makeActivity() throws InterruptedException {
+        Tile row = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        row.append(makeStatChart("Commits", StatsScheduler.Stat.commit_activity, this::makeCommitsChart),
+                new Tile.Margin(0, 0, 0, 4));
+        row.append(makeStatChart("Code frequency", StatsScheduler.Stat.code_frequency, this::makeCodeFrequencyChart),
+                new Tile.Margin(0, 0, 0, 4));
+        row.append(makeStatChart("Top contributors", StatsScheduler.Stat.contributors, this::makeContributorsChart));
+        _stats.forget(_user, _repo);
+        return row.render();
+    }
+
+    private String makeStatChart(String title, StatsScheduler.Stat stat, BiFunction<String, String, String> chart)
+            throws InterruptedException {
+        String body;
+        Deadline deadline = _api.deadline();
+        try {
+            CompletableFuture<String> poll = _stats.fetch(_user, _repo, stat);
+            body = deadline.isBounded() ? poll.get(deadline.remainingMillis(), TimeUnit.MILLISECONDS) : poll.get();
+        } catch (TimeoutException e) {
+            throw new Deadline.ExceededException(title);
+        } catch (ExecutionException | CancellationException e) {
+            if (e.getCause() instanceof Deadline.ExceededException) {
+                throw (Deadline.ExceededException) e.getCause();
+            }
+            // the rest of the report stands without it
+            Throwable cause = e.getCause() == null ? e : e.getCause();
+            return "$title\n${DKGREY}not available: ${cause.getMessage()}$RESET\n";
         }
-        StringBuilder sb = new StringBuilder();
-        sb.append("$title\n");
-        for (CountedItem item : countedItems) {
-            //noinspection unchecked
-            String url = urlProcessor.apply((P)item);
-            makePathUrlBar(sb, url, GREY, maxUniques, maxCount, maxUrl, item.getUniques(), item.getCount());
+        try (Profiler.Stage ignored = Profiler.stage("json binding")) {
+            return chart.apply(title, body);
         }
-        return sb.toString();
     }
 
-    private void makePathUrlBar(StringBuilder sb, String url, @SuppressWarnings("SameParameterValue") String color,
-                                int maxUniques, int maxCount, int maxUrl, int uniques, int count) {
-        url = clipUrl(url, maxUrl);
-        int uniquesWidth = String.valueOf(maxUniques).length();
-        double factorUniques = (double) MAX_UNIQUE_URL_BAR / maxUniques;
-        double factorCount = (double) MAX_COUNT_URL_BAR / maxCount;
+    private String makeCommitsChart(String title, String body) {
+        List<?> weeks = (List<?>) COMMIT_ACTIVITY.parse(body);
+        long[] starts = new long[weeks.size()];
+        int[] commits = new int[weeks.size()];
+        for (int i = 0; i < weeks.size(); i++) {
+            Bindings week = (Bindings) weeks.get(i);
+            starts[i] = ((Number) week.get("week")).longValue();
+            commits[i] = ((Number) week.get("total")).intValue();
+        }
+        return _charts.makeCommitsChart(title, starts, commits);
+    }
 
-        int uniquesBarWidth = (int) (Math.ceil(factorUniques * uniques));
-        sb.append(String.format("%${uniquesWidth}d", uniques))
-                .append(color + HEAVY_BLOCK.repeat(uniquesBarWidth)).append(LIGHT_BLOCK.repeat(MAX_UNIQUE_URL_BAR + 1 - uniquesBarWidth))
-                .append(url).append(LIGHT_BLOCK.repeat(maxUrl - url.length() + (int) (Math.ceil(factorCount * count))) + RESET)
-                .append(count).append('\n');
+    private String makeCodeFrequencyChart(String title, String body) {
+        List<?> weeks = (List<?>) CODE_FREQUENCY.parse(body);
+        long[] starts = new long[weeks.size()];
+        int[] additions = new int[weeks.size()];
+        int[] deletions = new int[weeks.size()];
+        for (int i = 0; i < weeks.size(); i++) {
+            List<?> week = (List<?>) weeks.get(i);
+            starts[i] = ((Number) week.get(0)).longValue();
+            additions[i] = ((Number) week.get(1)).intValue();
+            deletions[i] = Math.abs(((Number) week.get(2)).intValue());
+        }
+        return _charts.makeCodeFrequencyChart(title, starts, additions, deletions);
     }
 
-    private String makeTotalsBar(int totalUniques, int totalCount, double factor, int width, BiFunction<Integer, Integer, String> ratio) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("${DKGREY}Total:   $RESET");
-        sb.append(String.format("%${width}d", totalUniques));
-        if (totalCount == 0) {
-            return sb.toString();
-        }
-        int uniquesWidth = (int) Math.ceil((double) totalUniques * factor / _days);
-        int totalCountWidth = (int) Math.ceil((double) totalCount * factor / _days) - uniquesWidth;
-        //noinspection StringConcatenationInsideStringBufferAppend
-        sb.append(PURPLE + HEAVY_BLOCK.repeat(uniquesWidth) + LIGHT_BLOCK.repeat(totalCountWidth) + RESET + totalCount +
-                  " " + DKGREY + ratio.apply(totalUniques, totalCount) + RESET );
-        return sb.toString();
+    private String makeContributorsChart(String title, String body) {
+        List<Bindings> contributors = new ArrayList<>();
+        for (Object item : (List<?>) CONTRIBUTORS.parse(body)) {
+            contributors.add((Bindings) item);
+        }
+        // GitHub lists them by ascending commits
+        contributors.sort(Comparator.comparingInt((Bindings c) -> ((Number) c.get("total")).intValue()).reversed());
+        int count = Math.min(contributors.size(), MAX_CONTRIBUTORS);
+        List<String> logins = new ArrayList<>();
+        int[] commits = new int[count];
+        for (int i = 0; i < count; i++) {
+            Bindings author = (Bindings) contributors.get(i).get("author");
+            // null for deleted accounts
+            logins.add(author == null ? "ghost" : (String) author.get("login"));
+            commits[i] = ((Number) contributors.get(i).get("total")).intValue();
+        }
+        return _charts.makeContributorsChart(title, logins, commits);
     }
 
-    private String makeCountsChart(List<? extends CountedItem> cloneItems, double factor, int width, BiFunction<Integer, Integer, String> showRatio) {
-        StringBuilder clonesChart = new StringBuilder();
-        DateTimeFormatter dayMonthFormat = DateTimeFormatter.ofPattern("dd MMM");
-        DateTimeFormatter dayOfWeekFormat = DateTimeFormatter.ofPattern("EEEEE");
-        int size = cloneItems.size();
-        LocalDate now = today();
-        LocalDate csrDate = now.minusDays(_days - 1);
-        List<String> bars = new ArrayList<>();
-        for (int i = 0; i < size; i++) {
-            CountedItem item = cloneItems.get(i);
-            if (size - i > _days) {
-                if (item.getTimestamp().toLocalDate().isEqual(csrDate)) {
-                    csrDate = csrDate.plusDays(1);
+    /**
+     * Charts the downloads of the most downloaded releases and, after the first run, of the releases downloaded most
+     * since the last run, see {@link ReleaseTracker}.
+     */
+    private String makeReleases() throws IOException, InterruptedException {
+        ReleaseTracker.Downloads downloads = new ReleaseTracker(_store, _user, _repo).update(this::fetchReleases);
+        Tile row = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        if (downloads.sinceLastRun) {
+            List<ReleaseTracker.Release> gained = new ArrayList<>();
+            for (ReleaseTracker.Release release : downloads.releases) {
+                if (release.gained > 0) {
+                    gained.add(release);
                 }
-                continue;
-            }
-            LocalDate timestamp = item.getTimestamp().toLocalDate();
-            if (timestamp.isBefore(csrDate)) {
-                continue;
-            }
-            int diff = (int) ChronoUnit.DAYS.between(csrDate, timestamp);
-            while (diff > 0) {
-                bars.add(DKGREY + '(' + dayMonthFormat.format(csrDate) + ')' + dayOfWeekFormat.format(csrDate) +
-                        String.format("%${width}d", 0) + "$RESET\n");
-                csrDate = csrDate.plusDays(1);
-                diff--;
-            }
-            csrDate = timestamp.plusDays(1);
-            String color = timestamp.isEqual(now) ? GREEN : BLUE;
-            int uniquesWidth = (int) Math.ceil((double) item.getUniques() * factor);
-            int countWidth = (int) Math.ceil((double) item.getCount() * factor) - uniquesWidth;
-            bars.add(DKGREY + '(' + dayMonthFormat.format(timestamp) + ')' + dayOfWeekFormat.format(timestamp) + RESET +
-                    String.format("%${width}d", item.getUniques()) +
-                    color + HEAVY_BLOCK.repeat(uniquesWidth) + LIGHT_BLOCK.repeat(countWidth) + RESET +
-                    item.getCount() + " " + DKGREY + showRatio.apply(item.getUniques(), item.getCount()) + RESET + "\n");
-        }
-        while (csrDate.isBefore(now) || csrDate.isEqual(now)) {
-            bars.add(DKGREY + '(' + dayMonthFormat.format(csrDate) + ')' + dayOfWeekFormat.format(csrDate) +
-                    String.format("%${width}d", 0) + "$RESET\n");
-            csrDate = csrDate.plusDays(1);
-        }
-        bars.reversed().forEach(clonesChart::append);
-        return clonesChart.toString();
-    }
-
-    private String viewsPerUser(int uniques, int total) {
-        DecimalFormat value = new DecimalFormat("##.#");
-        return value.format((double) total / uniques);
-    }
-
-    private auto calcTotals(List<?> clones) {
-        int totalUniques = 0;
-        int totalCount = 0;
-        int maxCount = 0;
-        int size = clones.size();
-        LocalDate csrDate = today().minusDays(_days - 1);
-        for (int i = 0; i < size; i++) {
-            if (size - i > _days) {
-                continue;
             }
-            CountedItem item = (CountedItem) clones.get(i);
-            LocalDate timestamp = item.getTimestamp().toLocalDate();
-            if (timestamp.isBefore(csrDate)) {
-                continue;
+            gained = TopK.select(gained, Comparator.comparingInt(release -> release.gained), MAX_RELEASES);
+            row.append(makeDownloadsChart("Downloads$DKGREY since last run$RESET", gained, release -> release.gained, GREEN),
+                    new Tile.Margin(0, 0, 0, 4));
+        }
+        List<ReleaseTracker.Release> top =
+                TopK.select(downloads.releases, Comparator.comparingInt(release -> release.downloads), MAX_RELEASES);
+        row.append(makeDownloadsChart("Top releases$DKGREY by downloads$RESET", top, release -> release.downloads, BLUE));
+        return row.render();
+    }
+
+    private String makeDownloadsChart(String title, List<ReleaseTracker.Release> releases,
+                                      ToIntFunction<ReleaseTracker.Release> count, String color) {
+        List<String> tags = new ArrayList<>();
+        int[] downloads = new int[releases.size()];
+        for (int i = 0; i < releases.size(); i++) {
+            tags.add(releases.get(i).tag);
+            downloads[i] = count.applyAsInt(releases.get(i));
+        }
+        return _charts.makeDownloadsChart(title, tags, downloads, color);
+    }
+
+    /**
+     * @return The page, or null if it still has {@code etag}
+     */
+    private ReleaseTracker.Page fetchReleases(int page, String etag) {
+        String url = "$_apiUrl/repos/$_user/$_repo/releases?per_page=${ReleaseTracker.PAGE_SIZE}&page=$page";
+        GitHubApi.Response response = getResponse(url, null, etag);
+        if (response.isNotModified()) {
+            return null;
+        }
+        List<ReleaseTracker.Asset> assets = new ArrayList<>();
+        try (Profiler.Stage ignored = Profiler.stage("json binding")) {
+            for (Object item : (List<?>) RELEASE_ASSETS.parse(response.body)) {
+                Releases.ReleasesItem release = (Releases.ReleasesItem) item;
+                for (Object asset : release.getAssets()) {
+                    // ids outgrow int, read the numbers as parsed
+                    Bindings bindings = (Bindings) asset;
+                    assets.add(new ReleaseTracker.Asset(release.getTag_name(), ((Number) bindings.get("id")).longValue(),
+                            ((Number) bindings.get("download_count")).intValue()));
+                }
             }
-            totalUniques += item.getUniques();
-            totalCount += item.getCount();
-            maxCount = Math.max(maxCount, item.getCount());
         }
-        return totalUniques, totalCount, maxCount;
+        return new ReleaseTracker.Page(response.header("ETag"), response.lastPage(), assets);
     }
 
     String showStargazerDiff() throws IOException, InterruptedException {
-        LinkedHashSet<String> nowGazers = fetchStargazers();
-        File stargazersFile = new File(getAppDirectory(), "stargazers.txt");
-        String result = "";
-        if (stargazersFile.isFile()) {
-            List<String> lost = new ArrayList<>();
-            List<String> gained = new ArrayList<>();
-            String prev;
-            try (FileReader readerPrev = new FileReader(stargazersFile)) {
-                prev = StreamUtil.getContent(readerPrev);
-            }
-            Files.copy(stargazersFile.toPath(),
-                    Paths.get(getAppDirectory().getAbsolutePath(), "stargazers_prior.txt"), REPLACE_EXISTING);
-            StringTokenizer tokPrev = new StringTokenizer(prev, "\n");
-            Set<String> prevGazers = new HashSet<>();
-            int prevPos = 0;
-            while (tokPrev.hasMoreTokens()) {
-                prevPos++;
-                String gazer = tokPrev.nextToken();
-                prevGazers.add(gazer);
-                if (!nowGazers.contains(gazer)) {
-                    lost.add("#$prevPos $gazer");
+        LinkedHashSet<String> nowGazers;
+        // updated by the webhook receiver while the report runs
+        LiveStargazers live = new LiveStargazers(_store.writeThrough(), _user, _repo);
+        LiveStargazers.Snapshot snapshot = live.read();
+        if (snapshot != null && !snapshot.isReconcileDue(_reconcileEvery, _stars)) {
+            // kept current by webhook events
+            nowGazers = snapshot.gazers;
+        } else {
+            Instant scanned = Instant.now();
+            StargazerScan scan = new StargazerScan(_store.writeThrough(), stateKey(StargazerScan.CHECKPOINT_FILE),
+                    this::fetchStargazers);
+            try (Profiler.Stage ignored = Profiler.stage("stargazers fetch")) {
+                // the report shows a placeholder instead of the progress bar
+                Progress progress = _progressive ? null : new Progress("Fetching stargazers...");
+                try {
+                    nowGazers = scan.run(progress);
+                } finally {
+                    if (progress != null) {
+                        progress.clearProgress();
+                    }
                 }
             }
-            for (String gazer : nowGazers) {
-                if (!prevGazers.contains(gazer)) {
-                    gained.add(gazer);
-                }
+            if (snapshot != null) {
+                live.reconcile(nowGazers, scanned);
+            }
+            String diff;
+            try (Profiler.Stage ignored = Profiler.stage("stargazers diff")) {
+                diff = showStargazerDiff(nowGazers);
             }
+            scan.complete(_store);
+            return diff;
+        }
+        try (Profiler.Stage ignored = Profiler.stage("stargazers diff")) {
+            return showStargazerDiff(nowGazers);
+        }
+    }
+
+    private String showStargazerDiff(LinkedHashSet<String> nowGazers) throws IOException, InterruptedException {
+        String stargazersKey = stateKey("stargazers.txt");
+        String result = "";
+        String prev = _store.getString(stargazersKey);
+        if (prev != null) {
+            _store.putString(stateKey("stargazers_prior.txt"), prev);
+            StargazerDiff diff = StargazerDiff.compute(prev, nowGazers);
+            List<String> gained = diff.getGained();
+            List<String> lost = diff.getLost();
             Tile parent = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
             if (!gained.isEmpty()) {
-                parent.append(makeGazersList(gained, "New stars", "+", GREEN), new Tile.Margin(0, 0, 0, 2));
+                Map<String, ProfileCache.Profile> profiles;
+                try {
+                    profiles = fetchProfiles(gained);
+                } catch (Deadline.ExceededException e) {
+                    // the list stands without them, the scan is not lost for their sake
+                    profiles = Collections.emptyMap();
+                }
+                parent.append(makeGazersList(gained, "New stars", "+", GREEN, profiles), new Tile.Margin(0, 0, 0, 2));
             }
             if (!lost.isEmpty()) {
-                parent.append(makeGazersList(lost, "Lost stars", "-", RED));
+                parent.append(makeGazersList(lost, "Lost stars", "-", RED, Collections.emptyMap()));
             }
             result = parent.render();
         }
-        //noinspection ResultOfMethodCallIgnored
-        getAppDirectory().mkdirs();
-        try (FileWriter writer = new FileWriter(stargazersFile)) {
-            for (String gazer : nowGazers) {
-                writer.write(gazer + "\n");
-            }
+        StringBuilder sb = new StringBuilder();
+        for (String gazer : nowGazers) {
+            sb.append(gazer).append('\n');
         }
+        _store.putString(stargazersKey, sb.toString());
         return result;
     }
 
-    private LinkedHashSet<String> fetchStargazers() throws InterruptedException {
-        Progress progress = new Progress("Fetching stargazers...");
-        LinkedHashSet<String> nowGazers = new LinkedHashSet<>();
-        Thread thread = new Thread(() -> {
-            Stargazers onePage;
-            int page = 0;
-            int pageSize = 100; // max
-            do {
-                page++;
-                onePage = getOne(Stargazers.request("https://api.github.com/repos/$_user/$_repo/stargazers?per_page=$pageSize&page=$page"));
-                for (auto item : onePage.asOption0()) {
-                    String gazer = item.getLogin();
-                    nowGazers.add(gazer);
-                }
-            } while (!onePage.asOption0().isEmpty());
-        });
-        thread.start();
-        while(thread.isAlive()) {
-            progress.bumpProgress();
-            //noinspection BusyWait
-            Thread.sleep(250);
+    /**
+     * @return Lists of forks created and deleted since the last run, empty if none or on the first run
+     */
+    String showForkDiff() throws IOException {
+        if (_skipped.contains(Section.Stats)) {
+            // without the fork count, a full fork scan would be recorded against an unknown count
+            throw new Deadline.ExceededException("forks");
+        }
+        ForkTracker.Diff diff = new ForkTracker(_store, _user, _repo).update(_forks, this::fetchForks);
+        if (diff.gained.isEmpty() && diff.lost.isEmpty()) {
+            return "";
+        }
+        Tile parent = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        if (!diff.gained.isEmpty()) {
+            parent.append(makeGazersList(diff.gained, "New forks", "+", GREEN, Collections.emptyMap()), new Tile.Margin(0, 0, 0, 2));
         }
-        progress.clearProgress();
-        return nowGazers;
+        if (!diff.lost.isEmpty()) {
+            parent.append(makeGazersList(diff.lost, "Deleted forks", "-", RED, Collections.emptyMap()));
+        }
+        return parent.render();
+    }
+
+    private List<String> fetchForks(int page) {
+        List<?> onePage = getOne("$_apiUrl/repos/$_user/$_repo/forks?sort=newest&per_page=${ForkTracker.PAGE_SIZE}&page=$page",
+                body -> (List<?>) FORK_NAMES.parse(body));
+        List<String> forks = new ArrayList<>();
+        for (Object item : onePage) {
+            forks.add((String) ((Bindings) item).get("full_name"));
+        }
+        return forks;
     }
 
-    private String makeGazersList(List<String> gazers, String title, String bullet, String color) {
+    /**
+     * @return The stargazer and fork changes side by side
+     */
+    private static String makeDiffs(String stargazers, String forks) {
+        if (forks.isEmpty()) {
+            return stargazers;
+        }
+        Tile row = new Tile(Tile.Layout.Row, Tile.Margin.Empty);
+        if (!stargazers.isEmpty()) {
+            row.append(stargazers, new Tile.Margin(0, 0, 0, 4));
+        }
+        row.append(forks);
+        return row.render();
+    }
+
+    private List<String> fetchStargazers(int page) {
+        // the Stargazers type is a union of page shapes without an element type to cast to, read the bindings
+        List<?> onePage = getOne("$_apiUrl/repos/$_user/$_repo/stargazers?per_page=${StargazerScan.PAGE_SIZE}&page=$page",
+                body -> (List<?>) STARGAZER_LOGINS.parse(body));
+        List<String> gazers = new ArrayList<>();
+        for (Object item : onePage) {
+            gazers.add((String) ((Bindings) item).get("login"));
+        }
+        return gazers;
+    }
+
+    /**
+     * Fetches profiles for the gazers that will be listed, cached profiles are shared across repos.
+     */
+    private Map<String, ProfileCache.Profile> fetchProfiles(List<String> gazers) throws IOException, InterruptedException {
+        List<String> listed = gazers.subList(0, Math.min(gazers.size(), MAX_GAZERS));
+        if (_profiles != null) {
+            return _profiles.fetchAll(listed);
+        }
+        try (ProfileFetcher fetcher = profileFetcher(_api, _apiUrl, _store)) {
+            return fetcher.fetchAll(listed);
+        }
+    }
+
+    /**
+     * @param store Where the profile cache is loaded from, and saved to when the fetcher is closed
+     * @return A fetcher of stargazer profiles over the cache, to share between reports
+     */
+    static ProfileFetcher profileFetcher(GitHubApi api, String apiUrl, StateStore store) throws IOException {
+        return new ProfileFetcher(new ProfileCache(store).load(), login -> fetchProfile(api, apiUrl, login));
+    }
+
+    private static ProfileCache.Profile fetchProfile(GitHubApi api, String apiUrl, String login) {
+        String url = "$apiUrl/users/$login";
+        GitHubApi.Response response = request(api, url, null, null);
+        if (response.status == 404) {
+            // account deleted or renamed since starring
+            return null;
+        }
+        checkStatus(response, url, null);
+        try (Profiler.Stage ignored = Profiler.stage("json binding")) {
+            return ProfileFetcher.toProfile((UserProfile) USER_PROFILE.parse(response.body));
+        }
+    }
+
+    private String makeGazersList(List<String> gazers, String title, String bullet, String color,
+                                  Map<String, ProfileCache.Profile> profiles) {
         StringBuilder sb = new StringBuilder();
         if (!gazers.isEmpty()) {
             sb.append("$title\n");
             int count = gazers.size();
-            for (int i = 0; i < count && i < 10; i++) {
+            for (int i = 0; i < count && i < MAX_GAZERS; i++) {
                 String gazer = gazers.get(i);
-                sb.append("$color$bullet $gazer\n$RESET");
+                sb.append("$color$bullet $gazer$RESET");
+                ProfileCache.Profile profile = profiles.get(gazer);
+                if (profile != null) {
+                    sb.append(makeProfileSummary(profile));
+                }
+                sb.append('\n');
             }
-            if (count > 10) {
-                sb.append("$bullet ...and ${count-10} more\n");
+            if (count > MAX_GAZERS) {
+                sb.append("$bullet ...and ${count-MAX_GAZERS} more\n");
             }
         }
         return sb.toString();
     }
 
-    private String count(int count, String label) {
+    private String makeProfileSummary(ProfileCache.Profile profile) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(" $DKGREY(").append(abbreviate(profile.followers)).append(profile.followers == 1 ? " follower" : " followers")
+                .append(", ").append(count(profile.publicRepos, "repo")).append(DKGREY);
+        if (!profile.company.isEmpty()) {
+            sb.append(", ").append(profile.company);
+        }
+        return sb.append(")$RESET").toString();
+    }
+
+    private static String abbreviate(int count) {
+        if (count < 1000) {
+            return String.valueOf(count);
+        }
+        DecimalFormat value = new DecimalFormat("#.#");
+        return count < 1_000_000 ? value.format(count / 1000.0) + "k" : value.format(count / 1_000_000.0) + "m";
+    }
+
+    static String count(int count, String label) {
         if (count != 1) {
             label += "s";
         }
         return "$count $DKGREY$label$RESET";
     }
 
-    private <T> T getOne(Requester<T> requester) {
+    private <T> T getOne(String url, Function<String, T> binder) {
+        return getOne(url, null, binder);
+    }
+
+    private <T> T getOne(String url, String accept, Function<String, T> binder) {
+        GitHubApi.Response response = getResponse(url, accept, null);
+        try (Profiler.Stage ignored = Profiler.stage("json binding")) {
+            return binder.apply(response.body);
+        }
+    }
+
+    /**
+     * @param etag For a conditional request, see {@link GitHubApi#get(String, String, String)}
+     * @return A successful or, with an {@code etag}, not modified response
+     */
+    private GitHubApi.Response getResponse(String url, String accept, String etag) {
+        return checkStatus(request(_api, url, accept, etag), url, etag);
+    }
+
+    /**
+     * @return The response, which may have any status
+     */
+    private static GitHubApi.Response request(GitHubApi api, String url, String accept, String etag) {
         try {
-            return requester
-                    .withHeader("X-GitHub-Api-Version", "2022-11-28")
-                    .withBearerAuthorization(_token)
-                    .getOne();
-        } catch(RuntimeException e) {
-            if (e.getCause() instanceof IOException) {
-                if (e.getCause().getMessage().contains("HTTP response code: 401")) {
-                    throw new ReportedException("Unauthorized access for -token: $_token", e);
-                }
-                throw new ReportedException("-user and/or -repo not found: ${e.getCause().getMessage()}", e);
-            }
-            throw e;
+            return api.get(url, accept, etag);
+        } catch (UnknownHostException e) {
+            throw new ReportedException("Unknown host: ${e.getMessage()}. Check internet connection.", e);
+        } catch (IOException e) {
+            throw new ReportedException("Request failed: ${e.getMessage()} for URL: $url", e);
         }
     }
 
-    private String clipUrl(String url, int maxUrl) {
-        if (url.length() > maxUrl) {
-            url = url.substring(url.length() - maxUrl);
-            int sep = url.indexOf('/');
-            if (sep > 0) {
-                url = url.substring(sep + 1);
-            }
+    /**
+     * @return The response if successful or, with an {@code etag}, not modified
+     */
+    private static GitHubApi.Response checkStatus(GitHubApi.Response response, String url, String etag) {
+        if (response.status == 401) {
+            throw new ReportedException("Unauthorized access for token: ${response.token.masked()}", null);
         }
-        return url;
+        if (response.status == 404) {
+            throw new ReportedException("-user and/or -repo not found: HTTP response code: ${response.status} for URL: $url", null);
+        }
+        if (!response.isSuccess() && !(etag != null && response.isNotModified())) {
+            throw new ReportedException("Request failed: HTTP response code: ${response.status} for URL: $url", null);
+        }
+        return response;
     }
 
     private String removeRepoPath(String url) {
@@ -449,7 +1056,15 @@ public class Traffic {
         return url;
     }
 
-    private static LocalDate today() {
+    /**
+     * @return The {@code -api} URL without a trailing slash
+     */
+    static String apiUrl(Map<Arg, String> processedArgs) {
+        String apiUrl = processedArgs.get(Arg.api);
+        return apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+    }
+
+    static LocalDate today() {
         // the github api works off UTC time
         return LocalDate.now(ZoneOffset.UTC);
     }
@@ -459,14 +1074,22 @@ public class Traffic {
         return LocalDateTime.now(ZoneOffset.UTC);
     }
 
-    private File getAppDirectory() {
-        return new File(new File(System.getProperty("user.home"), "github-traffic"), "$_user${File.separator}$_repo");
+    private String stateKey(String name) {
+        return StateStore.key(_user, _repo, name);
+    }
+
+    private enum Section {
+        Stats("Stats"), Views("Views"), Clones("Clones"), Paths("Top views"), Referrers("Referring sites"),
+        Trending("Trending"), Activity("Activity"), Releases("Releases"), Stargazers("Stargazers"), Forks("Forks");
+
+        final String title;
+
+        Section(String title) {
+            this.title = title;
+        }
     }
 
-    @Structural
-    interface CountedItem {
-        LocalDateTime getTimestamp();
-        int getUniques();
-        int getCount();
+    private interface SectionMaker {
+        String make() throws IOException, InterruptedException;
     }
 }
@@ -0,0 +1,267 @@
+package manifold.github.traffic;
+
+import github.api.*;
+import manifold.ext.rt.api.auto;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Thread-safe client for a repo's traffic, for embedding in a service rather than printing a report. Any number of
+ * threads may ask about any number of repos.
+ * <p/>
+ * Each section of a repo's traffic is fetched and cached separately:
+ * <ul>
+ * <li>Concurrent requests for a section share one GitHub request.</li>
+ * <li>A cached section is served until it is older than the TTL. After that it is still served right away, and a
+ * background request refreshes it. Once the cache is warm, callers don't wait on GitHub. If a refresh fails, the
+ * stale section stays cached and the next request retries. {@link TrafficReport#getFetchedAt()} tells how old the
+ * data is.</li>
+ * <li>At most {@link #MAX_SECTIONS} sections are cached, the least recently requested are dropped beyond that and
+ * wait on GitHub when requested again.</li>
+ * </ul>
+ * Unlike the CLI report, the client keeps no state on disk, so star and fork diffs are not part of it.
+ * <pre>
+ * try (TrafficClient client = new TrafficClient(new GitHubApi(TokenPool.load(null, "tokens.txt")),
+ *         "https://api.github.com", Duration.ofMinutes(10))) {
+ *     TrafficReport report = client.report("joeuser", "joeswidget").get();
+ *     ...
+ * }
+ * </pre>
+ */
+public class TrafficClient implements AutoCloseable {
+    private static final int THREADS = 8;
+    /** the sections of a thousand repos */
+    public static final int MAX_SECTIONS = 5_000;
+
+    private enum Section {
+        stats, views, clones, paths, referrers
+    }
+
+    private final GitHubApi _api;
+    private final String _apiUrl;
+    private final Duration _ttl;
+    private final ExecutorService _executor;
+    private final Map<String, Cached<?>> _cache;
+    private final Map<String, CompletableFuture<Cached<?>>> _inFlight;
+
+    /**
+     * @param ttl How long a section is fresh, after which it is refreshed in the background
+     */
+    public TrafficClient(GitHubApi api, String apiUrl, Duration ttl) {
+        this(api, apiUrl, ttl, THREADS);
+    }
+
+    /**
+     * @param threads How many GitHub requests may be in flight at once
+     */
+    public TrafficClient(GitHubApi api, String apiUrl, Duration ttl, int threads) {
+        this(api, apiUrl, ttl, threads, MAX_SECTIONS);
+    }
+
+    /**
+     * @param maxSections How many sections are cached, five per repo
+     */
+    public TrafficClient(GitHubApi api, String apiUrl, Duration ttl, int threads, int maxSections) {
+        _api = api;
+        _apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        _ttl = ttl;
+        _executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "traffic-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // access order, reads move a section to the end too, so every access is under the lock
+        _cache = Collections.synchronizedMap(new LinkedHashMap<String, Cached<?>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached<?>> eldest) {
+                return size() > maxSections;
+            }
+        });
+        _inFlight = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return All sections of the repo's traffic, fetched concurrently
+     */
+    public CompletableFuture<TrafficReport> report(String user, String repo) {
+        CompletableFuture<Cached<TrafficReport.Stats>> stats = get(user, repo, Section.stats, this::fetchStats);
+        CompletableFuture<Cached<DailySeries>> views = get(user, repo, Section.views, this::fetchViews);
+        CompletableFuture<Cached<DailySeries>> clones = get(user, repo, Section.clones, this::fetchClones);
+        CompletableFuture<Cached<List<TrafficReport.Popular>>> paths = get(user, repo, Section.paths, this::fetchPaths);
+        CompletableFuture<Cached<List<TrafficReport.Popular>>> referrers = get(user, repo, Section.referrers, this::fetchReferrers);
+        return CompletableFuture.allOf(stats, views, clones, paths, referrers).thenApply(v ->
+                new TrafficReport(user, repo, stats.join().value, views.join().value, clones.join().value,
+                        paths.join().value, referrers.join().value,
+                        oldest(stats.join(), views.join(), clones.join(), paths.join(), referrers.join())));
+    }
+
+    public CompletableFuture<TrafficReport.Stats> stats(String user, String repo) {
+        return get(user, repo, Section.stats, this::fetchStats).thenApply(cached -> cached.value);
+    }
+
+    public CompletableFuture<DailySeries> views(String user, String repo) {
+        return get(user, repo, Section.views, this::fetchViews).thenApply(cached -> cached.value);
+    }
+
+    public CompletableFuture<DailySeries> clones(String user, String repo) {
+        return get(user, repo, Section.clones, this::fetchClones).thenApply(cached -> cached.value);
+    }
+
+    public CompletableFuture<List<TrafficReport.Popular>> paths(String user, String repo) {
+        return get(user, repo, Section.paths, this::fetchPaths).thenApply(cached -> cached.value);
+    }
+
+    public CompletableFuture<List<TrafficReport.Popular>> referrers(String user, String repo) {
+        return get(user, repo, Section.referrers, this::fetchReferrers).thenApply(cached -> cached.value);
+    }
+
+    /**
+     * Drops the repo's cached sections, the next request waits on GitHub.
+     */
+    public void invalidate(String user, String repo) {
+        for (Section section : Section.values()) {
+            _cache.remove(key(user, repo, section));
+        }
+    }
+
+    @Override
+    public void close() {
+        _executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<Cached<T>> get(String user, String repo, Section section, Fetcher<T> fetcher) {
+        String key = key(user, repo, section);
+        @SuppressWarnings("unchecked")
+        Cached<T> cached = (Cached<T>) _cache.get(key);
+        if (cached == null) {
+            return load(key, () -> fetcher.fetch(user, repo));
+        }
+        if (cached.isStale(_ttl)) {
+            // failures keep the stale section, the next request tries again
+            load(key, () -> fetcher.fetch(user, repo));
+        }
+        return CompletableFuture.completedFuture(cached);
+    }
+
+    /**
+     * Fetches the section, unless a fetch is already in flight, in which case the caller shares it.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<Cached<T>> load(String key, Callable<T> fetch) {
+        CompletableFuture<Cached<?>> created = new CompletableFuture<>();
+        CompletableFuture<Cached<?>> inFlight = _inFlight.putIfAbsent(key, created);
+        if (inFlight != null) {
+            return (CompletableFuture<Cached<T>>) (CompletableFuture<?>) inFlight;
+        }
+        try {
+            _executor.execute(() -> {
+                try {
+                    Cached<T> loaded = new Cached<>(fetch.call(), Instant.now());
+                    _cache.put(key, loaded);
+                    // cached before leaving flight, so a request never finds neither
+                    _inFlight.remove(key, created);
+                    created.complete(loaded);
+                } catch (Throwable e) {
+                    _inFlight.remove(key, created);
+                    created.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            _inFlight.remove(key, created);
+            created.completeExceptionally(e);
+        }
+        return (CompletableFuture<Cached<T>>) (CompletableFuture<?>) created;
+    }
+
+    private TrafficReport.Stats fetchStats(String user, String repo) {
+        Repo repoData = getOne("$_apiUrl/repos/$user/$repo", body -> (Repo) Traffic.REPO_STATS.parse(body));
+        OpenPrCount openPrCount = getOne("$_apiUrl/search/issues?q=repo:$user/$repo%20is:pr%20is:open&per_page=1",
+                OpenPrCount.load()::fromJson);
+        int openPrs = openPrCount.getTotal_count();
+        return new TrafficReport.Stats(repoData.getStargazers_count(), repoData.getSubscribers_count(),
+                repoData.getForks_count(), openPrs, repoData.getOpen_issues() - openPrs);
+    }
+
+    private DailySeries fetchViews(String user, String repo) {
+        return getOne("$_apiUrl/repos/$user/$repo/traffic/views", body -> DailySeries.parse(body, "views", Traffic.today()));
+    }
+
+    private DailySeries fetchClones(String user, String repo) {
+        return getOne("$_apiUrl/repos/$user/$repo/traffic/clones", body -> DailySeries.parse(body, "clones", Traffic.today()));
+    }
+
+    private List<TrafficReport.Popular> fetchPaths(String user, String repo) {
+        PopularPaths pp = getOne("$_apiUrl/repos/$user/$repo/traffic/popular/paths", PopularPaths.load()::fromJson);
+        List<TrafficReport.Popular> paths = new ArrayList<>();
+        for (auto item : pp) {
+            paths.add(new TrafficReport.Popular(item.getPath(), item.getCount(), item.getUniques()));
+        }
+        return Collections.unmodifiableList(paths);
+    }
+
+    private List<TrafficReport.Popular> fetchReferrers(String user, String repo) {
+        PopularReferrers pr = getOne("$_apiUrl/repos/$user/$repo/traffic/popular/referrers", PopularReferrers.load()::fromJson);
+        List<TrafficReport.Popular> referrers = new ArrayList<>();
+        for (auto item : pr) {
+            referrers.add(new TrafficReport.Popular(item.getReferrer(), item.getCount(), item.getUniques()));
+        }
+        return Collections.unmodifiableList(referrers);
+    }
+
+    private <T> T getOne(String url, Function<String, T> binder) {
+        GitHubApi.Response response;
+        try {
+            response = _api.get(url, null);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (response.status == 401) {
+            throw new ReportedException("Unauthorized access for token: ${response.token.masked()}", null);
+        }
+        if (!response.isSuccess()) {
+            throw new ReportedException("HTTP response code: ${response.status} for URL: $url", null);
+        }
+        return binder.apply(response.body);
+    }
+
+    private static Instant oldest(Cached<?>... sections) {
+        Instant oldest = Instant.MAX;
+        for (Cached<?> section : sections) {
+            if (section.fetchedAt.isBefore(oldest)) {
+                oldest = section.fetchedAt;
+            }
+        }
+        return oldest;
+    }
+
+    private static String key(String user, String repo, Section section) {
+        return "$user/$repo/$section";
+    }
+
+    private interface Fetcher<T> {
+        T fetch(String user, String repo);
+    }
+
+    private static class Cached<T> {
+        final T value;
+        final Instant fetchedAt;
+
+        Cached(T value, Instant fetchedAt) {
+            this.value = value;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isStale(Duration ttl) {
+            return fetchedAt.plus(ttl).isBefore(Instant.now());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package manifold.github.traffic;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A repo's traffic as {@link TrafficClient} returns it. Immutable, safe to share between threads.
+ */
+public final class TrafficReport {
+    private final String _user;
+    private final String _repo;
+    private final Stats _stats;
+    private final DailySeries _views;
+    private final DailySeries _clones;
+    private final List<Popular> _paths;
+    private final List<Popular> _referrers;
+    private final Instant _fetchedAt;
+
+    TrafficReport(String user, String repo, Stats stats, DailySeries views, DailySeries clones,
+                  List<Popular> paths, List<Popular> referrers, Instant fetchedAt) {
+        _user = user;
+        _repo = repo;
+        _stats = stats;
+        _views = views;
+        _clones = clones;
+        _paths = paths;
+        _referrers = referrers;
+        _fetchedAt = fetchedAt;
+    }
+
+    public String getUser() {
+        return _user;
+    }
+
+    public String getRepo() {
+        return _repo;
+    }
+
+    public Stats getStats() {
+        return _stats;
+    }
+
+    /**
+     * @return Views per day over the last 14 days and today
+     */
+    public DailySeries getViews() {
+        return _views;
+    }
+
+    /**
+     * @return Clones per day over the last 14 days and today
+     */
+    public DailySeries getClones() {
+        return _clones;
+    }
+
+    /**
+     * @return The most viewed paths of the last 14 days, the path as the name
+     */
+    public List<Popular> getPaths() {
+        return _paths;
+    }
+
+    /**
+     * @return The top referring sites of the last 14 days
+     */
+    public List<Popular> getReferrers() {
+        return _referrers;
+    }
+
+    /**
+     * @return When the oldest part of the report was fetched from GitHub
+     */
+    public Instant getFetchedAt() {
+        return _fetchedAt;
+    }
+
+    public static final class Stats {
+        private final int _stars;
+        private final int _watchers;
+        private final int _forks;
+        private final int _openPullRequests;
+        private final int _openIssues;
+
+        Stats(int stars, int watchers, int forks, int openPullRequests, int openIssues) {
+            _stars = stars;
+            _watchers = watchers;
+            _forks = forks;
+            _openPullRequests = openPullRequests;
+            _openIssues = openIssues;
+        }
+
+        public int getStars() {
+            return _stars;
+        }
+
+        public int getWatchers() {
+            return _watchers;
+        }
+
+        public int getForks() {
+            return _forks;
+        }
+
+        public int getOpenPullRequests() {
+            return _openPullRequests;
+        }
+
+        /**
+         * @return Open issues, not counting pull requests
+         */
+        public int getOpenIssues() {
+            return _openIssues;
+        }
+    }
+
+    /**
+     * A popular path or referrer, chartable with {@link Charts#makePathsChart}.
+     */
+    public static final class Popular {
+        private final String _name;
+        private final int _count;
+        private final int _uniques;
+
+        Popular(String name, int count, int uniques) {
+            _name = name;
+            _count = count;
+            _uniques = uniques;
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        public int getCount() {
+            return _count;
+        }
+
+        public int getUniques() {
+            return _uniques;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package manifold.github.traffic;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages writes in memory and commits them to the store underneath in the background, see
+ * {@link StateStore#writeBehind}. Reads see the staged writes, and the report path never waits on the disk. A run that
+ * fails {@link #discard discards} what it staged and a run that is killed commits nothing, the state stays that of the
+ * last complete run rather than part of this one.
+ * <p/>
+ * {@link #flush()} hands what is staged to a committer thread, which commits it with {@link StateStore#commit}. Batches
+ * flushed while a commit runs are merged and committed together, so a worker reporting on many repos pays for one
+ * round of fsyncs per commit rather than one per write. A flush returns a future of its commit, for what must not be
+ * done before the state is on disk. Closing flushes, waits for the commits and closes the store underneath.
+ * <p/>
+ * Appends are staged as the whole new value. Checkpoints, which must outlast a failed run, and state other processes
+ * update while the run goes on, go to {@link #writeThrough()} instead.
+ */
+final class WriteBehindStore implements StateStore {
+    // stages a delete, compared by identity
+    private static final byte[] DELETED = new byte[0];
+
+    private final StateStore _store;
+    private final ExecutorService _committer;
+    private Map<String, byte[]> _staged; // guarded by this
+    // flushed and not committed yet, oldest first
+    private final Deque<Batch> _flushed; // guarded by this
+    private IOException _failure; // guarded by this
+
+    WriteBehindStore(StateStore store) {
+        _store = store;
+        _committer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "state-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _staged = new LinkedHashMap<>();
+        _flushed = new ArrayDeque<>();
+    }
+
+    @Override
+    public byte[] get(String key) throws IOException {
+        synchronized (this) {
+            byte[] value = pending(key);
+            if (value != null) {
+                return value == DELETED ? null : value.clone();
+            }
+        }
+        return _store.get(key);
+    }
+
+    @Override
+    public synchronized void put(String key, byte[] value) {
+        _staged.put(key, value.clone());
+    }
+
+    @Override
+    public synchronized void append(String key, byte[] data) throws IOException {
+        byte[] value = pending(key);
+        if (value == null) {
+            value = _store.get(key);
+        }
+        if (value == null || value == DELETED) {
+            _staged.put(key, data.clone());
+        } else {
+            byte[] appended = Arrays.copyOf(value, value.length + data.length);
+            System.arraycopy(data, 0, appended, value.length, data.length);
+            _staged.put(key, appended);
+        }
+    }
+
+    @Override
+    public synchronized void delete(String key) {
+        _staged.put(key, DELETED);
+    }
+
+    /**
+     * Stages the changes together, they are committed in the same commit.
+     */
+    @Override
+    public synchronized void commit(Map<String, byte[]> changes) {
+        for (Map.Entry<String, byte[]> change : changes.entrySet()) {
+            _staged.put(change.getKey(), change.getValue() == null ? DELETED : change.getValue().clone());
+        }
+    }
+
+    @Override
+    public StateStore writeThrough() {
+        return _store;
+    }
+
+    /**
+     * Commits the writes staged so far in the background, e.g. once a repo's report is done.
+     *
+     * @return Completes once the writes staged so far and every earlier flush are committed, or exceptionally if their
+     * commit failed
+     * @throws IOException If an earlier commit failed
+     */
+    synchronized CompletableFuture<Void> flush() throws IOException {
+        if (_failure != null) {
+            throw _failure;
+        }
+        if (_staged.isEmpty()) {
+            // batches are committed in order, the last one is committed with or after the others
+            return _flushed.isEmpty() ? CompletableFuture.completedFuture(null) : _flushed.getLast().committed;
+        }
+        Batch batch = new Batch(_staged);
+        _flushed.addLast(batch);
+        _staged = new LinkedHashMap<>();
+        _committer.execute(this::commitFlushed);
+        return batch.committed;
+    }
+
+    /**
+     * Drops the writes staged since the last flush, e.g. of a report that failed, so they are never committed.
+     */
+    synchronized void discard() {
+        _staged = new LinkedHashMap<>();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            _committer.shutdown();
+            while (!_committer.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Waiting for state to be committed...");
+            }
+            synchronized (this) {
+                if (_failure != null) {
+                    throw _failure;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while committing state");
+        } finally {
+            _committer.shutdownNow();
+            _store.close();
+        }
+    }
+
+    /**
+     * Commits every flushed batch as one commit, later batches overriding earlier ones.
+     */
+    private void commitFlushed() {
+        Map<String, byte[]> changes = new LinkedHashMap<>();
+        List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<>(_flushed);
+            for (Batch batch : batches) {
+                for (Map.Entry<String, byte[]> change : batch.changes.entrySet()) {
+                    changes.put(change.getKey(), change.getValue() == DELETED ? null : change.getValue());
+                }
+            }
+        }
+        if (batches.isEmpty()) {
+            // committed with an earlier batch
+            return;
+        }
+        IOException failure = null;
+        try {
+            _store.commit(changes);
+        } catch (IOException | RuntimeException e) {
+            failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            synchronized (this) {
+                if (_failure == null) {
+                    _failure = failure;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                for (int i = 0; i < batches.size(); i++) {
+                    _flushed.removeFirst();
+                }
+            }
+        }
+        // outside the lock, what waits on a commit may read the store
+        for (Batch batch : batches) {
+            if (failure == null) {
+                batch.committed.complete(null);
+            } else {
+                batch.committed.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * @return The staged or flushed value not committed yet, {@link #DELETED} if deleted, null if none
+     */
+    private byte[] pending(String key) {
+        byte[] value = _staged.get(key);
+        if (value != null) {
+            return value;
+        }
+        for (Iterator<Batch> batches = _flushed.descendingIterator(); batches.hasNext(); ) {
+            value = batches.next().changes.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static class Batch {
+        final Map<String, byte[]> changes;
+        final CompletableFuture<Void> committed;
+
+        Batch(Map<String, byte[]> changes) {
+            this.changes = changes;
+            committed = new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package github.traffic;
+
+import manifold.github.traffic.Charts;
+import manifold.github.traffic.DailySeries;
+import manifold.github.traffic.StargazerDiff;
+import manifold.github.traffic.Tile;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when a report hot path allocates more per operation than its recorded budget. Many reports run in one JVM
+ * (see ShardWorker), so garbage per report matters as much as time.
+ * <p/>
+ * Bytes allocated per operation are measured with the per-thread allocation counter of
+ * {@code com.sun.management.ThreadMXBean} on fixed synthetic inputs, after a warmup so the measurement reflects
+ * compiled code. String layout and library internals differ between Java versions, so budgets are recorded per version
+ * in {@code src/test/resources/github/traffic/allocation-budgets-<version>.properties}, with some headroom. On a Java
+ * version without budgets the test fails until they are recorded. After a change that is expected to allocate more, or
+ * less, or to record budgets for another version, rebaseline with:
+ * <pre>
+ *   mvn test -Dtest=AllocationBudgetTest -Dallocation.rebaseline=true
+ * </pre>
+ */
+public class AllocationBudgetTest {
+    private static final String JAVA_VERSION = System.getProperty("java.specification.version");
+    private static final String BUDGETS_FILE = "allocation-budgets-" + JAVA_VERSION + ".properties";
+    private static final boolean REBASELINE = Boolean.getBoolean("allocation.rebaseline");
+    private static final double HEADROOM = 1.25;
+    private static final int WARMUP = 2_000;
+    private static final int ROUNDS = 5;
+    private static final int OPS_PER_ROUND = 100;
+
+    private static com.sun.management.ThreadMXBean _threads;
+    private static Properties _budgets;
+    private static final Map<String, Long> _measured = new TreeMap<>();
+    // keeps results reachable so the JIT can't drop the work
+    private static volatile Object _sink;
+
+    @BeforeClass
+    public static void loadBudgets() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue("thread allocation counters not supported by this JVM",
+                bean instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported());
+        _threads = (com.sun.management.ThreadMXBean) bean;
+        _threads.setThreadAllocatedMemoryEnabled(true);
+        _budgets = new Properties();
+        try (InputStream in = AllocationBudgetTest.class.getResourceAsStream(BUDGETS_FILE)) {
+            if (in != null) {
+                _budgets.load(in);
+            } else if (!REBASELINE) {
+                fail("No allocation budgets for Java " + JAVA_VERSION + ", rebaseline for this JVM to record " +
+                        BUDGETS_FILE + " with -Dallocation.rebaseline=true");
+            }
+        }
+    }
+
+    @AfterClass
+    public static void saveBudgets() throws IOException {
+        if (!REBASELINE || _measured.isEmpty()) {
+            return;
+        }
+        File file = new File(System.getProperty("basedir", "."), "src/test/resources/github/traffic/" + BUDGETS_FILE);
+        StringBuilder sb = new StringBuilder();
+        sb.append("# Bytes allocated per operation, measured with ").append(System.getProperty("java.vm.name"))
+                .append(' ').append(System.getProperty("java.version")).append(" plus ")
+                .append(Math.round((HEADROOM - 1) * 100)).append("% headroom.\n")
+                .append("# Rebaseline: mvn test -Dtest=AllocationBudgetTest -Dallocation.rebaseline=true\n");
+        for (Map.Entry<String, Long> entry : _measured.entrySet()) {
+            sb.append(entry.getKey()).append('=').append((long) Math.ceil(entry.getValue() * HEADROOM)).append('\n');
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(sb.toString());
+        }
+        System.out.println("Rebaselined " + file);
+    }
+
+    @Test
+    public void testTileRender() {
+        Tile layout = reportLayout();
+        assertWithinBudget("tile.render", layout::render);
+    }
+
+    @Test
+    public void testCountsChart() {
+        Charts charts = new Charts(14);
+        DailySeries views = dailyCounts(15);
+        assertWithinBudget("charts.makeCountsChart", () -> charts.makeCountsChart("Views", views, charts::viewsPerUser));
+    }
+
+    @Test
+    public void testStargazerDiff() {
+        String prior = priorStargazers(10_000);
+        Set<String> current = currentStargazers(10_000);
+        assertWithinBudget("stargazerDiff.compute", () -> StargazerDiff.compute(prior, current));
+    }
+
+    private static void assertWithinBudget(String operation, Supplier<Object> op) {
+        long bytes = bytesPerOp(op);
+        _measured.put(operation, bytes);
+        if (REBASELINE) {
+            return;
+        }
+        String budget = _budgets.getProperty(operation);
+        assertNotNull("No allocation budget for " + operation + ", measured " + bytes + " bytes/op. " +
+                "Record one with -Dallocation.rebaseline=true", budget);
+        assertTrue(operation + " allocates " + bytes + " bytes/op, over its budget of " + budget +
+                ". If the increase is intended, rebaseline with -Dallocation.rebaseline=true",
+                bytes <= Long.parseLong(budget.trim()));
+    }
+
+    /**
+     * @return The lowest bytes per operation over several rounds, which filters out one-off allocation such as class
+     * loading and JIT compiler activity on this thread
+     */
+    private static long bytesPerOp(Supplier<Object> op) {
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP; i++) {
+            _sink = op.get();
+        }
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = _threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < OPS_PER_ROUND; i++) {
+                _sink = op.get();
+            }
+            long allocated = _threads.getThreadAllocatedBytes(threadId) - start;
+            min = Math.min(min, allocated / OPS_PER_ROUND);
+        }
+        return min;
+    }
+
+    /**
+     * @return The report's chart layout: two rows of two charts and a full width section
+     */
+    private static Tile reportLayout() {
+        Tile root = new Tile(Tile.Layout.Column, new Tile.Margin(0, 0, 0, 0));
+        Tile top = new Tile(Tile.Layout.Row, new Tile.Margin(0, 0, 0, 0));
+        top.append(coloredBlock(17, 60), new Tile.Margin(0, 0, 0, 4));
+        top.append(coloredBlock(17, 50));
+        root.append(top);
+        Tile bottom = new Tile(Tile.Layout.Row, new Tile.Margin(1, 0, 1, 0));
+        bottom.append(coloredBlock(11, 55), new Tile.Margin(0, 0, 0, 4));
+        bottom.append(coloredBlock(6, 45));
+        root.append(bottom);
+        root.append(new Tile(coloredBlock(8, 40), new Tile.Margin(0, 0, 1, 0)));
+        return root;
+    }
+
+    private static String coloredBlock(int lines, int width) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("\u001B[38;5;242m(0").append(i % 10).append(" Jan)M\u001B[0m ")
+                    .append("\u001B[38;5;33m").append(repeat('▓', width / 2)).append(repeat('░', width / 2))
+                    .append("\u001B[0m").append(i).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    private static DailySeries dailyCounts(int days) {
+        Random random = new Random(days);
+        LocalDate start = LocalDate.now(ZoneOffset.UTC).minusDays(days - 1);
+        int[] counts = new int[days];
+        int[] uniques = new int[days];
+        for (int i = 0; i < days; i++) {
+            uniques[i] = 50 + random.nextInt(500);
+            counts[i] = uniques[i] + random.nextInt(2000);
+        }
+        return DailySeries.of(start, counts, uniques);
+    }
+
+    private static String priorStargazers(int size) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.append(login(i)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return The prior list with every 100th login unstarred and a 1% tail of new logins
+     */
+    private static Set<String> currentStargazers(int size) {
+        Set<String> gazers = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            if (i % 100 != 0) {
+                gazers.add(login(i));
+            }
+        }
+        for (int i = size; i < size + size / 100; i++) {
+            gazers.add(login(i));
+        }
+        return gazers;
+    }
+
+    private static String login(int id) {
+        return "user-" + Integer.toString(id, 36);
+    }
+}
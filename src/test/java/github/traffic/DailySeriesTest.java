@@ -0,0 +1,58 @@
+package github.traffic;
+
+import manifold.github.traffic.DailySeries;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.*;
+
+public class DailySeriesTest {
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 15);
+
+    @Test
+    public void testParseFillsTheWindow() {
+        // out of order, a gap on the 10th, one day before the window and none for today
+        String json = "{\"count\":31,\"uniques\":12,\"views\":[" +
+                "{\"timestamp\":\"2024-03-11T00:00:00Z\",\"count\":7,\"uniques\":2}," +
+                "{\"timestamp\":\"2024-02-29T00:00:00Z\",\"count\":100,\"uniques\":50}," +
+                "{\"timestamp\":\"2024-03-01T00:00:00Z\",\"count\":4,\"uniques\":3}," +
+                "{\"timestamp\":\"2024-03-09T00:00:00Z\",\"count\":20,\"uniques\":7}]}";
+        DailySeries views = DailySeries.parse(json, "views", TODAY);
+        assertEquals(DailySeries.DAYS, views.size());
+        assertEquals(LocalDate.of(2024, 3, 1), views.firstDay());
+        assertEquals(TODAY, views.lastDay());
+        assertEquals(4, views.count(0));
+        assertEquals(3, views.uniques(0));
+        assertEquals(20, views.count(8));
+        assertEquals(0, views.count(9));
+        assertEquals(7, views.count(10));
+        assertEquals(0, views.count(14));
+        assertEquals(31, views.totalCount());
+        assertEquals(12, views.totalUniques());
+        assertEquals(20, views.maxCount());
+    }
+
+    @Test
+    public void testWindowAndPlus() {
+        DailySeries a = DailySeries.of(LocalDate.of(2024, 3, 10), new int[]{1, 2, 3}, new int[]{1, 1, 1});
+        DailySeries b = DailySeries.of(LocalDate.of(2024, 3, 11), new int[]{10, 20, 30}, new int[]{5, 5, 5});
+        DailySeries sum = a.plus(b);
+        assertEquals(LocalDate.of(2024, 3, 10), sum.firstDay());
+        assertEquals(LocalDate.of(2024, 3, 13), sum.lastDay());
+        assertArrayEquals(new int[]{1, 12, 23, 30}, counts(sum));
+        assertEquals(18, sum.totalUniques());
+
+        DailySeries window = sum.window(LocalDate.of(2024, 3, 14), 3);
+        assertArrayEquals(new int[]{23, 30, 0}, counts(window));
+        assertSame(sum, sum.window(LocalDate.of(2024, 3, 13), 4));
+    }
+
+    private static int[] counts(DailySeries series) {
+        int[] counts = new int[series.size()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = series.count(i);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,253 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EndToEndTest {
+    @Test
+    public void testReportAgainstFakeServer() throws Exception {
+        List<LoadHarness.Result> results = LoadHarness.run(new LoadHarness.Scenario("small", 250, 3, 2, 0, 0, 0));
+        LoadHarness.Result first = results.get(0);
+        assertNoError(first.output);
+        assertTrue(first.output.contains("Views"));
+        assertTrue(first.output.contains("Referring sites"));
+        assertFalse(first.output.contains("New stars"));
+
+        LoadHarness.Result second = results.get(1);
+        assertNoError(second.output);
+        assertTrue(second.output.contains("New stars"));
+        assertTrue(second.output.contains("Lost stars"));
+        // 251 stargazers make three pages, the empty fourth ends the scan
+        assertEquals(Long.valueOf(4), second.requestCounts.get("/repos/{owner}/{repo}/stargazers"));
+        // only the new stargazers are enriched
+        assertEquals(Long.valueOf(3), second.requestCounts.get("/users/{user}"));
+    }
+
+    @Test
+    public void testReportSurvivesRateLimitsAndServerErrors() throws Exception {
+        List<LoadHarness.Result> results = LoadHarness.run(new LoadHarness.Scenario("faults", 250, 3, 2, 0, 5, 7));
+        for (LoadHarness.Result result : results) {
+            assertNoError(result.output);
+            assertTrue(result.output.contains("Views"));
+        }
+        assertTrue(results.get(1).output.contains("Lost stars"));
+    }
+
+    @Test
+    public void testProgressiveReportMatchesSequentialLayout() throws Exception {
+        List<LoadHarness.Result> sequential = LoadHarness.run(new LoadHarness.Scenario("sequential", 250, 3, 2, 0, 0, 0));
+        List<LoadHarness.Result> progressive = LoadHarness.run(new LoadHarness.Scenario("progressive", 250, 3, 2, 0, 0, 0),
+                "-progressive");
+        for (int run = 0; run < 2; run++) {
+            assertNoError(progressive.get(run).output);
+            assertEquals(normalize(sequential.get(run).output), normalize(progressive.get(run).output));
+        }
+        assertTrue(progressive.get(1).output.contains("Lost stars"));
+    }
+
+    @Test(timeout = 60_000)
+    public void testProgressiveReportEndsWhenStatsFail() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-progressive").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("progressivetest", "widget", 10));
+            // the stargazer and fork sections wait on the stats, they never run
+            server.setNotFound("/repos/{owner}/{repo}");
+            String[] args = {"-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath(), "-progressive"};
+
+            LoadHarness.Result result = LoadHarness.runOnce("progressive", 1, server, args);
+            assertTrue(result.output, result.output.contains("not found: HTTP response code: 404"));
+            assertNull(result.requestCounts.get("/repos/{owner}/{repo}/stargazers"));
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    @Test
+    public void testForkTrackingStopsAtKnownFork() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-forks").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("forktest", "widget", 10));
+            repo.fork(233);
+            String[] args = {"-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath()};
+            String forks = "/repos/{owner}/{repo}/forks";
+
+            // 250 forks, the first run scans all three pages
+            LoadHarness.Result first = LoadHarness.runOnce("forks", 1, server, args);
+            assertNoError(first.output);
+            assertFalse(first.output.contains("New forks"));
+            assertEquals(Long.valueOf(3), first.requestCounts.get(forks));
+
+            repo.fork(2);
+            server.resetCounts();
+            LoadHarness.Result second = LoadHarness.runOnce("forks", 2, server, args);
+            assertTrue(second.output, second.output.contains("New forks"));
+            assertFalse(second.output.contains("Deleted forks"));
+            assertEquals(Long.valueOf(1), second.requestCounts.get(forks));
+
+            // a drop in the count means forks were deleted, rescan
+            repo.deleteForks(3);
+            server.resetCounts();
+            LoadHarness.Result third = LoadHarness.runOnce("forks", 3, server, args);
+            assertTrue(third.output, third.output.contains("Deleted forks"));
+            assertFalse(third.output.contains("New forks"));
+            assertEquals(Long.valueOf(3), third.requestCounts.get(forks));
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    @Test
+    public void testStatsPolledUntilComputed() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-stats").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("statstest", "widget", 10));
+            server.setStatsComputePolls(2);
+            String[] args = {"-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath(), "-stats"};
+
+            LoadHarness.Result result = LoadHarness.runOnce("stats", 1, server, args);
+            assertNoError(result.output);
+            assertFalse(result.output, result.output.contains("not available"));
+            assertTrue(result.output.contains("Commits"));
+            assertTrue(result.output.contains("Code frequency"));
+            // most commits first
+            assertTrue(result.output, result.output.indexOf("dev7") < result.output.indexOf("dev3"));
+            assertFalse(result.output.contains("dev2"));
+            for (String stat : new String[]{"commit_activity", "code_frequency", "contributors"}) {
+                // two 202s, then the data
+                assertEquals(Long.valueOf(3), result.requestCounts.get("/repos/{owner}/{repo}/stats/" + stat));
+            }
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    @Test
+    public void testReleaseDownloadsSinceLastRun() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-releases").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("releasetest", "widget", 10));
+            repo.release(250, 2);
+            for (int i = 0; i < 250; i++) {
+                repo.download(i, 1000 + i);
+            }
+            String[] args = {"-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath(), "-releases"};
+            String releases = "/repos/{owner}/{repo}/releases";
+
+            LoadHarness.Result first = LoadHarness.runOnce("releases", 1, server, args);
+            assertNoError(first.output);
+            assertTrue(first.output, first.output.contains("Top releases"));
+            assertTrue(first.output.contains("v1.249"));
+            assertFalse(first.output.contains("since last run"));
+            assertEquals(Long.valueOf(3), first.requestCounts.get(releases));
+
+            // the first and last pages change, the middle page is revalidated
+            repo.download(240, 25);
+            repo.download(7, 3);
+            LoadHarness.Result second = LoadHarness.runOnce("releases", 2, server, args);
+            assertNoError(second.output);
+            assertTrue(second.output, second.output.contains("since last run"));
+            assertTrue(second.output.contains("v1.7 "));
+            assertTrue(second.output.indexOf("v1.240") < second.output.indexOf("v1.7 "));
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    @Test
+    public void testOrgReportFetchesReposConcurrently() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-org").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            List<FakeRepo> repos = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                repos.add(server.addRepo(new FakeRepo("orgtest", "widget" + i, 10 + i)));
+            }
+            server.addRepo(new FakeRepo("othertest", "widget", 500));
+            server.setLatencyMillis(100);
+            String[] args = {"-org", "orgtest", "-token", "fake-token", "-api", server.url(),
+                    "-dir", stateDir.getAbsolutePath()};
+
+            LoadHarness.Result first = LoadHarness.runOnce("org", 1, server, args);
+            assertNoError(first.output);
+            assertTrue(first.output, first.output.contains("Views"));
+            assertTrue(first.output.contains("Referring sites"));
+            assertTrue(first.output, first.output.contains("40 repos"));
+            // fetched one by one, the 100 ms of each request would never overlap another
+            assertTrue("at most " + server.maxConcurrentRequests() + " requests at once",
+                    server.maxConcurrentRequests() > 1);
+            assertEquals(Long.valueOf(40), first.requestCounts.get("/repos/{owner}/{repo}/traffic/views"));
+
+            repos.get(0).star(3);
+            repos.get(39).star(2);
+            LoadHarness.Result second = LoadHarness.runOnce("org", 2, server, args);
+            assertNoError(second.output);
+            assertTrue(second.output, second.output.contains("+5"));
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    @Test
+    public void testDeadlineSkipsSectionsAndResumesStargazerScan() throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-deadline").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("deadlinetest", "widget", 5000));
+            server.setLatencyMillis(100);
+            String[] args = {"-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath()};
+            String stargazers = "/repos/{owner}/{repo}/stargazers";
+            File checkpoint = new File(stateDir, "deadlinetest/widget/stargazers_scan.checkpoint");
+
+            // 51 stargazer pages of 100 ms don't fit in 2 seconds
+            String[] withDeadline = Arrays.copyOf(args, args.length + 2);
+            withDeadline[args.length] = "-deadline";
+            withDeadline[args.length + 1] = "2";
+            LoadHarness.Result first = LoadHarness.runOnce("deadline", 1, server, withDeadline);
+            assertNoError(first.output);
+            assertTrue(first.output, first.output.contains("skipped, deadline reached"));
+            assertTrue(first.output.contains("Views"));
+            // the forks wait on the stargazers, so both are past the deadline
+            assertTrue(first.output.contains("Stargazers, Forks"));
+            // no page is requested past the deadline
+            assertTrue(first.requestCounts.toString(), first.requestCounts.get(stargazers) < 51);
+            assertTrue(checkpoint.isFile());
+
+            server.setLatencyMillis(0);
+            server.resetCounts();
+            LoadHarness.Result second = LoadHarness.runOnce("deadline", 2, server, args);
+            assertNoError(second.output);
+            assertFalse(second.output, second.output.contains("skipped"));
+            assertTrue(second.requestCounts.get(stargazers) < 51);
+            assertFalse(checkpoint.exists());
+            assertEquals(5000, new String(Files.readAllBytes(new File(stateDir, "deadlinetest/widget/stargazers.txt").toPath()),
+                    StandardCharsets.UTF_8).split("\n").length);
+        } finally {
+            LoadHarness.deleteRecursively(stateDir);
+        }
+    }
+
+    /**
+     * Drops the timestamped header line and the stargazer progress bar, which the progressive report leaves out.
+     */
+    private static String normalize(String output) {
+        return output.replaceAll("(?m)^Repo: .*$", "").replaceAll("Fetching stargazers\\.\\.\\.[\\[\\]▓ \b]*", "");
+    }
+
+    private static void assertNoError(String output) {
+        assertFalse(output, output.contains("Exception"));
+        assertFalse(output, output.contains("not found"));
+    }
+}
@@ -0,0 +1,66 @@
+package github.traffic;
+
+import github.api.Repo;
+import manifold.github.traffic.JsonProjection;
+import manifold.rt.api.Bindings;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JsonProjectionTest {
+    private static final String REPO = "{\"id\":1296269,\"name\":\"Hello-World\",\"full_name\":\"octocat/Hello-World\"," +
+            "\"owner\":{\"login\":\"octocat\",\"id\":1,\"site_admin\":false}," +
+            "\"description\":\"This your first repo! \\\"quoted\\\" \\u00e9\",\"topics\":[\"a\",[\"b\",{\"c\":null}]]," +
+            "\"stargazers_count\":80,\"subscribers_count\":42,\"forks_count\":9,\"open_issues\":12,\"score\":1.5e3," +
+            "\"parent\":{\"owner\":{\"login\":\"other\"},\"stargazers_count\":5000000000}}";
+
+    @Test
+    public void testProjectedFieldsOnly() {
+        Bindings repo = (Bindings) JsonProjection.of("stargazers_count", "forks_count", "owner.login").parse(REPO);
+        assertEquals(3, repo.size());
+        assertEquals(80, repo.get("stargazers_count"));
+        assertEquals(9, repo.get("forks_count"));
+        Bindings owner = (Bindings) repo.get("owner");
+        assertEquals(1, owner.size());
+        assertEquals("octocat", owner.get("login"));
+    }
+
+    @Test
+    public void testCastToApiType() {
+        Repo repo = (Repo) JsonProjection.of("stargazers_count", "subscribers_count", "forks_count", "open_issues")
+                .parse(REPO);
+        assertEquals(80, repo.getStargazers_count());
+        assertEquals(42, repo.getSubscribers_count());
+        assertEquals(9, repo.getForks_count());
+        assertEquals(12, repo.getOpen_issues());
+        assertNull(repo.getName());
+    }
+
+    @Test
+    public void testWholeSubtreesAndValues() {
+        Bindings repo = (Bindings) JsonProjection.of("description", "topics", "score", "parent").parse(REPO);
+        assertEquals("This your first repo! \"quoted\" \u00e9", repo.get("description"));
+        List<?> topics = (List<?>) repo.get("topics");
+        assertEquals("a", topics.get(0));
+        assertTrue(((Bindings) ((List<?>) topics.get(1)).get(1)).containsKey("c"));
+        assertEquals(1500.0, repo.get("score"));
+        assertEquals(5_000_000_000L, ((Bindings) repo.get("parent")).get("stargazers_count"));
+    }
+
+    @Test
+    public void testArrayElementsProjected() {
+        List<?> page = (List<?>) JsonProjection.of("login")
+                .parse(" [{\"login\":\"a\",\"id\":1},{\"id\":2,\"login\":\"b\"}, {\"id\":3}] ");
+        assertEquals(3, page.size());
+        assertEquals("a", ((Bindings) page.get(0)).get("login"));
+        assertEquals("b", ((Bindings) page.get(1)).get("login"));
+        assertTrue(((Bindings) page.get(2)).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMalformed() {
+        JsonProjection.of("login").parse("{\"login\":\"a\",}");
+    }
+}
@@ -0,0 +1,172 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import manifold.github.traffic.Main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drives full report runs against a {@link FakeGitHubServer} and records wall time, request counts and peak heap per
+ * run. Each scenario runs the report twice with its star churn applied in between, so the second run exercises the
+ * stargazer diff.
+ * <p/>
+ * Run the standard scenarios, including a repo with a million stargazers, with:
+ * <pre>
+ *   mvn test-compile exec:java -Dexec.mainClass=github.traffic.LoadHarness -Dexec.classpathScope=test
+ * </pre>
+ */
+public class LoadHarness {
+    public static class Scenario {
+        final String name;
+        final int stars;
+        final int newStars;
+        final int unstars;
+        final int latencyMillis;
+        final int rateLimitEvery;
+        final int serverErrorEvery;
+
+        /**
+         * @param newStars Stars added between the two runs
+         * @param unstars Stars removed between the two runs
+         * @param rateLimitEvery Every nth request is rate limited, 0 for none
+         * @param serverErrorEvery Every nth request fails with a 5xx, 0 for none
+         */
+        public Scenario(String name, int stars, int newStars, int unstars, int latencyMillis, int rateLimitEvery,
+                        int serverErrorEvery) {
+            this.name = name;
+            this.stars = stars;
+            this.newStars = newStars;
+            this.unstars = unstars;
+            this.latencyMillis = latencyMillis;
+            this.rateLimitEvery = rateLimitEvery;
+            this.serverErrorEvery = serverErrorEvery;
+        }
+    }
+
+    public static class Result {
+        public final String scenario;
+        public final int run;
+        public final long wallMillis;
+        public final int requests;
+        public final Map<String, Long> requestCounts;
+        public final long peakHeapBytes;
+        public final String output;
+
+        Result(String scenario, int run, long wallMillis, int requests, Map<String, Long> requestCounts,
+               long peakHeapBytes, String output) {
+            this.scenario = scenario;
+            this.run = run;
+            this.wallMillis = wallMillis;
+            this.requests = requests;
+            this.requestCounts = requestCounts;
+            this.peakHeapBytes = peakHeapBytes;
+            this.output = output;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-24s run %d %9d ms %8d requests %8.1f MB peak heap",
+                    scenario, run, wallMillis, requests, peakHeapBytes / (1024.0 * 1024.0));
+        }
+    }
+
+    public static List<Scenario> standardScenarios() {
+        return Arrays.asList(
+                new Scenario("small", 250, 3, 2, 0, 0, 0),
+                new Scenario("latency 50ms", 5_000, 10, 10, 50, 0, 0),
+                new Scenario("rate limits and 5xx", 5_000, 10, 10, 0, 25, 40),
+                new Scenario("100k stargazers", 100_000, 50, 50, 0, 0, 0),
+                new Scenario("1M stargazers", 1_000_000, 100, 100, 0, 0, 0));
+    }
+
+    /**
+     * Runs the report twice against a fresh fake server and state directory.
+     */
+    public static List<Result> run(Scenario scenario, String... extraArgs) throws Exception {
+        File stateDir = Files.createTempDirectory("github-traffic-load").toFile();
+        try (FakeGitHubServer server = FakeGitHubServer.start()) {
+            FakeRepo repo = server.addRepo(new FakeRepo("loadtest", "widget", scenario.stars));
+            server.setLatencyMillis(scenario.latencyMillis);
+            server.setRateLimitEvery(scenario.rateLimitEvery);
+            server.setServerErrorEvery(scenario.serverErrorEvery);
+            List<String> args = new ArrayList<>(Arrays.asList(
+                    "-user", repo.getOwner(), "-repo", repo.getName(), "-token", "fake-token",
+                    "-api", server.url(), "-dir", stateDir.getAbsolutePath()));
+            args.addAll(Arrays.asList(extraArgs));
+
+            List<Result> results = new ArrayList<>();
+            for (int run = 1; run <= 2; run++) {
+                if (run == 2) {
+                    repo.unstar(scenario.unstars);
+                    repo.star(scenario.newStars);
+                }
+                server.resetCounts();
+                results.add(runOnce(scenario.name, run, server, args.toArray(new String[0])));
+            }
+            return results;
+        } finally {
+            deleteRecursively(stateDir);
+        }
+    }
+
+    static Result runOnce(String scenario, int run, FakeGitHubServer server, String[] args) throws Exception {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+        System.gc();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        try {
+            System.setOut(new PrintStream(captured, true, "UTF-8"));
+            Main.main(args);
+        } finally {
+            System.setOut(out);
+        }
+        long wallMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // sum of per-pool peaks, an upper bound of the actual peak
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        return new Result(scenario, run, wallMillis, server.requestCount(), server.requestCounts(), peakHeap,
+                new String(captured.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (Scenario scenario : standardScenarios()) {
+            for (Result result : run(scenario)) {
+                System.out.println(result);
+            }
+        }
+    }
+}
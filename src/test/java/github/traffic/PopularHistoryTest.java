@@ -0,0 +1,173 @@
+package github.traffic;
+
+import manifold.github.traffic.PopularHistory;
+import manifold.github.traffic.StateStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static manifold.github.traffic.PopularHistory.Kind.Path;
+import static manifold.github.traffic.PopularHistory.Kind.Referrer;
+import static org.junit.Assert.*;
+
+public class PopularHistoryTest {
+    private static final LocalDate DAY = LocalDate.of(2024, 3, 1);
+
+    private File _dir;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("github-traffic-popular").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        LoadHarness.deleteRecursively(_dir);
+    }
+
+    @Test
+    public void testRisersFallersAndDroppedOut() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+            // left the top 10 long before the baseline
+            history.record(Path, "/old", DAY.minusDays(30), 50, 20);
+            history.record(Path, "/a", DAY, 10, 5);
+            history.record(Path, "/b", DAY, 5, 2);
+            history.record(Path, "/c", DAY, 3, 1);
+            history.record(Referrer, "google.com", DAY, 7, 3);
+            history.record(Path, "/a", DAY.plusDays(3), 10, 5);
+            history.record(Path, "/b", DAY.plusDays(3), 8, 4);
+            history.record(Path, "/d", DAY.plusDays(3), 4, 2);
+            history.save();
+
+            assertChanges(history.changes(Path, 3));
+            // the latest snapshot at least two days back is the same
+            assertChanges(history.changes(Path, 2));
+            // the referrers have a single snapshot, nothing to compare with
+            assertTrue(history.changes(Referrer, 3).isEmpty());
+        }
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            assertChanges(PopularHistory.load(store, "octocat", "widget").changes(Path, 3));
+        }
+    }
+
+    @Test
+    public void testSaveAppendsToEarlierRuns() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+            history.record(Path, "/a", DAY, 10, 5);
+            history.save();
+        }
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+            history.record(Path, "/a", DAY.plusDays(1), 12, 6);
+            history.record(Path, "/b", DAY.plusDays(1), 1, 1);
+            history.save();
+        }
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+            List<PopularHistory.Posting> trend = history.trend(Path, "/a", DAY, DAY.plusDays(1));
+            assertEquals(2, trend.size());
+            assertEquals(10, trend.get(0).count);
+            assertEquals(12, trend.get(1).count);
+            assertEquals(1, history.trend(Path, "/b", DAY, DAY.plusDays(1)).size());
+        }
+    }
+
+    @Test
+    public void testReadsAndWritesOnlyTheDaysItNeeds() throws Exception {
+        try (CountingStore store = new CountingStore(StateStore.open(StateStore.FILES, _dir))) {
+            for (int day = 0; day < 100; day++) {
+                PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+                history.record(Path, "/a", DAY.plusDays(day), day, 1);
+                history.record(Path, "/p" + day % 5, DAY.plusDays(day), 1, 1);
+                store.committed.clear();
+                history.save();
+                // the day's snapshot and the latest day, plus the dictionary while names are new
+                assertEquals(day < 5 ? 3 : 2, store.committed.size());
+            }
+            store.read.clear();
+            List<PopularHistory.Change> changes = PopularHistory.load(store, "octocat", "widget").changes(Path, 7);
+            assertEquals("/a", changes.get(0).name);
+            assertEquals(7, changes.get(0).delta);
+            // the dictionary, the latest day and the eight days back to the baseline
+            assertEquals(10, store.read.size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEarlierDayThanSavedIsRejected() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            PopularHistory history = PopularHistory.load(store, "octocat", "widget");
+            history.record(Path, "/a", DAY, 10, 5);
+            history.save();
+            history.record(Path, "/a", DAY.minusDays(1), 8, 4);
+        }
+    }
+
+    private static void assertChanges(List<PopularHistory.Change> changes) {
+        assertEquals(3, changes.size());
+        assertChange("/d", 4, 4, changes.get(0));
+        assertChange("/b", 8, 3, changes.get(1));
+        assertChange("/c", 0, -3, changes.get(2));
+    }
+
+    private static void assertChange(String name, int count, int delta, PopularHistory.Change change) {
+        assertEquals(name, change.name);
+        assertEquals(count, change.count);
+        assertEquals(delta, change.delta);
+    }
+
+    private static class CountingStore implements StateStore {
+        final List<String> read = new ArrayList<>();
+        final List<String> committed = new ArrayList<>();
+        private final StateStore _store;
+
+        CountingStore(StateStore store) {
+            _store = store;
+        }
+
+        @Override
+        public byte[] get(String key) throws IOException {
+            read.add(key);
+            return _store.get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value) throws IOException {
+            committed.add(key);
+            _store.put(key, value);
+        }
+
+        @Override
+        public void append(String key, byte[] data) throws IOException {
+            committed.add(key);
+            _store.append(key, data);
+        }
+
+        @Override
+        public void delete(String key) throws IOException {
+            committed.add(key);
+            _store.delete(key);
+        }
+
+        @Override
+        public void commit(Map<String, byte[]> changes) throws IOException {
+            committed.addAll(changes.keySet());
+            _store.commit(changes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            _store.close();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package github.traffic;
+
+import manifold.github.traffic.Deadline;
+import manifold.github.traffic.ProfileCache;
+import manifold.github.traffic.ProfileFetcher;
+import manifold.github.traffic.ReportedException;
+import manifold.github.traffic.StateStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ProfileFetcherTest {
+    private File _dir;
+    private StateStore _store;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("github-traffic-profiles").toFile();
+        _store = StateStore.open(StateStore.FILES, _dir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _store.close();
+        LoadHarness.deleteRecursively(_dir);
+    }
+
+    @Test
+    public void testConcurrentLookupsShareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = new AtomicInteger();
+        ProfileCache cache = new ProfileCache(_store).load();
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try (ProfileFetcher fetcher = new ProfileFetcher(cache, login -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return profile(login, Instant.now());
+        })) {
+            Future<Map<String, ProfileCache.Profile>> first =
+                    callers.submit(() -> fetcher.fetchAll(Collections.singletonList("alice")));
+            Future<Map<String, ProfileCache.Profile>> second =
+                    callers.submit(() -> fetcher.fetchAll(Collections.singletonList("alice")));
+            while (fetches.get() == 0) {
+                Thread.sleep(10);
+            }
+            // the second lookup is in flight meanwhile, or served from the cache once the first is done
+            Thread.sleep(100);
+            release.countDown();
+            assertEquals("alice", first.get(10, TimeUnit.SECONDS).get("alice").login);
+            assertEquals("alice", second.get(10, TimeUnit.SECONDS).get("alice").login);
+            assertEquals(1, fetches.get());
+
+            // cached
+            fetcher.fetchAll(Collections.singletonList("alice"));
+            assertEquals(1, fetches.get());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMissingProfileIsFetchedAgain() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        try (ProfileFetcher fetcher = new ProfileFetcher(new ProfileCache(_store).load(), login -> {
+            fetches.incrementAndGet();
+            return null;
+        })) {
+            for (int i = 1; i <= 3; i++) {
+                assertTrue(fetcher.fetchAll(Collections.singletonList("ghost")).isEmpty());
+                // a finished fetch is no longer in flight
+                assertEquals(i, fetches.get());
+            }
+        }
+    }
+
+    @Test
+    public void testFailedFetchIsLeftOutAndNotCached() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        ProfileCache cache = new ProfileCache(_store).load();
+        try (ProfileFetcher fetcher = new ProfileFetcher(cache, login -> {
+            if (fetches.incrementAndGet() == 1) {
+                throw new ReportedException("All GitHub tokens are rate limited, the next resets in 5 min", null);
+            }
+            return profile(login, Instant.now());
+        })) {
+            assertTrue(fetcher.fetchAll(Collections.singletonList("alice")).isEmpty());
+            assertEquals(0, cache.size());
+            // not taken for a deleted account, fetched again
+            assertEquals("alice", fetcher.fetchAll(Collections.singletonList("alice")).get("alice").login);
+            assertEquals(2, fetches.get());
+        }
+    }
+
+    @Test
+    public void testDeadlineIsRethrown() throws Exception {
+        try (ProfileFetcher fetcher = new ProfileFetcher(new ProfileCache(_store).load(), login -> {
+            throw new Deadline.ExceededException("Deadline reached before: /users/" + login);
+        })) {
+            fetcher.fetchAll(Collections.singletonList("alice"));
+            fail();
+        } catch (Deadline.ExceededException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("/users/alice"));
+        }
+    }
+
+    @Test
+    public void testConcurrentCachesMergeOnSave() throws Exception {
+        Instant now = Instant.now();
+        ProfileCache first = new ProfileCache(_store).load();
+        ProfileCache second = new ProfileCache(_store).load();
+        first.put(profile("alice", now));
+        first.put(profile("carol", now.minusSeconds(3600)));
+        second.put(profile("bob", now));
+        second.put(profile("carol", now));
+        second.save();
+        first.save();
+
+        ProfileCache loaded = new ProfileCache(_store).load();
+        assertEquals(3, loaded.size());
+        assertNotNull(loaded.get("alice"));
+        assertNotNull(loaded.get("bob"));
+        // the newer fetch wins
+        assertEquals(now.getEpochSecond(), loaded.get("carol").fetched.getEpochSecond());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedAndExpired() throws Exception {
+        Instant now = Instant.now();
+        ProfileCache cache = new ProfileCache(_store, Duration.ofDays(7), 2);
+        cache.put(profile("alice", now));
+        cache.put(profile("bob", now));
+        assertNotNull(cache.get("alice"));
+        cache.put(profile("carol", now));
+        assertNull(cache.get("bob"));
+        assertEquals(2, cache.size());
+        cache.save();
+
+        ProfileCache loaded = new ProfileCache(_store, Duration.ofDays(7), 2).load();
+        for (String login : Arrays.asList("alice", "carol")) {
+            assertNotNull(login, loaded.get(login));
+        }
+        loaded.put(profile("dave", now.minus(Duration.ofDays(8))));
+        assertNull(loaded.get("dave"));
+    }
+
+    private static ProfileCache.Profile profile(String login, Instant fetched) {
+        return new ProfileCache.Profile(login, fetched, 12, 3, "Acme", login.toUpperCase());
+    }
+}
@@ -0,0 +1,121 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import manifold.github.traffic.Main;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ShardedWorkersTest {
+    private static final int REPOS = 6;
+    private static final String RUN = "test-run";
+
+    private FakeGitHubServer _server;
+    private File _stateDir;
+    private File _reposFile;
+    private List<String> _repos;
+
+    @Before
+    public void setUp() throws Exception {
+        _server = FakeGitHubServer.start();
+        _stateDir = Files.createTempDirectory("github-traffic-shards").toFile();
+        _repos = new ArrayList<>();
+        for (int i = 0; i < REPOS; i++) {
+            FakeRepo repo = _server.addRepo(new FakeRepo("shardtest", "widget" + i, 120));
+            _repos.add(repo.getOwner() + '/' + repo.getName());
+        }
+        _reposFile = new File(_stateDir, "repos.txt");
+        Files.write(_reposFile.toPath(), _repos);
+    }
+
+    @After
+    public void tearDown() {
+        _server.close();
+        LoadHarness.deleteRecursively(_stateDir);
+    }
+
+    @Test
+    public void testWorkersInSeparateJvmsSplitRepos() throws Exception {
+        List<Process> workers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            workers.add(startWorkerJvm(new File(_stateDir, "worker" + i + ".log")));
+        }
+        for (Process worker : workers) {
+            assertTrue("worker timed out", worker.waitFor(2, TimeUnit.MINUTES));
+            assertEquals(0, worker.exitValue());
+        }
+        String merged = merge();
+        for (String repo : _repos) {
+            assertTrue(merged, merged.contains(repo.substring(repo.indexOf('/') + 1)));
+        }
+        assertTrue(merged, merged.contains(REPOS + " of " + REPOS + " repos reported"));
+        assertFalse(merged, merged.contains("Error"));
+        // every repo reported exactly once across the workers
+        assertEquals(Long.valueOf(REPOS), _server.requestCounts().get("/repos/{owner}/{repo}"));
+    }
+
+    @Test
+    public void testShareOfDeadWorkerIsTakenOver() throws Exception {
+        // a worker that died mid-report, its heartbeat and leases are past their TTL
+        long stale = System.currentTimeMillis() - 120_000;
+        File workers = new File(_stateDir, "shards/workers");
+        File leases = new File(_stateDir, "shards/leases");
+        assertTrue(workers.mkdirs() && leases.mkdirs());
+        File ghost = new File(workers, "1@ghost");
+        assertTrue(ghost.createNewFile() && ghost.setLastModified(stale));
+        for (String repo : _repos) {
+            File lease = new File(leases, repo.replace("/", "__"));
+            assertTrue(lease.createNewFile() && lease.setLastModified(stale));
+        }
+
+        Main.main(args().toArray(new String[0]));
+
+        String merged = merge();
+        assertTrue(merged, merged.contains(REPOS + " of " + REPOS + " repos reported"));
+        assertEquals(Long.valueOf(REPOS), _server.requestCounts().get("/repos/{owner}/{repo}"));
+    }
+
+    private Process startWorkerJvm(File log) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin/java").getAbsolutePath(),
+                "-cp", System.getProperty("java.class.path"),
+                Main.class.getName()));
+        command.addAll(args());
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(log)
+                .start();
+    }
+
+    private List<String> args() {
+        return new ArrayList<>(Arrays.asList("-repos", _reposFile.getAbsolutePath(), "-run", RUN,
+                "-token", "fake-token", "-api", _server.url(), "-dir", _stateDir.getAbsolutePath()));
+    }
+
+    private String merge() throws Exception {
+        List<String> args = args();
+        args.add("-merge");
+        PrintStream out = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(captured, true, "UTF-8"));
+            Main.main(args.toArray(new String[0]));
+        } finally {
+            System.setOut(out);
+        }
+        return new String(captured.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
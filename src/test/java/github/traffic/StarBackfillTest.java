@@ -0,0 +1,123 @@
+package github.traffic;
+
+import manifold.github.traffic.Progress;
+import manifold.github.traffic.StarBackfill;
+import manifold.github.traffic.StateStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.*;
+
+public class StarBackfillTest {
+    private static final String CHECKPOINT = "octocat/widget/star_backfill.checkpoint";
+
+    private File _dir;
+    private StateStore _store;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("github-traffic-backfill").toFile();
+        _store = StateStore.open(StateStore.FILES, _dir);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        _store.close();
+        LoadHarness.deleteRecursively(_dir);
+    }
+
+    @Test
+    public void testDailyCountsResumeFromCheckpoint() throws Exception {
+        // a star a day, at noon
+        Instant first = LocalDate.now(ZoneOffset.UTC).minusDays(300).atTime(12, 0).toInstant(ZoneOffset.UTC);
+        IntFunction<List<Instant>> pages = page -> times(first, ChronoUnit.DAYS, page, 250);
+        CountDownLatch earlierPages = new CountDownLatch(2);
+        try {
+            new StarBackfill(250, _store, CHECKPOINT, page -> {
+                if (page < 3) {
+                    earlierPages.countDown();
+                    return pages.apply(page);
+                }
+                try {
+                    earlierPages.await();
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("interrupted");
+            }).run(new Progress(""));
+            fail();
+        } catch (IllegalStateException e) {
+            assertNotNull(_store.get(CHECKPOINT));
+        }
+
+        Set<Integer> fetched = ConcurrentHashMap.newKeySet();
+        StarBackfill backfill = new StarBackfill(250, _store, CHECKPOINT, page -> {
+            fetched.add(page);
+            return pages.apply(page);
+        });
+        SortedMap<LocalDate, Integer> counts = backfill.run(new Progress(""));
+        assertEquals(Collections.singleton(3), fetched);
+        LocalDate firstDay = LocalDate.now(ZoneOffset.UTC).minusDays(300);
+        assertEquals(firstDay, counts.firstKey());
+        for (int i = 0; i < 250; i++) {
+            assertEquals(Integer.valueOf(i + 1), counts.get(firstDay.plusDays(i)));
+        }
+        assertEquals(Integer.valueOf(250), counts.get(LocalDate.now(ZoneOffset.UTC)));
+
+        try (StateStore results = StateStore.writeBehind(_store)) {
+            backfill.complete(results);
+            // deleted with the results it was a checkpoint for, not before
+            assertNotNull(_store.get(CHECKPOINT));
+            assertNull(results.get(CHECKPOINT));
+        }
+        _store = StateStore.open(StateStore.FILES, _dir);
+        assertNull(_store.get(CHECKPOINT));
+    }
+
+    @Test
+    public void testLargeRepoIsSampledAndInterpolated() throws Exception {
+        // a star a minute, the last 5000 beyond the listing
+        int stars = 45_000;
+        Instant first = Instant.now().minus(stars, ChronoUnit.MINUTES);
+        Set<Integer> fetched = ConcurrentHashMap.newKeySet();
+        SortedMap<LocalDate, Integer> counts = new StarBackfill(stars, _store, CHECKPOINT, page -> {
+            fetched.add(page);
+            return times(first, ChronoUnit.MINUTES, page, stars);
+        }).run(new Progress(""));
+
+        // every fourth page of the 400 listed, and the last
+        assertEquals(101, fetched.size());
+        assertTrue(fetched.contains(1) && fetched.contains(397) && fetched.contains(400));
+        assertFalse(fetched.contains(2));
+        assertEquals(Integer.valueOf(stars), counts.get(LocalDate.now(ZoneOffset.UTC)));
+        int prior = 0;
+        for (int count : counts.values()) {
+            assertTrue(count >= prior);
+            prior = count;
+        }
+    }
+
+    /**
+     * @return The starred_at times of a page of stargazers, star {@code i} at {@code first} plus {@code i} units
+     */
+    private static List<Instant> times(Instant first, ChronoUnit unit, int page, int stars) {
+        List<Instant> times = new ArrayList<>();
+        for (int i = (page - 1) * 100; i < Math.min(stars, page * 100); i++) {
+            times.add(first.plus(i, unit));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,118 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import manifold.github.traffic.StarWebhook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StarWebhookTest {
+    private static final String SECRET = "It's a Secret to Everybody";
+
+    private FakeGitHubServer _server;
+    private FakeRepo _repo;
+    private File _stateDir;
+    private StarWebhook _webhook;
+
+    @Before
+    public void setUp() throws Exception {
+        _server = FakeGitHubServer.start();
+        // the repo of the recorded payloads
+        _repo = _server.addRepo(new FakeRepo("octocat", "Hello-World", 80));
+        _stateDir = Files.createTempDirectory("github-traffic-webhook").toFile();
+        _webhook = new StarWebhook(_stateDir, 0, SECRET).start();
+    }
+
+    @After
+    public void tearDown() {
+        _webhook.close();
+        _server.close();
+        LoadHarness.deleteRecursively(_stateDir);
+    }
+
+    @Test
+    public void testStarEventsReplaceStargazerScan() throws Exception {
+        File live = new File(_stateDir, "octocat/Hello-World/stargazers_live.txt");
+        // nothing to apply events to before the first scan
+        assertEquals(200, post("star", "star_created.json", true));
+        assertFalse(live.exists());
+
+        String[] args = {"-user", "octocat", "-repo", "Hello-World", "-token", "fake-token",
+                "-api", _server.url(), "-dir", _stateDir.getAbsolutePath()};
+        LoadHarness.runOnce("webhook", 1, _server, args);
+
+        assertEquals(401, post("star", "star_created.json", false));
+        assertFalse(live.exists());
+        assertEquals(200, post("star", "star_created.json", true));
+        // GitHub sends both for a new star
+        assertEquals(200, post("watch", "watch_started.json", true));
+        assertEquals(202, post("issues", "star_created.json", true));
+        List<String> lines = Files.readAllLines(live.toPath());
+        // seeded from the scan with the first event, the second is appended
+        assertEquals(1 + 81 + 1, lines.size());
+        assertEquals("monalisa", lines.get(lines.size() - 2));
+        assertEquals("+monalisa", lines.get(lines.size() - 1));
+
+        _repo.star(1);
+        _server.resetCounts();
+        LoadHarness.Result second = LoadHarness.runOnce("webhook", 2, _server, args);
+        assertTrue(second.output, second.output.contains("New stars"));
+        assertTrue(second.output, second.output.contains("monalisa"));
+        assertNull(second.requestCounts.get("/repos/{owner}/{repo}/stargazers"));
+
+        assertEquals(200, post("star", "star_deleted.json", true));
+        lines = Files.readAllLines(live.toPath());
+        assertEquals(1 + 81 + 2, lines.size());
+        assertEquals("-monalisa", lines.get(lines.size() - 1));
+        // the fake still counts 81 stars, the list is off by one and the next report scans and writes it anew
+        LoadHarness.runOnce("webhook", 3, _server, args);
+        lines = Files.readAllLines(live.toPath());
+        assertEquals(1 + 81, lines.size());
+        assertFalse(lines.contains("monalisa"));
+    }
+
+    private int post(String event, String payload, boolean sign) throws Exception {
+        byte[] body = Files.readAllBytes(Paths.get(getClass().getResource("webhook/" + payload).toURI()));
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + _webhook.port()).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        conn.setRequestProperty("Content-Type", "application/json");
+        conn.setRequestProperty("X-GitHub-Event", event);
+        conn.setRequestProperty("X-Hub-Signature-256", "sha256=" + hmac(sign ? SECRET : "wrong secret", body));
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write(body);
+        }
+        int status = conn.getResponseCode();
+        try (InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream()) {
+            while (in != null && in.read() != -1) {
+                // drain
+            }
+        }
+        return status;
+    }
+
+    private static String hmac(String secret, byte[] body) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : mac.doFinal(body)) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
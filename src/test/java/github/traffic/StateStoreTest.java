@@ -0,0 +1,208 @@
+package github.traffic;
+
+import manifold.github.traffic.StateStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class StateStoreTest {
+    private static final int PAGE_SIZE = 4096;
+
+    private File _dir;
+
+    @Before
+    public void setUp() throws Exception {
+        _dir = Files.createTempDirectory("github-traffic-store").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        LoadHarness.deleteRecursively(_dir);
+    }
+
+    @Test
+    public void testPagedStoreMatchesModel() throws Exception {
+        Random random = new Random(42);
+        Map<String, byte[]> model = new HashMap<>();
+        try (StateStore store = StateStore.open(StateStore.PAGED, _dir)) {
+            for (int i = 0; i < 3000; i++) {
+                String key = "user" + random.nextInt(20) + "/repo" + random.nextInt(25) + "/state.txt";
+                int op = random.nextInt(10);
+                if (op < 6) {
+                    // inline values, values over a page and values of several pages
+                    byte[] value = bytes(random, random.nextInt(3) == 0 ? random.nextInt(10_000) : random.nextInt(300));
+                    store.put(key, value);
+                    model.put(key, value);
+                } else if (op < 8) {
+                    byte[] data = bytes(random, random.nextInt(700));
+                    store.append(key, data);
+                    model.put(key, concat(model.get(key), data));
+                } else {
+                    store.delete(key);
+                    model.remove(key);
+                }
+                if (i % 100 == 0) {
+                    assertMatches(model, store);
+                }
+            }
+            assertMatches(model, store);
+        }
+        try (StateStore reopened = StateStore.open(StateStore.PAGED, _dir)) {
+            assertMatches(model, reopened);
+        }
+    }
+
+    @Test
+    public void testPagedValueIsTheCallersCopy() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.PAGED, _dir)) {
+            store.putString("octocat/widget/stars.txt", "12");
+            store.get("octocat/widget/stars.txt")[0] = '9';
+            assertEquals("12", store.getString("octocat/widget/stars.txt"));
+        }
+    }
+
+    @Test
+    public void testTornHeaderFallsBackToPriorCommit() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.PAGED, _dir)) {
+            store.putString("octocat/widget/stars.txt", "1");
+            store.putString("octocat/widget/stars.txt", "2");
+        }
+        File file = new File(_dir, "state.db");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // the header with the higher generation is current, garble its root page
+            raf.seek(16);
+            long generation0 = raf.readLong();
+            raf.seek(PAGE_SIZE + 16);
+            long generation1 = raf.readLong();
+            raf.seek((generation0 > generation1 ? 0 : PAGE_SIZE) + 24);
+            raf.writeLong(-1);
+        }
+        try (StateStore store = StateStore.open(StateStore.PAGED, _dir)) {
+            assertEquals("1", store.getString("octocat/widget/stars.txt"));
+        }
+    }
+
+    @Test
+    public void testRewritesAreCompacted() throws Exception {
+        Random random = new Random(7);
+        try (StateStore writer = StateStore.open(StateStore.PAGED, _dir);
+             StateStore reader = StateStore.open(StateStore.PAGED, _dir)) {
+            for (int i = 0; i < 50; i++) {
+                writer.putString("user/repo" + i + "/forks.txt", "#forks_count " + i + "\n");
+            }
+            byte[] value = null;
+            for (int i = 0; i < 2000; i++) {
+                value = bytes(random, 3000);
+                writer.put("user/repo0/star_history.txt", value);
+            }
+            // without compaction every rewrite leaves a value page and a leaf page behind, 16 MB
+            assertTrue(new File(_dir, "state.db").length() < 2_000_000);
+            assertArrayEquals(value, writer.get("user/repo0/star_history.txt"));
+            // a store opened before the file moved follows it
+            assertArrayEquals(value, reader.get("user/repo0/star_history.txt"));
+            for (int i = 0; i < 50; i++) {
+                assertEquals("#forks_count " + i + "\n", reader.getString("user/repo" + i + "/forks.txt"));
+            }
+            reader.putString("user/repo1/forks.txt", "moved");
+            assertEquals("moved", writer.getString("user/repo1/forks.txt"));
+        }
+    }
+
+    @Test
+    public void testWriteBehindCommitsOnClose() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            store.putString("octocat/widget/stargazers.txt", "alice\nbob\n");
+            store.putString("octocat/widget/stargazers_prior.txt", "alice\n");
+        }
+        try (StateStore store = StateStore.writeBehind(StateStore.open(StateStore.FILES, _dir));
+             StateStore other = StateStore.open(StateStore.FILES, _dir)) {
+            store.putString("octocat/widget/stargazers_prior.txt", "alice\nbob\n");
+            store.append("octocat/widget/stargazers.txt", "carol\n".getBytes(StandardCharsets.UTF_8));
+            store.putString("octocat/gadget/stargazers.txt", "dave\n");
+            store.delete("octocat/widget/stargazers_prior.txt");
+            store.writeThrough().putString("octocat/widget/stargazers_scan.checkpoint", "#page 1\n");
+
+            assertEquals("alice\nbob\ncarol\n", store.getString("octocat/widget/stargazers.txt"));
+            assertNull(store.getString("octocat/widget/stargazers_prior.txt"));
+            // staged until the run is done
+            assertEquals("alice\nbob\n", other.getString("octocat/widget/stargazers.txt"));
+            assertEquals("alice\n", other.getString("octocat/widget/stargazers_prior.txt"));
+            assertNull(other.getString("octocat/gadget/stargazers.txt"));
+            assertEquals("#page 1\n", other.getString("octocat/widget/stargazers_scan.checkpoint"));
+        }
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            assertEquals("alice\nbob\ncarol\n", store.getString("octocat/widget/stargazers.txt"));
+            assertNull(store.getString("octocat/widget/stargazers_prior.txt"));
+            assertEquals("dave\n", store.getString("octocat/gadget/stargazers.txt"));
+        }
+    }
+
+    @Test
+    public void testFileStoreCompletesJournaledCommit() throws Exception {
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            store.putString("octocat/widget/stargazers.txt", "alice\n");
+            store.putString("octocat/widget/stargazers_prior.txt", "alice\n");
+            store.putString("octocat/gadget/stargazers.txt", "bob\n");
+        }
+        // a process died after deciding a commit, before its renames
+        File widget = new File(_dir, "octocat/widget");
+        Files.write(new File(widget, "stargazers.txt1.tmp").toPath(), "alice\ncarol\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(_dir, "commit-1.journal").toPath(), ("put\toctocat/widget/stargazers.txt1.tmp\toctocat/widget/stargazers.txt\n" +
+                "delete\toctocat/widget/stargazers_prior.txt\n" +
+                "committed\n").getBytes(StandardCharsets.UTF_8));
+        // and another died before deciding one
+        File gadget = new File(_dir, "octocat/gadget");
+        Files.write(new File(gadget, "stargazers.txt2.tmp").toPath(), "bob\ndave\n".getBytes(StandardCharsets.UTF_8));
+        File undecided = new File(_dir, "commit-2.journal");
+        Files.write(undecided.toPath(), "put\toctocat/gadget/stargazers.txt2.tmp\toctocat/gadget/stargazers.txt\n"
+                .getBytes(StandardCharsets.UTF_8));
+        assertTrue(undecided.setLastModified(System.currentTimeMillis() - 120_000));
+
+        try (StateStore store = StateStore.open(StateStore.FILES, _dir)) {
+            assertEquals("alice\ncarol\n", store.getString("octocat/widget/stargazers.txt"));
+            assertNull(store.getString("octocat/widget/stargazers_prior.txt"));
+            assertEquals("bob\n", store.getString("octocat/gadget/stargazers.txt"));
+        }
+        assertFalse(new File(_dir, "commit-1.journal").exists());
+        assertFalse(undecided.exists());
+        assertFalse(new File(gadget, "stargazers.txt2.tmp").exists());
+    }
+
+    private static void assertMatches(Map<String, byte[]> model, StateStore store) throws Exception {
+        for (int user = 0; user < 20; user++) {
+            for (int repo = 0; repo < 25; repo++) {
+                String key = "user" + user + "/repo" + repo + "/state.txt";
+                byte[] expected = model.get(key);
+                byte[] actual = store.get(key);
+                if (expected == null) {
+                    assertNull(key, actual);
+                } else {
+                    assertArrayEquals(key, expected, actual);
+                }
+            }
+        }
+    }
+
+    private static byte[] bytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        if (a == null) {
+            return b;
+        }
+        byte[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
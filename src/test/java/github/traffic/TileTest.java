@@ -3,7 +3,10 @@ package github.traffic;
 import manifold.github.traffic.Tile;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TileTest {
     @Test
@@ -83,4 +86,73 @@ public class TileTest {
                      "   2c\n" +
                      "   3", p.render());
     }
+
+    @Test
+    public void testNestedTilesRenderAsTheirText() {
+        Random random = new Random(11);
+        // a dashboard of repo reports, each a row of charts over a column of lists, with overlapping manual tiles
+        Tile.Margin margin = new Tile.Margin(1, 2, 1, 2);
+        Tile dashboard = new Tile(Tile.Layout.Column, margin);
+        Tile flattened = new Tile(Tile.Layout.Column, margin);
+        for (int repo = 0; repo < 60; repo++) {
+            Tile report = new Tile(Tile.Layout.Column, new Tile.Margin(0, 0, 1, 0));
+            Tile charts = new Tile(Tile.Layout.Row, new Tile.Margin(0, 0, 0, 0));
+            charts.append(block(random, 14), new Tile.Margin(0, 0, 0, 4));
+            charts.append(block(random, 10), new Tile.Margin(0, 1, 0, 4));
+            charts.append(block(random, 5));
+            report.append(charts);
+            Tile overlay = new Tile(block(random, 3));
+            overlay.add(random.nextInt(6) - 2, random.nextInt(3), block(random, 4));
+            overlay.add(random.nextInt(10), random.nextInt(3), block(random, 2));
+            report.append(overlay);
+            dashboard.append(report);
+            flattened.append(report.render());
+        }
+        String rendered = dashboard.render();
+        assertTrue(rendered.split("\n").length > 1000);
+        assertEquals(flattened.render(), rendered);
+    }
+
+    @Test
+    public void testParallelRenderMatchesSequential() {
+        Random random = new Random(17);
+        // a column of reports, each a row of charts over a manual tile with overlaps
+        Tile dashboard = new Tile(Tile.Layout.Column, new Tile.Margin(1, 2, 1, 2));
+        for (int repo = 0; repo < 60; repo++) {
+            Tile report = new Tile(Tile.Layout.Column, new Tile.Margin(0, 0, 1, 0));
+            Tile charts = new Tile(Tile.Layout.Row, new Tile.Margin(0, 0, 0, 0));
+            charts.append(block(random, 14), new Tile.Margin(0, 0, 0, 4));
+            charts.append(block(random, 10), new Tile.Margin(0, 1, 0, 4));
+            charts.append(block(random, 5));
+            report.append(charts);
+            Tile overlay = new Tile(block(random, 3));
+            overlay.add(random.nextInt(6) - 2, random.nextInt(3), block(random, 4));
+            overlay.add(random.nextInt(10), random.nextInt(3), block(random, 2));
+            report.append(overlay);
+            dashboard.append(report);
+        }
+        String rendered = dashboard.render();
+        assertTrue(rendered.split("\n").length > 1000);
+        assertEquals(dashboard.renderSequentially(), rendered);
+
+        Tile small = new Tile(Tile.Layout.Row, new Tile.Margin(0, 0, 0, 0));
+        small.append(block(random, 3), new Tile.Margin(0, 0, 0, 2));
+        small.append(block(random, 2));
+        assertEquals(small.renderSequentially(), small.render());
+    }
+
+    private static String block(Random random, int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            int width = 1 + random.nextInt(30);
+            for (int c = 0; c < width; c++) {
+                if (random.nextInt(12) == 0) {
+                    sb.append("\u001B[3").append(random.nextInt(8)).append('m');
+                }
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            sb.append("\u001B[0m\n");
+        }
+        return sb.toString();
+    }
 }
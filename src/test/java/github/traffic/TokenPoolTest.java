@@ -0,0 +1,113 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import manifold.github.traffic.GitHubApi;
+import manifold.github.traffic.ReportedException;
+import manifold.github.traffic.TokenPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import static org.junit.Assert.*;
+
+public class TokenPoolTest {
+    private FakeGitHubServer _server;
+    private String _repoUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        _server = FakeGitHubServer.start();
+        FakeRepo repo = _server.addRepo(new FakeRepo("tokentest", "widget", 10));
+        _repoUrl = _server.url() + "/repos/" + repo.getOwner() + "/" + repo.getName();
+    }
+
+    @After
+    public void tearDown() {
+        _server.close();
+    }
+
+    @Test
+    public void testRequestsRotateOverTokensUntilExhausted() throws Exception {
+        _server.setTokenLimit(5, 3600);
+        TokenPool tokens = new TokenPool(new LinkedHashSet<>(Arrays.asList("token-a-0001", "token-b-0002")));
+        GitHubApi api = new GitHubApi(tokens);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(200, api.get(_repoUrl, null).status);
+        }
+        // both budgets used, not one of them twice over
+        assertEquals(Arrays.asList("****0001: 0/5", "****0002: 0/5"), tokens.describe());
+        assertEquals(10, _server.requestCount());
+
+        assertNull(tokens.acquire());
+        long wait = tokens.millisUntilReset();
+        assertTrue("wait " + wait, wait > 3_500_000 && wait <= 3_602_000);
+        try {
+            api.get(_repoUrl, null);
+            fail();
+        } catch (ReportedException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("rate limited"));
+        }
+        // no request goes out on an exhausted token
+        assertEquals(10, _server.requestCount());
+    }
+
+    @Test
+    public void testOnlyExhaustedTokensResetTimesCount() throws Exception {
+        _server.setTokenLimit(1, 3600);
+        TokenPool tokens = new TokenPool(new LinkedHashSet<>(Arrays.asList("token-a-0001", "token-b-0002")));
+        assertEquals(200, new GitHubApi(tokens).get(_repoUrl, null).status);
+
+        // the unused token has no reset time, it must not make the wait 0
+        assertTrue(tokens.millisUntilReset() > 3_500_000);
+        TokenPool.Token token = tokens.acquire();
+        assertNotNull(token);
+        assertEquals("token-b-0002", token.getValue());
+    }
+
+    @Test
+    public void testExhaustedTokenResumesAfterReset() throws Exception {
+        _server.setTokenLimit(2, 1);
+        GitHubApi api = new GitHubApi(new TokenPool(Collections.singleton("token-a-0001")));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, api.get(_repoUrl, null).status);
+        }
+        // the third request waited for the reset instead of being refused
+        assertEquals(3, _server.requestCount());
+    }
+
+    @Test
+    public void testLongRateLimitIsReportedWithItsReset() throws Exception {
+        _server.setRateLimitEvery(1);
+        _server.setRetryAfter("3600");
+        GitHubApi api = new GitHubApi(new TokenPool(new LinkedHashSet<>(Arrays.asList("token-a-0001", "token-b-0002"))));
+        try {
+            api.get(_repoUrl, null);
+            fail();
+        } catch (ReportedException e) {
+            // not a 403 response, which callers would report as a missing repo
+            assertTrue(e.getMessage(), e.getMessage().matches("All GitHub tokens are rate limited, the next resets in 6[01] min"));
+        }
+        // once per token
+        assertEquals(2, _server.requestCount());
+    }
+
+    @Test
+    public void testRetryAfterAsHttpDate() throws Exception {
+        _server.setRateLimitEvery(2);
+        _server.setRetryAfter(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+        GitHubApi api = new GitHubApi(new TokenPool(Collections.singleton("token-a-0001")));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(200, api.get(_repoUrl, null).status);
+        }
+        // the second was rate limited once and retried
+        assertEquals(3, _server.requestCount());
+    }
+}
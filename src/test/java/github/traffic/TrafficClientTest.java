@@ -0,0 +1,111 @@
+package github.traffic;
+
+import github.traffic.fake.FakeGitHubServer;
+import github.traffic.fake.FakeRepo;
+import manifold.github.traffic.GitHubApi;
+import manifold.github.traffic.TokenPool;
+import manifold.github.traffic.TrafficClient;
+import manifold.github.traffic.TrafficReport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TrafficClientTest {
+    private FakeGitHubServer _server;
+    private FakeRepo _repo;
+    private GitHubApi _api;
+
+    @Before
+    public void setUp() throws Exception {
+        _server = FakeGitHubServer.start();
+        _repo = _server.addRepo(new FakeRepo("clienttest", "widget", 42));
+        _api = new GitHubApi(new TokenPool(Collections.singleton("fake-token")));
+    }
+
+    @After
+    public void tearDown() {
+        _server.close();
+    }
+
+    @Test
+    public void testConcurrentRequestsCoalesce() throws Exception {
+        _server.setLatencyMillis(200);
+        int callers = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try (TrafficClient client = new TrafficClient(_api, _server.url(), Duration.ofMinutes(10))) {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<TrafficReport>> reports = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                reports.add(executor.submit(() -> {
+                    start.await();
+                    return client.report(_repo.getOwner(), _repo.getName()).get();
+                }));
+            }
+            start.countDown();
+            for (Future<TrafficReport> report : reports) {
+                TrafficReport r = report.get(10, TimeUnit.SECONDS);
+                assertEquals(42, r.getStats().getStars());
+                assertEquals(15, r.getViews().size());
+                assertEquals(5, r.getReferrers().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // one request per endpoint for all callers
+        assertEquals(Long.valueOf(1), _server.requestCounts().get("/repos/{owner}/{repo}"));
+        assertEquals(Long.valueOf(1), _server.requestCounts().get("/repos/{owner}/{repo}/traffic/views"));
+        assertEquals(Long.valueOf(1), _server.requestCounts().get("/repos/{owner}/{repo}/traffic/popular/referrers"));
+    }
+
+    @Test
+    public void testStaleServedWhileRevalidating() throws Exception {
+        try (TrafficClient client = new TrafficClient(_api, _server.url(), Duration.ZERO)) {
+            assertEquals(42, client.stats(_repo.getOwner(), _repo.getName()).get().getStars());
+
+            _repo.star(8);
+            _server.setLatencyMillis(500);
+            // stale, served from the cache without waiting on the slow server
+            CompletableFuture<TrafficReport.Stats> stale = client.stats(_repo.getOwner(), _repo.getName());
+            assertTrue(stale.isDone());
+            assertEquals(42, stale.get().getStars());
+
+            // the background refresh lands
+            long deadline = System.currentTimeMillis() + 10_000;
+            int stars;
+            do {
+                Thread.sleep(100);
+                stars = client.stats(_repo.getOwner(), _repo.getName()).get().getStars();
+            } while (stars == 42 && System.currentTimeMillis() < deadline);
+            assertEquals(50, stars);
+        }
+    }
+
+    @Test
+    public void testLeastRecentlyRequestedIsEvicted() throws Exception {
+        FakeRepo other = _server.addRepo(new FakeRepo("clienttest", "gadget", 7));
+        // room for one repo's sections
+        try (TrafficClient client = new TrafficClient(_api, _server.url(), Duration.ofMinutes(10), 2, 5)) {
+            client.report(_repo.getOwner(), _repo.getName()).get();
+            client.report(_repo.getOwner(), _repo.getName()).get();
+            assertEquals(Long.valueOf(1), _server.requestCounts().get("/repos/{owner}/{repo}"));
+
+            assertEquals(7, client.report(other.getOwner(), other.getName()).get().getStats().getStars());
+            assertEquals(42, client.report(_repo.getOwner(), _repo.getName()).get().getStats().getStars());
+            // the first repo's sections made room for the second's and were fetched again
+            assertEquals(Long.valueOf(3), _server.requestCounts().get("/repos/{owner}/{repo}"));
+        }
+    }
+}
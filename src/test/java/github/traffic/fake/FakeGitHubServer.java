@@ -0,0 +1,513 @@
+package github.traffic.fake;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embeddable stand-in for the GitHub REST API endpoints the traffic report uses. Responses are generated from
+ * {@link FakeRepo} state, and latency, rate limiting (403) and server errors (5xx) can be injected. The
+ * {@code /stats/*} endpoints answer {@code 202 Accepted} a set number of times before their data, as GitHub does
+ * while it computes them. Responses carry an ETag and conditional requests are answered {@code 304 Not Modified}.
+ * Tokens can be given a rate limit budget, reported in {@code X-RateLimit-*} headers.
+ * <p/>
+ * Point the CLI at it with {@code -api <url()>}.
+ */
+public class FakeGitHubServer implements AutoCloseable {
+    private final HttpServer _server;
+    private final ExecutorService _executor;
+    private final Map<String, FakeRepo> _repos;
+    private final Map<String, LongAdder> _requestCounts;
+    private final AtomicInteger _requests;
+    private final AtomicInteger _inFlight;
+    private final AtomicInteger _maxInFlight;
+    private final Map<String, AtomicInteger> _statsPolls;
+    private volatile int _latencyMillis;
+    private volatile int _rateLimitEvery;
+    private volatile int _serverErrorEvery;
+    private volatile int _statsComputePolls;
+    private final Set<String> _notFound;
+    private volatile String _retryAfter = "0";
+    private volatile int _tokenLimit;
+    private volatile int _tokenWindowSeconds;
+    private final Map<String, long[]> _tokenWindows; // token -> reset millis, requests used
+
+    private FakeGitHubServer(HttpServer server) {
+        _server = server;
+        // as many as a client may have in flight, so injected latency overlaps
+        _executor = Executors.newFixedThreadPool(64);
+        _repos = new ConcurrentHashMap<>();
+        _requestCounts = new ConcurrentHashMap<>();
+        _requests = new AtomicInteger();
+        _inFlight = new AtomicInteger();
+        _maxInFlight = new AtomicInteger();
+        _statsPolls = new ConcurrentHashMap<>();
+        _notFound = ConcurrentHashMap.newKeySet();
+        _tokenWindows = new HashMap<>();
+        _server.setExecutor(_executor);
+        _server.createContext("/", this::handle);
+    }
+
+    /**
+     * Starts a server on an ephemeral loopback port.
+     */
+    public static FakeGitHubServer start() throws IOException {
+        FakeGitHubServer server = new FakeGitHubServer(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0));
+        server._server.start();
+        return server;
+    }
+
+    public String url() {
+        return "http://127.0.0.1:" + _server.getAddress().getPort();
+    }
+
+    public FakeRepo addRepo(FakeRepo repo) {
+        _repos.put(repo.getOwner() + '/' + repo.getName(), repo);
+        return repo;
+    }
+
+    /**
+     * Delays every response by {@code millis}.
+     */
+    public void setLatencyMillis(int millis) {
+        _latencyMillis = millis;
+    }
+
+    /**
+     * Answers every {@code n}th request with a 403 rate limit response, 0 to disable.
+     */
+    public void setRateLimitEvery(int n) {
+        _rateLimitEvery = n;
+    }
+
+    /**
+     * The {@code Retry-After} header of the injected rate limit responses, seconds or an HTTP-date.
+     */
+    public void setRetryAfter(String retryAfter) {
+        _retryAfter = retryAfter;
+    }
+
+    /**
+     * Allows each token {@code limit} requests per window of {@code windowSeconds}, starting with the token's first
+     * request, 0 for no limit. Requests over the limit are answered 403 until the window resets.
+     */
+    public void setTokenLimit(int limit, int windowSeconds) {
+        synchronized (_tokenWindows) {
+            _tokenWindows.clear();
+        }
+        _tokenWindowSeconds = windowSeconds;
+        _tokenLimit = limit;
+    }
+
+    /**
+     * Answers every {@code n}th request with a 502, 0 to disable.
+     */
+    public void setServerErrorEvery(int n) {
+        _serverErrorEvery = n;
+    }
+
+    /**
+     * Answers the first {@code n} requests for each stat of each repo with a 202, 0 to answer right away.
+     */
+    public void setStatsComputePolls(int n) {
+        _statsPolls.clear();
+        _statsComputePolls = n;
+    }
+
+    /**
+     * Answers every request for an endpoint template, e.g. "/repos/{owner}/{repo}", with a 404.
+     */
+    public void setNotFound(String template) {
+        _notFound.add(template);
+    }
+
+    /**
+     * @return Requests served since the last reset, including injected failures
+     */
+    public int requestCount() {
+        return _requests.get();
+    }
+
+    /**
+     * @return Requests per endpoint template since the last reset, e.g. "/repos/{owner}/{repo}/stargazers"
+     */
+    public Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        _requestCounts.forEach((template, count) -> counts.put(template, count.sum()));
+        return counts;
+    }
+
+    /**
+     * @return The most requests served at the same time since the last reset
+     */
+    public int maxConcurrentRequests() {
+        return _maxInFlight.get();
+    }
+
+    public void resetCounts() {
+        _requests.set(0);
+        _maxInFlight.set(0);
+        _requestCounts.clear();
+    }
+
+    @Override
+    public void close() {
+        _server.stop(0);
+        _executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        _maxInFlight.accumulateAndGet(_inFlight.incrementAndGet(), Math::max);
+        try {
+            int n = _requests.incrementAndGet();
+            URI uri = exchange.getRequestURI();
+            String[] segments = uri.getPath().substring(1).split("/");
+            String template = template(segments);
+            _requestCounts.computeIfAbsent(template, k -> new LongAdder()).increment();
+            if (_latencyMillis > 0) {
+                Thread.sleep(_latencyMillis);
+            }
+            if (_tokenLimit > 0 && !withinTokenLimit(exchange)) {
+                send(exchange, 403, "{\"message\":\"API rate limit exceeded\"}");
+                return;
+            }
+            if (_rateLimitEvery > 0 && n % _rateLimitEvery == 0) {
+                exchange.getResponseHeaders().add("Retry-After", _retryAfter);
+                exchange.getResponseHeaders().add("X-RateLimit-Remaining", "0");
+                send(exchange, 403, "{\"message\":\"API rate limit exceeded\"}");
+                return;
+            }
+            if (_serverErrorEvery > 0 && n % _serverErrorEvery == 0) {
+                send(exchange, 502, "{\"message\":\"Server Error\"}");
+                return;
+            }
+            if (_notFound.contains(template)) {
+                send(exchange, 404, "{\"message\":\"Not Found\"}");
+                return;
+            }
+            if (segments.length == 5 && segments[3].equals("stats") &&
+                    _statsPolls.computeIfAbsent(uri.getPath(), k -> new AtomicInteger()).incrementAndGet() <= _statsComputePolls) {
+                send(exchange, 202, "{}");
+                return;
+            }
+            String body = route(segments, query(uri), exchange.getRequestHeaders().getFirst("Accept"),
+                    exchange.getResponseHeaders());
+            if (body == null) {
+                send(exchange, 404, "{\"message\":\"Not Found\"}");
+                return;
+            }
+            String etag = "W/\"" + Integer.toHexString(body.hashCode()) + '"';
+            exchange.getResponseHeaders().add("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                send(exchange, 200, body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            _inFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Counts the request against its token's budget and adds the rate limit headers.
+     *
+     * @return False if the token's budget is used up
+     */
+    private boolean withinTokenLimit(HttpExchange exchange) {
+        String token = String.valueOf(exchange.getRequestHeaders().getFirst("Authorization"));
+        long now = System.currentTimeMillis();
+        long reset;
+        long used;
+        synchronized (_tokenWindows) {
+            long[] window = _tokenWindows.get(token);
+            if (window == null || now >= window[0]) {
+                // GitHub reports the reset in epoch seconds
+                window = new long[]{((now + _tokenWindowSeconds * 1000L) / 1000 + 1) * 1000, 0};
+                _tokenWindows.put(token, window);
+            }
+            used = Math.min(window[1] + 1, _tokenLimit + 1);
+            window[1] = used;
+            reset = window[0];
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("X-RateLimit-Limit", String.valueOf(_tokenLimit));
+        headers.add("X-RateLimit-Remaining", String.valueOf(Math.max(0, _tokenLimit - used)));
+        headers.add("X-RateLimit-Reset", String.valueOf(reset / 1000));
+        return used <= _tokenLimit;
+    }
+
+    private String route(String[] segments, Map<String, String> query, String accept, Headers responseHeaders) {
+        if (segments.length == 2 && segments[0].equals("users")) {
+            return user(segments[1]);
+        }
+        if (segments.length == 2 && segments[0].equals("search") && segments[1].equals("issues")) {
+            return "{\"total_count\":3}";
+        }
+        if (segments.length == 3 && segments[0].equals("orgs") && segments[2].equals("repos")) {
+            return orgRepos(segments[1], intParam(query, "page", 1), intParam(query, "per_page", 30));
+        }
+        if (segments.length < 3 || !segments[0].equals("repos")) {
+            return null;
+        }
+        FakeRepo repo = _repos.get(segments[1] + '/' + segments[2]);
+        if (repo == null) {
+            return null;
+        }
+        String resource = String.join("/", Arrays.asList(segments).subList(3, segments.length));
+        switch (resource) {
+            case "":
+                return repo(repo);
+            case "traffic/views":
+                return dailyCounts("views", repo);
+            case "traffic/clones":
+                return dailyCounts("clones", repo);
+            case "traffic/popular/paths":
+                return popularPaths(repo);
+            case "traffic/popular/referrers":
+                return popularReferrers();
+            case "stargazers":
+                return stargazers(repo, intParam(query, "page", 1), intParam(query, "per_page", 30),
+                        accept != null && accept.contains("star+json"));
+            case "forks":
+                // newest first, the only order the report asks for
+                return forks(repo, intParam(query, "page", 1), intParam(query, "per_page", 30));
+            case "releases":
+                return releases(repo, intParam(query, "page", 1), intParam(query, "per_page", 30), responseHeaders);
+            case "stats/commit_activity":
+                return commitActivity(repo);
+            case "stats/code_frequency":
+                return codeFrequency(repo);
+            case "stats/contributors":
+                return contributors(repo);
+            default:
+                return null;
+        }
+    }
+
+    private static String repo(FakeRepo repo) {
+        return "{\"id\":1296269,\"name\":\"" + repo.getName() + "\",\"full_name\":\"" + repo.getOwner() + '/' +
+                repo.getName() + "\",\"stargazers_count\":" + repo.getStars() + ",\"subscribers_count\":42," +
+                "\"forks_count\":" + repo.getForks() + ",\"open_issues\":12,\"owner\":{\"login\":\"" +
+                repo.getOwner() + "\",\"id\":1}}";
+    }
+
+    private String orgRepos(String org, int page, int perPage) {
+        List<FakeRepo> repos = new ArrayList<>();
+        for (FakeRepo repo : _repos.values()) {
+            if (repo.getOwner().equals(org)) {
+                repos.add(repo);
+            }
+        }
+        if (repos.isEmpty()) {
+            return null;
+        }
+        repos.sort(Comparator.comparing(FakeRepo::getName));
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = (page - 1) * perPage; i < repos.size() && i < page * perPage; i++) {
+            sb.append(sb.length() > 1 ? "," : "").append(repo(repos.get(i)));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String dailyCounts(String field, FakeRepo repo) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        StringBuilder sb = new StringBuilder("{\"count\":0,\"uniques\":0,\"").append(field).append("\":[");
+        for (int i = 14; i >= 0; i--) {
+            LocalDate day = today.minusDays(i);
+            int uniques = 1 + Math.floorMod((day.hashCode() * 31 + repo.getName().hashCode()), 400);
+            sb.append("{\"timestamp\":\"").append(day).append("T00:00:00Z\",\"count\":").append(uniques * 3)
+                    .append(",\"uniques\":").append(uniques).append('}').append(i > 0 ? "," : "");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String popularPaths(FakeRepo repo) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 10; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"path\":\"/").append(repo.getOwner()).append('/')
+                    .append(repo.getName()).append("/wiki/page-").append(i).append("\",\"title\":\"Page ").append(i)
+                    .append("\",\"count\":").append(300 / (i + 1)).append(",\"uniques\":").append(100 / (i + 1)).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String popularReferrers() {
+        String[] referrers = {"github.com", "Google", "news.ycombinator.com", "reddit.com", "stackoverflow.com"};
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < referrers.length; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"referrer\":\"").append(referrers[i]).append("\",\"count\":")
+                    .append(200 / (i + 1)).append(",\"uniques\":").append(50 / (i + 1)).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String stargazers(FakeRepo repo, int page, int perPage, boolean starJson) {
+        int stars = repo.getStars();
+        int from = (page - 1) * perPage;
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = from; k < stars && k < from + perPage; k++) {
+            int index = repo.indexOf(k);
+            String user = "{\"login\":\"" + FakeRepo.login(index) + "\",\"id\":" + index +
+                    ",\"type\":\"User\",\"site_admin\":false}";
+            sb.append(k > from ? "," : "");
+            if (starJson) {
+                sb.append("{\"starred_at\":\"").append(repo.starredAt(index)).append("\",\"user\":").append(user).append('}');
+            } else {
+                sb.append(user);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String forks(FakeRepo repo, int page, int perPage) {
+        StringBuilder sb = new StringBuilder("[");
+        for (String fork : repo.newestForks((page - 1) * perPage, perPage)) {
+            int slash = fork.indexOf('/');
+            sb.append(sb.length() > 1 ? "," : "").append("{\"name\":\"").append(fork.substring(slash + 1))
+                    .append("\",\"full_name\":\"").append(fork).append("\",\"fork\":true,\"owner\":{\"login\":\"")
+                    .append(fork, 0, slash).append("\",\"id\":").append(fork.hashCode() & 0xffff).append("}}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Newest first, with a Link header to the last page as GitHub sends it.
+     */
+    private String releases(FakeRepo repo, int page, int perPage, Headers responseHeaders) {
+        int releases = repo.getReleases();
+        int lastPage = Math.max(1, (releases + perPage - 1) / perPage);
+        if (lastPage > 1) {
+            String url = url() + "/repos/" + repo.getOwner() + '/' + repo.getName() + "/releases?per_page=" + perPage;
+            responseHeaders.add("Link", "<" + url + "&page=" + Math.min(page + 1, lastPage) + ">; rel=\"next\", <" +
+                    url + "&page=" + lastPage + ">; rel=\"last\"");
+        }
+        StringBuilder sb = new StringBuilder("[");
+        for (int k = (page - 1) * perPage; k < releases && k < page * perPage; k++) {
+            int index = releases - 1 - k;
+            sb.append(sb.length() > 1 ? "," : "").append("{\"id\":").append(index + 1).append(",\"tag_name\":\"v1.")
+                    .append(index).append("\",\"draft\":false,\"prerelease\":false,\"assets\":[");
+            int[] downloads = repo.downloads(index);
+            for (int a = 0; a < downloads.length; a++) {
+                // past the int range, as GitHub's ids are headed
+                long id = 3_000_000_000L + index * 16L + a;
+                sb.append(a > 0 ? "," : "").append("{\"id\":").append(id).append(",\"name\":\"asset").append(a)
+                        .append(".zip\",\"size\":1024,\"download_count\":").append(downloads[a]).append('}');
+            }
+            sb.append("]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String commitActivity(FakeRepo repo) {
+        long week = weekStart(52);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 52; i++, week += 7 * 86400) {
+            int commits = Math.floorMod(repo.getName().hashCode() + i * 7, 30);
+            sb.append(i > 0 ? "," : "").append("{\"days\":[0,").append(commits).append(",0,0,0,0,0],\"total\":")
+                    .append(commits).append(",\"week\":").append(week).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String codeFrequency(FakeRepo repo) {
+        long week = weekStart(52);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 52; i++, week += 7 * 86400) {
+            int changed = Math.floorMod(repo.getName().hashCode() + i * 13, 500);
+            sb.append(i > 0 ? "," : "").append('[').append(week).append(',').append(changed * 2).append(",-")
+                    .append(changed).append(']');
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String contributors(FakeRepo repo) {
+        long week = weekStart(3);
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 8; i++) {
+            sb.append(i > 0 ? "," : "").append("{\"author\":{\"login\":\"dev").append(i).append("\",\"id\":").append(i)
+                    .append("},\"total\":").append((i + 1) * 10).append(",\"weeks\":[");
+            for (int w = 0; w < 3; w++) {
+                sb.append(w > 0 ? "," : "").append("{\"w\":").append(week + w * 7 * 86400)
+                        .append(",\"a\":100,\"d\":20,\"c\":").append((i + 1) * 10 / 3).append('}');
+            }
+            sb.append("]}");
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * @return The Sunday starting the week {@code weeksAgo} weeks back, in epoch seconds
+     */
+    private static long weekStart(int weeksAgo) {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        LocalDate sunday = today.minusDays(today.getDayOfWeek().getValue() % 7).minusWeeks(weeksAgo - 1);
+        return sunday.atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+    }
+
+    private static String user(String login) {
+        int hash = Math.floorMod(login.hashCode(), 100_000);
+        return "{\"login\":\"" + login + "\",\"name\":\"User " + login + "\",\"company\":\"Company " + (hash % 50) +
+                "\",\"type\":\"User\",\"public_repos\":" + (hash % 120) + ",\"followers\":" + hash + "}";
+    }
+
+    private static String template(String[] segments) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segments[0].equals("repos") && i == 1) {
+                segment = "{owner}";
+            } else if (segments[0].equals("repos") && i == 2) {
+                segment = "{repo}";
+            } else if ((segments[0].equals("users") || segments[0].equals("orgs")) && i == 1) {
+                segment = "{" + (segments[0].equals("users") ? "user" : "org") + "}";
+            }
+            sb.append('/').append(segment);
+        }
+        return sb.toString();
+    }
+
+    private static Map<String, String> query(URI uri) {
+        Map<String, String> params = new HashMap<>();
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                int eq = param.indexOf('=');
+                if (eq > 0) {
+                    params.put(param.substring(0, eq), param.substring(eq + 1));
+                }
+            }
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> query, String name, int defaultValue) {
+        String value = query.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package github.traffic.fake;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Synthetic repo state for {@link FakeGitHubServer}. Stargazers are generated from their index, so a repo with a
+ * million stars costs next to nothing until it is paged. Unstarred indexes are kept in a set, which keeps paging
+ * exact for the modest number of unstars a scenario makes. Forks are kept as a list of indexes, oldest first, and
+ * releases as the download counts of their assets, oldest first.
+ */
+public class FakeRepo {
+    private static final long HISTORY_SECONDS = ChronoUnit.DAYS.getDuration().getSeconds() * 1000;
+
+    private final String _owner;
+    private final String _name;
+    private final Instant _created;
+    private final TreeSet<Integer> _unstarred;
+    private final List<Integer> _forks;
+    private final List<int[]> _releases;
+    private int _total;
+    private int _forksTotal;
+
+    public FakeRepo(String owner, String name, int stars) {
+        _owner = owner;
+        _name = name;
+        _created = Instant.now().minusSeconds(HISTORY_SECONDS);
+        _unstarred = new TreeSet<>();
+        _forks = new ArrayList<>();
+        _releases = new ArrayList<>();
+        _total = stars;
+        fork(17);
+    }
+
+    public String getOwner() {
+        return _owner;
+    }
+
+    public String getName() {
+        return _name;
+    }
+
+    public synchronized int getStars() {
+        return _total - _unstarred.size();
+    }
+
+    /**
+     * Adds {@code count} new stargazers at the end of the list.
+     */
+    public synchronized void star(int count) {
+        _total += count;
+    }
+
+    /**
+     * Removes {@code count} stargazers spread evenly over the list.
+     */
+    public synchronized void unstar(int count) {
+        int stars = getStars();
+        if (count <= 0 || stars == 0) {
+            return;
+        }
+        int stride = Math.max(1, stars / count);
+        for (int i = 0, removed = 0; i < stars && removed < count; i += stride, removed++) {
+            _unstarred.add(indexOf(i - removed));
+        }
+    }
+
+    public synchronized int getForks() {
+        return _forks.size();
+    }
+
+    /**
+     * Adds {@code count} new forks.
+     */
+    public synchronized void fork(int count) {
+        for (int i = 0; i < count; i++) {
+            _forks.add(_forksTotal++);
+        }
+    }
+
+    /**
+     * Deletes {@code count} forks spread evenly over the list.
+     */
+    public synchronized void deleteForks(int count) {
+        if (count <= 0 || _forks.isEmpty()) {
+            return;
+        }
+        int stride = Math.max(1, _forks.size() / count);
+        for (int i = 0, removed = 0; i < _forks.size() && removed < count; i += stride - 1, removed++) {
+            _forks.remove(i);
+        }
+    }
+
+    public synchronized int getReleases() {
+        return _releases.size();
+    }
+
+    /**
+     * Publishes {@code count} new releases with {@code assets} assets each.
+     */
+    public synchronized void release(int count, int assets) {
+        for (int i = 0; i < count; i++) {
+            _releases.add(new int[assets]);
+        }
+    }
+
+    /**
+     * Adds {@code count} downloads to the first asset of a release.
+     *
+     * @param release Index of the release, oldest first
+     */
+    public synchronized void download(int release, int count) {
+        _releases.get(release)[0] += count;
+    }
+
+    /**
+     * @return Download counts of the release's assets
+     */
+    synchronized int[] downloads(int release) {
+        return _releases.get(release).clone();
+    }
+
+    /**
+     * @return Full names of the forks from {@code from}, newest first
+     */
+    synchronized List<String> newestForks(int from, int count) {
+        List<String> forks = new ArrayList<>();
+        for (int k = from; k < _forks.size() && k < from + count; k++) {
+            int index = _forks.get(_forks.size() - 1 - k);
+            forks.add("forker" + Integer.toString(index, 36) + '/' + _name);
+        }
+        return forks;
+    }
+
+    /**
+     * @return The list index of the {@code k}th current stargazer, skipping unstarred indexes
+     */
+    synchronized int indexOf(int k) {
+        int pos = k;
+        while (true) {
+            int next = k + _unstarred.headSet(pos, true).size();
+            if (next == pos) {
+                return pos;
+            }
+            pos = next;
+        }
+    }
+
+    static String login(int index) {
+        return "gazer" + Integer.toString(index, 36);
+    }
+
+    /**
+     * @return A star time spread evenly over the repo's 1000-day history
+     */
+    synchronized Instant starredAt(int index) {
+        return _created.plusSeconds(HISTORY_SECONDS * index / Math.max(1, _total));
+    }
+}